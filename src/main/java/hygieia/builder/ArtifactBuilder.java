@@ -1,15 +1,11 @@
 package hygieia.builder;
 
 import com.capitalone.dashboard.request.BinaryArtifactCreateRequest;
-import hudson.EnvVars;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
-import hygieia.utils.HygieiaUtils;
 import jenkins.plugins.hygieia.HygieiaPublisher;
 import org.apache.commons.io.FilenameUtils;
 
-import java.io.File;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -18,71 +14,58 @@ import java.util.logging.Logger;
 public class ArtifactBuilder {
 
     private static final Logger logger = Logger.getLogger(ArtifactBuilder.class.getName());
+    BuildContext context;
     AbstractBuild build;
     HygieiaPublisher publisher;
     BuildListener listener;
     String buildId;
+    List<String> files;
 
     Set<BinaryArtifactCreateRequest> artifacts = new HashSet<BinaryArtifactCreateRequest>();
 
-    public ArtifactBuilder(AbstractBuild build, HygieiaPublisher publisher, BuildListener listener, String buildId) {
-        this.build = build;
+    /**
+     * @param files workspace-relative paths of the matching files, see {@link WorkspaceFileFinder}
+     */
+    public ArtifactBuilder(BuildContext context, HygieiaPublisher publisher, BuildListener listener, String buildId, List<String> files) {
+        this.context = context;
+        this.build = context.getBuild();
         this.publisher = publisher;
         this.buildId = buildId;
         this.listener = listener;
+        this.files = files;
         buildArtifacts();
     }
 
     private void buildArtifacts() {
-        String directory = publisher.getHygieiaArtifact().getArtifactDirectory().trim();
-        String filePattern = publisher.getHygieiaArtifact().getArtifactName().trim();
         String group = publisher.getHygieiaArtifact().getArtifactGroup().trim();
         String version = publisher.getHygieiaArtifact().getArtifactVersion().trim();
-        EnvVars env;
-        try {
-            env = build.getEnvironment(listener);
-        } catch (Exception e) {
-            listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
-            env = new EnvVars();
-        }
-
-        String path = env.expand("$WORKSPACE");
-
-        if (directory.startsWith("/")) {
-            path = path + directory;
-        } else {
-            path = path + "/" + directory;
-        }
-
-        List<File> artifactFiles = HygieiaUtils.getArtifactFiles(new File(path), filePattern, new ArrayList<File>());
-
-        for (File f : artifactFiles) {
+        for (String path : files) {
+            String f = WorkspaceFileFinder.fileName(path);
             BinaryArtifactCreateRequest bac = new BinaryArtifactCreateRequest();
             String v = "";
             bac.setArtifactGroup(group);
             if ("".equals(version)) {
-                version = guessVersionNumber(f.getName());
+                version = guessVersionNumber(f);
             }
             bac.setArtifactVersion(version);
-            bac.setCanonicalName(f.getName());
+            bac.setCanonicalName(f);
             bac.setArtifactName(getFileNameMinusVersion(f, version));
             bac.setTimestamp(build.getTimeInMillis());
             bac.setBuildId(buildId);
-            CommitBuilder commitBuilder = new CommitBuilder(build);
-            bac.getSourceChangeSet().addAll(commitBuilder.getCommits());
+            bac.getSourceChangeSet().addAll(context.getCommits());
             artifacts.add(bac);
         }
     }
 
-    private static String getFileNameMinusVersion(File file, String version) {
-        String ext = FilenameUtils.getExtension(file.getName());
-        if ("".equals(version)) return file.getName();
-        int vIndex = file.getName().indexOf(version);
-        if (vIndex == 0) return file.getName();
-        if ((file.getName().charAt(vIndex - 1) == '-') || (file.getName().charAt(vIndex - 1) == '_')) {
+    private static String getFileNameMinusVersion(String fileName, String version) {
+        String ext = FilenameUtils.getExtension(fileName);
+        if ("".equals(version)) return fileName;
+        int vIndex = fileName.indexOf(version);
+        if (vIndex == 0) return fileName;
+        if ((fileName.charAt(vIndex - 1) == '-') || (fileName.charAt(vIndex - 1) == '_')) {
             vIndex = vIndex - 1;
         }
-        return file.getName().substring(0, vIndex) + "." + ext;
+        return fileName.substring(0, vIndex) + "." + ext;
     }
 
     private String guessVersionNumber(String source) {
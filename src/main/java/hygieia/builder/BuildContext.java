@@ -0,0 +1,142 @@
+package hygieia.builder;
+
+import com.capitalone.dashboard.model.SCM;
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * What every builder and post of one publish needs to know about the build, looked up once.
+ * <p>
+ * Reading the environment runs every environment contributor of the build, and collecting the
+ * commits walks the change log and upstream causes; both used to happen again for each artifact,
+ * deploy file and post. A context is created per publish event rather than per build, because a
+ * build's change log and environment are only complete once its steps have finished; the
+ * completion's context is created while the publisher runs and shared with the completion.
+ * <p>
+ * Instances are immutable and safe to share between publish stages.
+ */
+@SuppressWarnings("rawtypes")
+public final class BuildContext {
+    private static final Logger logger = Logger.getLogger(BuildContext.class.getName());
+
+    private static final AtomicLong lookupsSaved = new AtomicLong();
+
+    private final AbstractBuild build;
+    private final AbstractBuild changeBuild;
+    private final List<SCM> commits;
+    private final EnvVars env;
+    private final String instanceUrl;
+    private final String jobName;
+    private final String jobUrl;
+    private final String buildUrl;
+
+    private final AtomicInteger environmentReads = new AtomicInteger();
+    private final AtomicInteger commitReads = new AtomicInteger();
+
+    private BuildContext(AbstractBuild build, CommitBuilder commitBuilder, EnvVars env) {
+        this.build = build;
+        this.changeBuild = commitBuilder.getBuild();
+        this.commits = Collections.unmodifiableList(new ArrayList<SCM>(commitBuilder.getCommits()));
+        this.env = env;
+        this.jobName = build.getProject().getName();
+        this.jobUrl = build.getProject().getAbsoluteUrl();
+        this.buildUrl = jobUrl + String.valueOf(build.getNumber()) + "/";
+        if (env != null) {
+            this.instanceUrl = env.get("JENKINS_URL");
+        } else {
+            String jobPath = "/job" + "/" + jobName + "/";
+            int ind = jobUrl.indexOf(jobPath);
+            this.instanceUrl = jobUrl.substring(0, ind);
+        }
+    }
+
+    /**
+     * @param maxCommits the most commits to collect, see {@link CommitBuilder}
+     */
+    public static BuildContext create(AbstractBuild build, TaskListener listener, int maxCommits) {
+        EnvVars env = null;
+        try {
+            env = build.getEnvironment(listener);
+        } catch (IOException e) {
+            logger.warning("Error getting environment variables");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warning("Error getting environment variables");
+        }
+        return new BuildContext(build, new CommitBuilder(build, maxCommits), env);
+    }
+
+    /**
+     * @return the lookups avoided by reusing contexts since Jenkins started
+     */
+    public static long getLookupsSaved() {
+        return lookupsSaved.get();
+    }
+
+    public AbstractBuild getBuild() {
+        return build;
+    }
+
+    /**
+     * @return the build whose change log holds the commits: this build, or the upstream build that triggered it
+     */
+    public AbstractBuild getChangeBuild() {
+        return changeBuild;
+    }
+
+    /**
+     * @return the build's commits, without duplicate revisions
+     */
+    public List<SCM> getCommits() {
+        count(commitReads);
+        return commits;
+    }
+
+    /**
+     * @return the Jenkins URL from the environment, or the part of the job URL before the job
+     */
+    public String getInstanceUrl() {
+        count(environmentReads);
+        return instanceUrl;
+    }
+
+    /**
+     * @return a copy of the build's environment; empty if it could not be read
+     */
+    public EnvVars getEnvironment() {
+        count(environmentReads);
+        return (env == null) ? new EnvVars() : new EnvVars(env);
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public String getJobUrl() {
+        return jobUrl;
+    }
+
+    public String getBuildUrl() {
+        return buildUrl;
+    }
+
+    /**
+     * @return the lookups this context saved so far: every use of the environment or commits after the first
+     */
+    public int getSavedLookups() {
+        return Math.max(0, environmentReads.get() - 1) + Math.max(0, commitReads.get() - 1);
+    }
+
+    private static void count(AtomicInteger reads) {
+        if (reads.incrementAndGet() > 1) lookupsSaved.incrementAndGet();
+    }
+}
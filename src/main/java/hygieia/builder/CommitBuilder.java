@@ -7,73 +7,215 @@ import hudson.model.Cause;
 import hudson.model.Hudson;
 import hudson.scm.ChangeLogSet;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
+/**
+ * Collects the commits of a build, or of the upstream build that triggered it when the build has
+ * no changes of its own.
+ * <p>
+ * Change sets and their parents are walked with an explicit stack, and revisions are deduplicated
+ * with a hash set, so the cost is linear in the number of entries. At most {@code maxCommits}
+ * commits are kept; the rest are counted and reported by one marker commit with revision
+ * {@link #TRUNCATED_REVISION}. Commit messages are cut to {@link #MAX_MESSAGE_LENGTH} characters.
+ * <p>
+ * Upstream resolution stops at cycles and after {@link #MAX_UPSTREAM_DEPTH} builds. Results for
+ * finished builds never change, so they are cached and shared by every downstream build.
+ */
+@SuppressWarnings("rawtypes")
 public class CommitBuilder {
     private static final Logger logger = Logger.getLogger(CommitBuilder.class.getName());
+
+    public static final int DEFAULT_MAX_COMMITS = 1000;
+    public static final int MAX_MESSAGE_LENGTH = 4000;
+    public static final String TRUNCATED_REVISION = "truncated";
+    static final int MAX_UPSTREAM_DEPTH = 50;
+    static final int UPSTREAM_CACHE_SIZE = 500;
+
+    /**
+     * Finished build key (project full name and number) to the key of the build its commits come from.
+     */
+    private static final Map<String, String> upstreamCache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > UPSTREAM_CACHE_SIZE;
+        }
+    };
+
     AbstractBuild build;
-    private List<SCM> commitList = new LinkedList<SCM>();
+    private final int maxCommits;
+    private final List<SCM> commitList = new ArrayList<SCM>();
+    private final Set<String> revisions = new HashSet<String>();
+    private int omitted;
 
     public CommitBuilder(AbstractBuild build) {
-        this.build = getBuild(build);
-        buildCommits(build.getChangeSet());
+        this(build, DEFAULT_MAX_COMMITS);
     }
 
-    private AbstractBuild getBuild(AbstractBuild build) {
-        ChangeLogSet changeSet = build.getChangeSet();
-        List<ChangeLogSet.Entry> entries = new LinkedList<ChangeLogSet.Entry>();
-        for (Object o : changeSet.getItems()) {
-            ChangeLogSet.Entry entry = (ChangeLogSet.Entry) o;
-            entries.add(entry);
-        }
-        if (entries.isEmpty()) {
-            Cause.UpstreamCause c = (Cause.UpstreamCause) build.getCause(Cause.UpstreamCause.class);
-            if (c != null) {
-                String upProjectName = c.getUpstreamProject();
-                int buildNumber = c.getUpstreamBuild();
-                AbstractProject project = Hudson.getInstance().getItemByFullName(upProjectName, AbstractProject.class);
-                AbstractBuild upBuild = project.getBuildByNumber(buildNumber);
-                return getBuild(upBuild);
-            }
+    /**
+     * @param maxCommits the most commits to keep; 0 for no limit
+     */
+    public CommitBuilder(AbstractBuild build, int maxCommits) {
+        this.maxCommits = (maxCommits > 0) ? maxCommits : Integer.MAX_VALUE;
+        this.build = resolveBuild(build);
+        collect(this.build.getChangeSet());
+    }
+
+    /**
+     * Collects the commits of the given change set of the build, without following upstream causes.
+     */
+    CommitBuilder(AbstractBuild build, ChangeLogSet changeSet, int maxCommits) {
+        this.maxCommits = (maxCommits > 0) ? maxCommits : Integer.MAX_VALUE;
+        this.build = build;
+        collect(changeSet);
+    }
+
+    private void collect(ChangeLogSet changeSet) {
+        buildCommits(changeSet);
+        if (omitted > 0) {
+            commitList.add(truncationMarker());
+            logger.fine("Hygieia: Published " + this.maxCommits + " of " + (this.maxCommits + omitted)
+                    + " commits of " + key(this.build));
         }
-        return build;
     }
 
-    private void buildCommits(ChangeLogSet changeLogSet) {
-        for (Object o : changeLogSet.getItems()) {
-            ChangeLogSet.Entry entry = (ChangeLogSet.Entry) o;
-            SCM commit = new SCM();
-            if (entry.getAffectedFiles() != null) {
-                commit.setNumberOfChanges(entry.getAffectedFiles().size());
-            } else {
-                commit.setNumberOfChanges(0);
+    private static AbstractBuild resolveBuild(AbstractBuild build) {
+        AbstractBuild current = build;
+        Set<String> seen = new HashSet<String>();
+        List<String> finished = new ArrayList<String>();
+        for (int depth = 0; ; depth++) {
+            String key = key(current);
+            AbstractBuild cached = cachedUpstream(key);
+            if (cached != null) {
+                current = cached;
+                break;
             }
-            if (!"".equals(entry.getAuthor().getFullName())) {
-                commit.setScmAuthor(entry.getAuthor().getFullName());
-            } else {
-                commit.setScmAuthor(entry.getAuthor().getId());
+            if (!seen.add(key)) {
+                logger.warning("Hygieia: Upstream causes of " + key(build) + " loop back to " + key);
+                break;
             }
-            commit.setScmCommitLog(entry.getMsg());
-            commit.setScmCommitTimestamp(entry.getTimestamp()); //Timestamp will be -1 mostly per Jenkins documentation - as commits span over time.
-            commit.setScmRevisionNumber(entry.getCommitId());
-            if (isNewCommit(commit)) {
-                commitList.add(commit);
+            if (!current.isBuilding()) finished.add(key);
+            if (!current.getChangeSet().isEmptySet()) break;
+            if (depth >= MAX_UPSTREAM_DEPTH) {
+                logger.warning("Hygieia: Stopped following upstream causes of " + key(build) + " at " + key);
+                break;
             }
-            if ((entry.getParent() != null) && (!changeLogSet.equals(entry.getParent()))) {
-                buildCommits(entry.getParent());
+            AbstractBuild upstream = upstreamBuild(current);
+            if (upstream == null) break;
+            current = upstream;
+        }
+        if (!current.isBuilding()) {
+            String resolved = key(current);
+            synchronized (upstreamCache) {
+                for (String key : finished) {
+                    upstreamCache.put(key, resolved);
+                }
             }
         }
+        return current;
+    }
+
+    private static AbstractBuild upstreamBuild(AbstractBuild build) {
+        Cause.UpstreamCause c = (Cause.UpstreamCause) build.getCause(Cause.UpstreamCause.class);
+        if (c == null) return null;
+        return lookup(c.getUpstreamProject(), c.getUpstreamBuild());
+    }
+
+    private static AbstractBuild cachedUpstream(String key) {
+        String resolved;
+        synchronized (upstreamCache) {
+            resolved = upstreamCache.get(key);
+        }
+        if (resolved == null) return null;
+        int separator = resolved.lastIndexOf('#');
+        return lookup(resolved.substring(0, separator), Integer.parseInt(resolved.substring(separator + 1)));
     }
 
-    private boolean isNewCommit(SCM commit) {
-        for (SCM c : commitList) {
-            if (c.getScmRevisionNumber().equals(commit.getScmRevisionNumber())) {
-                return false;
+    private static AbstractBuild lookup(String projectName, int buildNumber) {
+        AbstractProject project = Hudson.getInstance().getItemByFullName(projectName, AbstractProject.class);
+        return (project == null) ? null : (AbstractBuild) project.getBuildByNumber(buildNumber);
+    }
+
+    private static String key(AbstractBuild build) {
+        return build.getProject().getFullName() + "#" + build.getNumber();
+    }
+
+    /**
+     * Walks the change set and, depth first, the parent change sets of its entries, visiting each change set once.
+     */
+    private void buildCommits(ChangeLogSet changeLogSet) {
+        Set<ChangeLogSet> visited = Collections.newSetFromMap(new IdentityHashMap<ChangeLogSet, Boolean>());
+        Deque<Iterator> pending = new ArrayDeque<Iterator>();
+        visited.add(changeLogSet);
+        pending.push(changeLogSet.iterator());
+        while (!pending.isEmpty()) {
+            Iterator entries = pending.peek();
+            if (!entries.hasNext()) {
+                pending.pop();
+                continue;
             }
+            ChangeLogSet.Entry entry = (ChangeLogSet.Entry) entries.next();
+            addCommit(entry);
+            ChangeLogSet parent = entry.getParent();
+            if ((parent != null) && visited.add(parent)) {
+                pending.push(parent.iterator());
+            }
+        }
+    }
+
+    private void addCommit(ChangeLogSet.Entry entry) {
+        if (!revisions.add(entry.getCommitId())) return;
+        if (commitList.size() >= maxCommits) {
+            omitted++;
+            return;
         }
-        return true;
+        SCM commit = new SCM();
+        if (entry.getAffectedFiles() != null) {
+            commit.setNumberOfChanges(entry.getAffectedFiles().size());
+        } else {
+            commit.setNumberOfChanges(0);
+        }
+        if (!"".equals(entry.getAuthor().getFullName())) {
+            commit.setScmAuthor(entry.getAuthor().getFullName());
+        } else {
+            commit.setScmAuthor(entry.getAuthor().getId());
+        }
+        commit.setScmCommitLog(truncate(entry.getMsg()));
+        commit.setScmCommitTimestamp(entry.getTimestamp()); //Timestamp will be -1 mostly per Jenkins documentation - as commits span over time.
+        commit.setScmRevisionNumber(entry.getCommitId());
+        commitList.add(commit);
+    }
+
+    private SCM truncationMarker() {
+        SCM marker = new SCM();
+        marker.setNumberOfChanges(0);
+        marker.setScmAuthor("Hygieia Publisher");
+        marker.setScmCommitLog(omitted + " more commits not published; the limit is " + maxCommits);
+        marker.setScmCommitTimestamp(-1);
+        marker.setScmRevisionNumber(TRUNCATED_REVISION);
+        return marker;
+    }
+
+    static String truncate(String message) {
+        if ((message == null) || (message.length() <= MAX_MESSAGE_LENGTH)) return message;
+        return message.substring(0, MAX_MESSAGE_LENGTH - 3) + "...";
+    }
+
+    /**
+     * @return the build the commits were looked up from, following upstream causes while the change log is empty
+     */
+    public AbstractBuild getBuild() {
+        return build;
     }
 
     public List<SCM> getCommits() {
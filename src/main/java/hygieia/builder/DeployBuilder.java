@@ -1,16 +1,12 @@
 package hygieia.builder;
 
 import com.capitalone.dashboard.request.DeployDataCreateRequest;
-import hudson.EnvVars;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
-import hygieia.utils.HygieiaUtils;
+import hudson.model.Result;
 import jenkins.plugins.hygieia.HygieiaPublisher;
 import org.apache.commons.io.FilenameUtils;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -19,57 +15,46 @@ import java.util.logging.Logger;
 public class DeployBuilder {
 
     private static final Logger logger = Logger.getLogger(DeployBuilder.class.getName());
+    BuildContext context;
     AbstractBuild build;
     HygieiaPublisher publisher;
     BuildListener listener;
     String buildId;
+    List<String> files;
 
     Set<DeployDataCreateRequest> deploys = new HashSet<DeployDataCreateRequest>();
 
-    public DeployBuilder(AbstractBuild build, HygieiaPublisher publisher, BuildListener listener, String buildId) {
-        this.build = build;
+    /**
+     * @param files workspace-relative paths of the matching files, see {@link WorkspaceFileFinder}
+     */
+    public DeployBuilder(BuildContext context, HygieiaPublisher publisher, BuildListener listener, String buildId, List<String> files) {
+        this.context = context;
+        this.build = context.getBuild();
         this.publisher = publisher;
         this.buildId = buildId;
         this.listener = listener;
+        this.files = files;
         buildDeployRequests();
     }
 
     private void buildDeployRequests() {
-        String directory = publisher.getHygieiaDeploy().getArtifactDirectory().trim();
-        String filePattern = publisher.getHygieiaDeploy().getArtifactName().trim();
         String group = publisher.getHygieiaDeploy().getArtifactGroup().trim();
         String version = publisher.getHygieiaDeploy().getArtifactVersion().trim();
         String environmentName = publisher.getHygieiaDeploy().getEnvironmentName();
         String applicationName = publisher.getHygieiaDeploy().getApplicationName();
 
-        EnvVars env;
-        try {
-            env = build.getEnvironment(listener);
-        } catch (Exception e) {
-            listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
-            env = new EnvVars();
-        }
-
-        String path = env.expand("$WORKSPACE");
-
-        if (directory.startsWith("/")) {
-            path = path + directory;
-        } else {
-            path = path + "/" + directory;
-        }
-
-        List<File> artifactFiles = HygieiaUtils.getArtifactFiles(new File(path), filePattern, new ArrayList<File>());
-
-        for (File f : artifactFiles) {
+        for (String path : files) {
+            String f = WorkspaceFileFinder.fileName(path);
             DeployDataCreateRequest bac = new DeployDataCreateRequest();
             String v = "";
             bac.setArtifactGroup(group);
             if ("".equals(version)) {
-                version = guessVersionNumber(f.getName());
+                version = guessVersionNumber(f);
             }
             bac.setArtifactVersion(version);
             bac.setArtifactName(getFileNameMinusVersion(f, version));
-            bac.setDeployStatus(build.getResult().toString());
+            // the result so far; the final result and duration are set once the build completed
+            bac.setDeployStatus(((build.getResult() == null) ? Result.SUCCESS : build.getResult()).toString());
             bac.setDuration(build.getDuration());
             bac.setEndTime(build.getStartTimeInMillis() + build.getDuration());
             bac.setStartTime(build.getStartTimeInMillis());
@@ -77,38 +62,25 @@ public class DeployBuilder {
             bac.setHygieiaId(buildId);
             bac.setAppName(applicationName);
             bac.setEnvName(environmentName);
-            bac.setJobName(build.getProject().getName());
-            bac.setJobUrl(build.getProject().getAbsoluteUrl());
+            bac.setJobName(context.getJobName());
+            bac.setJobUrl(context.getJobUrl());
             bac.setNiceName(publisher.getDescriptor().getHygieiaJenkinsName());
-            try {
-                env = build.getEnvironment(listener);
-            } catch (IOException e) {
-                logger.warning("Error getting environment variables");
-            } catch (InterruptedException e) {
-                logger.warning("Error getting environment variables");
-            }
-            if (env != null) {
-                bac.setInstanceUrl(env.get("JENKINS_URL"));
-            } else {
-                String jobPath = "/job" + "/" + build.getProject().getName() + "/";
-                int ind = build.getProject().getAbsoluteUrl().indexOf(jobPath);
-                bac.setInstanceUrl(build.getProject().getAbsoluteUrl().substring(0, ind));
-            }
+            bac.setInstanceUrl(context.getInstanceUrl());
 
             deploys.add(bac);
         }
     }
 
-    private static String getFileNameMinusVersion(File file, String version) {
-        String ext = FilenameUtils.getExtension(file.getName());
-        if ("".equals(version)) return file.getName();
+    private static String getFileNameMinusVersion(String fileName, String version) {
+        String ext = FilenameUtils.getExtension(fileName);
+        if ("".equals(version)) return fileName;
 
-        int vIndex = file.getName().indexOf(version);
-        if (vIndex <= 0) return file.getName();
-        if ((file.getName().charAt(vIndex - 1) == '-') || (file.getName().charAt(vIndex - 1) == '_')) {
+        int vIndex = fileName.indexOf(version);
+        if (vIndex <= 0) return fileName;
+        if ((fileName.charAt(vIndex - 1) == '-') || (fileName.charAt(vIndex - 1) == '_')) {
             vIndex = vIndex - 1;
         }
-        return file.getName().substring(0, vIndex) + "." + ext;
+        return fileName.substring(0, vIndex) + "." + ext;
     }
 
     private String guessVersionNumber(String source) {
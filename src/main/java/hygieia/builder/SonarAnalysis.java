@@ -0,0 +1,96 @@
+package hygieia.builder;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+/**
+ * One Sonar analysis a build ran: the server, the project key and, when the scanner left one, its
+ * report task. A multi-module or multi-scan build runs several, each published on its own.
+ */
+public final class SonarAnalysis {
+    private static final String LEGACY_DASHBOARD = "/dashboard/index/";
+    private static final String DASHBOARD = "/dashboard?id=";
+
+    private final String serverUrl;
+    private final String projectKey;
+    private final String dashboardUrl;
+    private final SonarReportTask reportTask;
+
+    SonarAnalysis(String serverUrl, String projectKey, String dashboardUrl, SonarReportTask reportTask) {
+        this.serverUrl = serverUrl;
+        this.projectKey = projectKey;
+        this.dashboardUrl = dashboardUrl;
+        this.reportTask = reportTask;
+    }
+
+    public static SonarAnalysis fromReportTask(SonarReportTask task) {
+        return new SonarAnalysis(task.getServerUrl(), task.getProjectKey(), task.getDashboardUrl(), task);
+    }
+
+    /**
+     * Reads the server and project key from a dashboard URL printed by the scanner, in either the
+     * {@code /dashboard/index/<key>} or the {@code /dashboard?id=<key>} form.
+     *
+     * @return the analysis, or null if the URL is in neither form
+     */
+    public static SonarAnalysis fromDashboardUrl(String url) {
+        if (StringUtils.isBlank(url)) return null;
+        int index = url.indexOf(LEGACY_DASHBOARD);
+        if (index > 0) {
+            String key = url.substring(index + LEGACY_DASHBOARD.length());
+            return StringUtils.isEmpty(key) ? null : new SonarAnalysis(url.substring(0, index), key, url, null);
+        }
+        index = url.indexOf(DASHBOARD);
+        if (index > 0) {
+            String key = url.substring(index + DASHBOARD.length());
+            int end = key.indexOf('&');
+            if (end >= 0) key = key.substring(0, end);
+            return StringUtils.isEmpty(key) ? null : new SonarAnalysis(url.substring(0, index), decode(key), url, null);
+        }
+        return null;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    /**
+     * @return the dashboard URL the scanner reported, or null if it reported none
+     */
+    public String getDashboardUrl() {
+        return dashboardUrl;
+    }
+
+    /**
+     * @return the scanner's report task, or null if the analysis is only known from the console
+     */
+    public SonarReportTask getReportTask() {
+        return reportTask;
+    }
+
+    /**
+     * @return the server and project key, which identify the analysis within a build
+     */
+    String key() {
+        return serverUrl + "|" + projectKey;
+    }
+
+    @Override
+    public String toString() {
+        return projectKey + " on " + serverUrl;
+    }
+}
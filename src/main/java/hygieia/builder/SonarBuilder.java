@@ -5,10 +5,15 @@ import com.capitalone.dashboard.model.CodeQualityMetricStatus;
 import com.capitalone.dashboard.model.CodeQualityType;
 import com.capitalone.dashboard.request.CodeQualityCreateRequest;
 import hudson.model.AbstractBuild;
-import hudson.model.BuildListener;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.IOUtils;
+import hudson.util.NamingThreadFactory;
+import hygieia.utils.TtlCache;
 import jenkins.plugins.hygieia.HygieiaPublisher;
 import jenkins.plugins.hygieia.RestCall;
+import jenkins.plugins.hygieia.SonarUrlAction;
+import jenkins.plugins.hygieia.SonarUrlLogFilter;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.lang3.StringUtils;
 import org.json.simple.JSONArray;
@@ -17,13 +22,26 @@ import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class SonarBuilder {
@@ -31,7 +49,7 @@ public class SonarBuilder {
     /**
      * Pattern for Sonar project URL in logs
      */
-    public static final String URL_PATTERN_IN_LOGS = ".*" + Pattern.quote("ANALYSIS SUCCESSFUL, you can browse ") + "(.*)";
+    public static final String URL_PATTERN_IN_LOGS = ".*" + Pattern.quote(SonarUrlLogFilter.MARKER) + "(.*)";
     public static final String URL_PROJECT_ID_FRAGMENT = "/api/projects?format=json&key=%s";
     public static final String URL_METRIC_FRAGMENT = "/api/resources?format=json&resource=%s&metrics=%s&includealerts=true";
     public static final String METRICS = "security-violations,ncloc,violations,critical_violations,major_violations,blocker_violations,violations_density,tests,test_success_density,test_errors,test_failures,coverage,line_coverage,sqale_index";
@@ -47,49 +65,498 @@ public class SonarBuilder {
     private static final String FORMATTED_VALUE = "frmt_val";
     private static final String STATUS_WARN = "WARN";
     private static final String STATUS_ALERT = "ALERT";
+    private static final String STATUS_ERROR = "ERROR";
+    private static final String ALERT_STATUS_METRIC = "alert_status";
     private static final String DATE = "date";
+    static final long TAIL_SCAN_BYTES = 64L * 1024 * 1024;
+    static final int TAIL_CHUNK = 64 * 1024;
+    private static final int MAX_URL_LENGTH = 4096;
+    public static final String URL_MEASURES_FRAGMENT = "/api/measures/component?component=%s&metricKeys=%s";
+    /**
+     * The metrics of {@link #METRICS} that still exist on servers with the measures API, which
+     * rejects unknown keys, plus the quality gate status.
+     */
+    public static final String MEASURE_METRICS = "ncloc,violations,critical_violations,major_violations,blocker_violations,tests,test_success_density,test_errors,test_failures,coverage,line_coverage,sqale_index,alert_status";
+    public static final String URL_ANALYSES_FRAGMENT = "/api/project_analyses/search?project=%s&ps=100";
+    public static final String URL_MEASURES_HISTORY_FRAGMENT = "/api/measures/search_history?component=%s&metrics=%s&from=%s&to=%s";
+    public static final String URL_QUALITY_GATE_FRAGMENT = "/api/qualitygates/project_status?analysisId=%s";
+    static final long CE_TASK_TIMEOUT = 300000;
+    static final long CE_POLL_INITIAL = 1000;
+    static final long CE_POLL_MAX = 15000;
+    static final long PERMIT_RETRY = 250;
+    static final long PROJECT_ID_TTL = 3600000;
+
+    /**
+     * Server URL and project key to the project's ID; IDs do not change while a project exists.
+     */
+    private static final TtlCache<String, String> projectIds = new TtlCache<String, String>(PROJECT_ID_TTL, 1000);
+
+    public static final int DEFAULT_SERVER_CONCURRENCY = 4;
+    /**
+     * Analyses published per build at most, so a log full of scanner runs cannot flood a server.
+     */
+    static final int MAX_ANALYSES = 100;
+
+    /**
+     * Sonar server URL to the permits for requests to it, shared by every build.
+     */
+    private static final ConcurrentMap<String, Semaphore> serverPermits = new ConcurrentHashMap<String, Semaphore>();
+    private static volatile int serverConcurrency = DEFAULT_SERVER_CONCURRENCY;
 
-    private String sonarServer;
-    private String sonarProjectName;
+    /**
+     * Schedules the next poll of each compute engine task, and reads waiting for a server permit;
+     * the reads themselves run elsewhere.
+     */
+    private static final ScheduledExecutorService taskPolls = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "Hygieia Sonar task polls"));
+
+    private final SonarAnalysis analysis;
+    private final String sonarServer;
+    private final String sonarProjectName;
     private String sonarProjectID;
     private String buildId;
-    private BuildListener listener;
     private HygieiaPublisher publisher;
 
     /**
-     * Hide utility-class constructor.
+     * Reading the metrics runs after the build finished, off its thread, so it logs to the Jenkins log.
      */
-    public SonarBuilder(AbstractBuild<?, ?> build, HygieiaPublisher publisher, BuildListener listener, String buildId) throws IOException, URISyntaxException, ParseException {
-        this.listener = listener;
+    public SonarBuilder(SonarAnalysis analysis, HygieiaPublisher publisher, String buildId) {
+        this.analysis = analysis;
         this.publisher = publisher;
-        setSonarDetails(build, buildId);
+        this.buildId = buildId;
+        this.sonarServer = analysis.getServerUrl();
+        this.sonarProjectName = analysis.getProjectKey();
     }
 
-    private void setSonarDetails(AbstractBuild build, String buildId) throws IOException, URISyntaxException, ParseException {
-        String sonarBuildLink = extractSonarProjectURLFromLogs(build);
-        this.buildId = buildId;
-        if (!StringUtils.isEmpty(sonarBuildLink)) {
-            this.sonarProjectName = getSonarProjectName(sonarBuildLink);
-            this.sonarServer = sonarBuildLink.substring(0, sonarBuildLink.indexOf("/dashboard/index/" + this.sonarProjectName));
-            this.sonarProjectID = getSonarProjectID(this.sonarProjectName);
+    /**
+     * Sets how many requests may be in flight to one Sonar server at a time, across all builds.
+     * Requests already holding a permit finish under the previous limit.
+     */
+    public static void setServerConcurrency(int concurrency) {
+        int count = Math.max(1, concurrency);
+        if (count == serverConcurrency) return;
+        serverConcurrency = count;
+        serverPermits.clear();
+        logger.info("Hygieia: Sending up to " + count + " request(s) at once to each Sonar server");
+    }
+
+    public static int getServerConcurrency() {
+        return serverConcurrency;
+    }
+
+    /**
+     * Finds every analysis the build ran. The scanners' report tasks identify theirs exactly; the
+     * dashboard URLs printed in the console add the analyses that left no report task. An analysis
+     * found both ways, or printed more than once, is returned once.
+     *
+     * @return the analyses, at most {@link #MAX_ANALYSES}; empty if the build ran none
+     */
+    public static List<SonarAnalysis> findAnalyses(AbstractBuild build, TaskListener listener) throws IOException {
+        Map<String, SonarAnalysis> analyses = new LinkedHashMap<String, SonarAnalysis>();
+        for (SonarReportTask task : SonarReportTask.find(build, listener)) {
+            SonarAnalysis analysis = SonarAnalysis.fromReportTask(task);
+            if (!analyses.containsKey(analysis.key())) analyses.put(analysis.key(), analysis);
+        }
+        for (String url : extractSonarProjectURLsFromLogs(build)) {
+            SonarAnalysis analysis = SonarAnalysis.fromDashboardUrl(url);
+            if (analysis == null) {
+                listener.getLogger().println("Hygieia Publisher: Not a Sonar dashboard URL: " + url);
+            } else if (!analyses.containsKey(analysis.key())) {
+                analyses.put(analysis.key(), analysis);
+            }
+        }
+        List<SonarAnalysis> found = new ArrayList<SonarAnalysis>(analyses.values());
+        if (found.size() > MAX_ANALYSES) {
+            listener.getLogger().println("Hygieia Publisher: Publishing " + MAX_ANALYSES + " of " + found.size() + " Sonar analyses");
+            return new ArrayList<SonarAnalysis>(found.subList(0, MAX_ANALYSES));
         }
+        return found;
+    }
 
+    /**
+     * Receives the metrics of an analysis once they are read.
+     */
+    public interface MetricsCallback {
+        /**
+         * Runs on a thread of the executor the metrics were read on.
+         *
+         * @param metrics the metrics, or null if there are none to publish
+         */
+        void read(CodeQualityCreateRequest metrics);
     }
 
-    public CodeQualityCreateRequest getSonarMetrics() throws ParseException {
-        if (StringUtils.isEmpty(sonarServer) || StringUtils.isEmpty(sonarProjectID)) return null;
+    /**
+     * Reads the analysis' metrics on the executor: through the compute engine and the measures API
+     * when the scanner left a report task, otherwise through the resources API of older servers.
+     * <p>
+     * No thread waits, neither for the compute engine nor for a free server permit. Each poll of
+     * the task is a short task of the executor, and the next one is scheduled on {@link #taskPolls}
+     * with a growing delay; a read that finds every permit of its server taken is scheduled again
+     * the same way. A long analysis or a busy server takes none of the executor's threads.
+     */
+    public void readSonarMetrics(Executor executor, MetricsCallback callback) {
+        executor.execute((analysis.getReportTask() != null)
+                ? new TaskPoll(executor, callback) : new ResourceRead(executor, callback));
+    }
+
+    private CodeQualityCreateRequest getResourceMetrics() throws ParseException {
+        this.sonarProjectID = getSonarProjectID(sonarProjectName);
+        if (StringUtils.isEmpty(sonarProjectID)) return null;
         String url = String.format(sonarServer + URL_METRIC_FRAGMENT, sonarProjectID, METRICS);
-        RestCall restCall = new RestCall();
-        RestCall.RestCallResponse callResponse = restCall.makeRestCallGet(url);
+        RestCall.RestCallResponse callResponse = get(url);
         int responseCode = callResponse.getResponseCode();
         if (responseCode == HttpStatus.SC_OK) {
             String resp = callResponse.getResponseString();
             return buildQualityRequest(resp);
         }
-        listener.getLogger().println("Hygieia Publisher: Sonar Connection Failed. Response: " + responseCode);
+        logger.warning("Hygieia Publisher: Sonar Connection Failed. Response: " + responseCode);
         return null;
     }
 
+    /**
+     * Sends a GET to the analysis' server; the read sending it holds one of the server's permits.
+     */
+    private RestCall.RestCallResponse get(String url) {
+        return new RestCall().makeRestCallGet(url);
+    }
+
+    /**
+     * @return the permits for requests to the server
+     */
+    static Semaphore permits(String server) {
+        Semaphore permits = serverPermits.get(server);
+        if (permits == null) {
+            Semaphore created = new Semaphore(serverConcurrency);
+            permits = serverPermits.putIfAbsent(server, created);
+            if (permits == null) permits = created;
+        }
+        return permits;
+    }
+
+    /**
+     * Reads the measures and quality gate status of the analysis the compute engine finished.
+     * Servers that cannot look up an analysis by ID (before 6.3) give the project's current
+     * measures, which are the latest analysis' ones.
+     */
+    private CodeQualityCreateRequest getAnalysisMetrics(JSONObject task) throws ParseException {
+        if (str(task, "componentId") != null) {
+            this.sonarProjectID = str(task, "componentId");
+            projectIds.put(sonarServer + "|" + sonarProjectName, sonarProjectID);
+        }
+
+        String analysisId = str(task, "analysisId");
+        String projectName = str(task, "componentName");
+        Map<String, String> values = (analysisId == null) ? null : getMeasuresOfAnalysis(analysisId);
+        JSONObject gate = null;
+        if (values == null) {
+            JSONObject component = getCurrentMeasures();
+            if (component == null) return null;
+            projectName = str(component, NAME);
+            values = measureValues((JSONArray) component.get("measures"));
+        } else {
+            gate = getQualityGate(analysisId);
+        }
+
+        CodeQualityCreateRequest codeQuality = new CodeQualityCreateRequest();
+        codeQuality.setProjectName(StringUtils.isEmpty(projectName) ? sonarProjectName : projectName);
+        codeQuality.setProjectUrl(StringUtils.isEmpty(analysis.getDashboardUrl())
+                ? sonarServer + "/dashboard/index/" + sonarProjectName : analysis.getDashboardUrl());
+        codeQuality.setNiceName(publisher.getDescriptor().getHygieiaJenkinsName());
+        codeQuality.setType(CodeQualityType.StaticAnalysis);
+        codeQuality.setTimestamp(timestamp(task, "executedAt"));
+        codeQuality.setHygieiaId(buildId);
+        codeQuality.setProjectId(sonarProjectID);
+        codeQuality.setServerUrl(sonarServer);
+        codeQuality.getMetrics().addAll(measureMetrics(values, gate));
+        return codeQuality;
+    }
+
+    /**
+     * @return the measures of the analysis, or null if the server cannot look the analysis up
+     */
+    private Map<String, String> getMeasuresOfAnalysis(String analysisId) throws ParseException {
+        RestCall.RestCallResponse callResponse = get(String.format(sonarServer + URL_ANALYSES_FRAGMENT, encode(sonarProjectName)));
+        if (callResponse.getResponseCode() != HttpStatus.SC_OK) {
+            logger.fine("Hygieia Publisher: Sonar server " + sonarServer + " cannot list analyses. Response: "
+                    + callResponse.getResponseCode());
+            return null;
+        }
+        String date = analysisDate(callResponse.getResponseString(), analysisId);
+        if (date == null) {
+            logger.warning("Hygieia Publisher: Sonar analysis " + analysisId + " of " + sonarProjectName
+                    + " is not among its latest analyses; publishing the current measures");
+            return null;
+        }
+        callResponse = get(String.format(sonarServer + URL_MEASURES_HISTORY_FRAGMENT,
+                encode(sonarProjectName), MEASURE_METRICS, encode(date), encode(date)));
+        if (callResponse.getResponseCode() != HttpStatus.SC_OK) {
+            logger.warning("Hygieia Publisher: Sonar Connection Failed. Response: " + callResponse.getResponseCode());
+            return null;
+        }
+        return historyValues(callResponse.getResponseString());
+    }
+
+    /**
+     * @return the {@code component} of the project's current measures, or null if they could not be read
+     */
+    private JSONObject getCurrentMeasures() throws ParseException {
+        String url = String.format(sonarServer + URL_MEASURES_FRAGMENT, encode(sonarProjectName), MEASURE_METRICS);
+        RestCall.RestCallResponse callResponse = get(url);
+        if (callResponse.getResponseCode() != HttpStatus.SC_OK) {
+            logger.warning("Hygieia Publisher: Sonar Connection Failed. Response: " + callResponse.getResponseCode());
+            return null;
+        }
+        return (JSONObject) ((JSONObject) new JSONParser().parse(callResponse.getResponseString())).get("component");
+    }
+
+    /**
+     * @return the {@code projectStatus} of the analysis' quality gate, or null if it could not be read
+     */
+    private JSONObject getQualityGate(String analysisId) throws ParseException {
+        RestCall.RestCallResponse callResponse = get(String.format(sonarServer + URL_QUALITY_GATE_FRAGMENT, encode(analysisId)));
+        if (callResponse.getResponseCode() != HttpStatus.SC_OK) {
+            logger.warning("Hygieia Publisher: Could not read the quality gate of Sonar analysis " + analysisId
+                    + ". Response: " + callResponse.getResponseCode());
+            return null;
+        }
+        return (JSONObject) ((JSONObject) new JSONParser().parse(callResponse.getResponseString())).get("projectStatus");
+    }
+
+    /**
+     * @return the date of the analysis in a {@code project_analyses/search} response, or null if it is not listed
+     */
+    static String analysisDate(String json, String analysisId) throws ParseException {
+        JSONArray analyses = (JSONArray) ((JSONObject) new JSONParser().parse(json)).get("analyses");
+        if (analyses == null) return null;
+        for (Object analysisObj : analyses) {
+            JSONObject analysisJson = (JSONObject) analysisObj;
+            if (analysisId.equals(analysisJson.get(KEY))) return (String) analysisJson.get(DATE);
+        }
+        return null;
+    }
+
+    /**
+     * @return each metric's value in a {@code measures/search_history} response bounded to one
+     * analysis, in the order of the response
+     */
+    static Map<String, String> historyValues(String json) throws ParseException {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        JSONArray measures = (JSONArray) ((JSONObject) new JSONParser().parse(json)).get("measures");
+        if (measures == null) return values;
+        for (Object measureObj : measures) {
+            JSONObject measureJson = (JSONObject) measureObj;
+            JSONArray history = (JSONArray) measureJson.get("history");
+            if (history == null || history.isEmpty()) continue;
+            Object value = ((JSONObject) history.get(history.size() - 1)).get("value");
+            if (value != null) values.put((String) measureJson.get("metric"), value.toString());
+        }
+        return values;
+    }
+
+    private static Map<String, String> measureValues(JSONArray measures) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        if (measures == null) return values;
+        for (Object measureObj : measures) {
+            JSONObject measureJson = (JSONObject) measureObj;
+            Object value = measureJson.get("value");
+            values.put((String) measureJson.get("metric"), (value == null) ? null : value.toString());
+        }
+        return values;
+    }
+
+    /**
+     * Turns measure values into metrics. The gate status is the status of {@code alert_status},
+     * and each failing or warning gate condition sets the status and message of its metric.
+     *
+     * @param gate the analysis' quality gate status, or null to use the {@code alert_status} value
+     */
+    static List<CodeQualityMetric> measureMetrics(Map<String, String> values, JSONObject gate) {
+        Map<String, JSONObject> conditions = new LinkedHashMap<String, JSONObject>();
+        JSONArray gateConditions = (gate == null) ? null : (JSONArray) gate.get("conditions");
+        if (gateConditions != null) {
+            for (Object conditionObj : gateConditions) {
+                JSONObject condition = (JSONObject) conditionObj;
+                conditions.put((String) condition.get("metricKey"), condition);
+            }
+        }
+        List<CodeQualityMetric> metrics = new ArrayList<CodeQualityMetric>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            CodeQualityMetric metric = new CodeQualityMetric(entry.getKey());
+            metric.setValue(measureValue(entry.getValue()));
+            metric.setFormattedValue(entry.getValue());
+            JSONObject condition = conditions.get(entry.getKey());
+            if (ALERT_STATUS_METRIC.equals(entry.getKey())) {
+                metric.setStatus(metricStatus((gate == null) ? entry.getValue() : (String) gate.get("status")));
+            } else if (condition != null) {
+                metric.setStatus(metricStatus((String) condition.get("status")));
+                metric.setStatusMessage(conditionMessage(condition));
+            } else {
+                metric.setStatus(CodeQualityMetricStatus.Ok);
+            }
+            metrics.add(metric);
+        }
+        return metrics;
+    }
+
+    private static String conditionMessage(JSONObject condition) {
+        String status = (String) condition.get("status");
+        Object threshold = condition.get(STATUS_WARN.equals(status) ? "warningThreshold" : "errorThreshold");
+        if (threshold == null || (!STATUS_WARN.equals(status) && !STATUS_ERROR.equals(status))) return null;
+        String comparator = (String) condition.get("comparator");
+        String operator = "LT".equals(comparator) ? "<" : "GT".equals(comparator) ? ">"
+                : "EQ".equals(comparator) ? "=" : "NE".equals(comparator) ? "!=" : String.valueOf(comparator);
+        return condition.get("metricKey") + " " + operator + " " + threshold;
+    }
+
+    /**
+     * @return the compute engine task, or null if it could not be read
+     */
+    private JSONObject getTask(SonarReportTask reportTask) throws ParseException {
+        RestCall.RestCallResponse callResponse = get(reportTask.getCeTaskUrl());
+        if (callResponse.getResponseCode() != HttpStatus.SC_OK) {
+            logger.warning("Hygieia Publisher: Sonar Connection Failed. Response: " + callResponse.getResponseCode());
+            return null;
+        }
+        return (JSONObject) ((JSONObject) new JSONParser().parse(callResponse.getResponseString())).get("task");
+    }
+
+    /**
+     * Hands the metrics over; a failing callback is logged, not rethrown onto the executor.
+     */
+    private void deliver(MetricsCallback callback, CodeQualityCreateRequest metrics) {
+        try {
+            callback.read(metrics);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Hygieia Publisher: Error publishing Sonar metrics of " + analysis, e);
+        }
+    }
+
+    /**
+     * A read of the analysis' server, run on the executor. It holds one of the server's permits
+     * while it sends its requests, one after the other, so the analyses of all builds together
+     * stay within {@link #getServerConcurrency()} requests per server. When no permit is free the
+     * read is tried again after {@link #PERMIT_RETRY} instead of waiting for one, so the
+     * executor's threads stay free for other work.
+     */
+    private abstract class ServerRead implements Runnable {
+        final Executor executor;
+        private final MetricsCallback callback;
+        CodeQualityCreateRequest metrics;
+
+        ServerRead(Executor executor, MetricsCallback callback) {
+            this.executor = executor;
+            this.callback = callback;
+        }
+
+        public void run() {
+            Semaphore permits = permits(sonarServer);
+            if (!permits.tryAcquire()) {
+                runAfter(PERMIT_RETRY);
+                return;
+            }
+            boolean done;
+            try {
+                done = read();
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Hygieia Publisher: Error reading Sonar metrics of " + analysis, e);
+                metrics = null;
+                done = true;
+            } finally {
+                permits.release();
+            }
+            if (done) deliver(callback, metrics);
+        }
+
+        /**
+         * Sends the read's requests and sets {@link #metrics}.
+         *
+         * @return false if the read scheduled itself to run again
+         */
+        abstract boolean read() throws ParseException;
+
+        void runAfter(long delay) {
+            taskPolls.schedule(new Runnable() {
+                public void run() {
+                    executor.execute(ServerRead.this);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reads the metrics of an analysis without a report task from the resources API.
+     */
+    private final class ResourceRead extends ServerRead {
+        ResourceRead(Executor executor, MetricsCallback callback) {
+            super(executor, callback);
+        }
+
+        boolean read() throws ParseException {
+            metrics = getResourceMetrics();
+            return true;
+        }
+    }
+
+    /**
+     * One poll of the compute engine task. While the task is queued or running, the poll schedules
+     * the next one with a doubled delay, up to {@link #CE_POLL_MAX}, until {@link #CE_TASK_TIMEOUT}
+     * passes; once it succeeded, the poll reads the analysis' metrics. No server permit is held
+     * between polls, so a long analysis does not hold up the others.
+     */
+    private final class TaskPoll extends ServerRead {
+        private final long deadline = System.currentTimeMillis() + CE_TASK_TIMEOUT;
+        private long delay = CE_POLL_INITIAL;
+
+        TaskPoll(Executor executor, MetricsCallback callback) {
+            super(executor, callback);
+        }
+
+        boolean read() throws ParseException {
+            SonarReportTask reportTask = analysis.getReportTask();
+            JSONObject task = getTask(reportTask);
+            String status = (task == null) ? null : str(task, "status");
+            if ("PENDING".equals(status) || "IN_PROGRESS".equals(status)) {
+                if (System.currentTimeMillis() + delay <= deadline) {
+                    runAfter(delay);
+                    delay = Math.min(delay * 2, CE_POLL_MAX);
+                    return false;
+                }
+                logger.warning("Hygieia Publisher: Sonar analysis " + reportTask.getCeTaskId() + " did not finish in "
+                        + (CE_TASK_TIMEOUT / 1000) + " seconds");
+            } else if ("SUCCESS".equals(status)) {
+                metrics = getAnalysisMetrics(task);
+            } else if (task != null) {
+                logger.warning("Hygieia Publisher: Sonar analysis " + reportTask.getCeTaskId() + " ended with status " + status);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The measures API returns every value as a string; numbers are published as numbers, as the resources API did.
+     */
+    static Object measureValue(String value) {
+        if (value == null) return null;
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            // not an integer
+        }
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private CodeQualityCreateRequest buildQualityRequest(String json) throws ParseException {
         JSONArray jsonArray = (JSONArray) new JSONParser().parse(json);
         if (!jsonArray.isEmpty()) {
@@ -130,58 +597,119 @@ public class SonarBuilder {
         return 0;
     }
 
-    private CodeQualityMetricStatus metricStatus(String status) {
+    static CodeQualityMetricStatus metricStatus(String status) {
         if (StringUtils.isBlank(status)) {
             return CodeQualityMetricStatus.Ok;
         }
         if (status.equalsIgnoreCase(STATUS_WARN)) {
             return CodeQualityMetricStatus.Warning;
         }
-        if (status.equalsIgnoreCase(STATUS_WARN)) {
+        if (status.equalsIgnoreCase(STATUS_ALERT) || status.equalsIgnoreCase(STATUS_ERROR)) {
             return CodeQualityMetricStatus.Alert;
         }
         return CodeQualityMetricStatus.Ok;
-
     }
 
     /**
-     * Read logs of the build to find URL of the project dashboard in Sonar
+     * Finds the URLs of the project dashboards in Sonar, in the order they were printed: from the
+     * URLs captured while the build ran, or for builds older than {@link SonarUrlLogFilter}, from
+     * the end of the log.
      */
-    private String extractSonarProjectURLFromLogs(AbstractBuild build) throws IOException {
+    private static List<String> extractSonarProjectURLsFromLogs(AbstractBuild build) throws IOException {
+        SonarUrlAction action = (SonarUrlAction) build.getAction(SonarUrlAction.class);
+        if (action != null) return action.getUrls();
+
+        File log = build.getLogFile();
+        if (log.isFile() && !log.getName().endsWith(".gz")) {
+            return findUrls(log, TAIL_SCAN_BYTES);
+        }
         BufferedReader br = null;
-        String url = null;
+        List<String> urls = new ArrayList<String>();
         try {
             br = new BufferedReader(build.getLogReader());
             String strLine;
-            Pattern p = Pattern.compile(URL_PATTERN_IN_LOGS);
             while ((strLine = br.readLine()) != null) {
-                Matcher match = p.matcher(strLine);
-                if (match.matches()) {
-                    url = match.group(1);
+                int index = strLine.lastIndexOf(SonarUrlLogFilter.MARKER);
+                if (index >= 0) {
+                    urls.add(strLine.substring(index + SonarUrlLogFilter.MARKER.length()).trim());
                 }
             }
         } finally {
             IOUtils.closeQuietly(br);
         }
-        return url;
+        return urls;
+    }
+
+    /**
+     * Searches the log backwards from its end, a chunk at a time, for Sonar URL lines.
+     *
+     * @param maxBytes how far back from the end to search
+     * @return the URLs found, in the order they were printed
+     */
+    static List<String> findUrls(File log, long maxBytes) throws IOException {
+        byte[] marker = SonarUrlLogFilter.MARKER_BYTES;
+        List<String> urls = new ArrayList<String>();
+        RandomAccessFile file = new RandomAccessFile(log, "r");
+        try {
+            long size = file.length();
+            long limit = Math.max(0, size - maxBytes);
+            byte[] buffer = new byte[TAIL_CHUNK + marker.length];
+            long end = size;
+            while (end > limit) {
+                long start = Math.max(limit, end - TAIL_CHUNK);
+                int length = (int) (end - start);
+                // overlap the next chunk so a marker across the boundary is found
+                int read = length + (int) Math.min(marker.length - 1, size - end);
+                file.seek(start);
+                file.readFully(buffer, 0, read);
+                for (int i = Math.min(length - 1, read - marker.length); i >= 0; i--) {
+                    if (startsWith(buffer, i, marker)) {
+                        String url = readLine(file, start + i + marker.length);
+                        if (!StringUtils.isEmpty(url)) urls.add(url);
+                    }
+                }
+                end = start;
+            }
+        } finally {
+            file.close();
+        }
+        Collections.reverse(urls);
+        return urls;
+    }
+
+    private static boolean startsWith(byte[] buffer, int offset, byte[] marker) {
+        for (int j = 0; j < marker.length; j++) {
+            if (buffer[offset + j] != marker[j]) return false;
+        }
+        return true;
+    }
+
+    private static String readLine(RandomAccessFile file, long position) throws IOException {
+        byte[] line = new byte[MAX_URL_LENGTH];
+        file.seek(position);
+        int read = Math.max(0, file.read(line));
+        int length = 0;
+        while (length < read && line[length] != '\n') length++;
+        return SonarUrlLogFilter.urlAfterMarker(line, 0, length);
     }
 
-    private String getSonarProjectName(String url) throws URISyntaxException {
-        URI uri = new URI(url);
-        String[] segments = uri.getPath().split("/");
-        if (segments.length > 1) {
-            return segments[segments.length - 1];
-        } else return "";
+    private String getSonarProjectID(String project) throws ParseException {
+        String key = sonarServer + "|" + project;
+        String cached = projectIds.get(key);
+        if (cached != null) return cached;
+        String id = lookupSonarProjectID(project);
+        if (!StringUtils.isEmpty(id)) projectIds.put(key, id);
+        return id;
     }
 
-    private String getSonarProjectID(String project) throws IOException, URISyntaxException, ParseException {
-        String url = String.format(sonarServer + URL_PROJECT_ID_FRAGMENT, project);
-        RestCall restCall = new RestCall();
-        RestCall.RestCallResponse callResponse = restCall.makeRestCallGet(url);
+    private String lookupSonarProjectID(String project) throws ParseException {
+        String url = String.format(sonarServer + URL_PROJECT_ID_FRAGMENT, encode(project));
+        RestCall.RestCallResponse callResponse = get(url);
         int responseCode = callResponse.getResponseCode();
         if (responseCode == HttpStatus.SC_OK) {
             String resp = callResponse.getResponseString();
             JSONArray arr = (JSONArray) new JSONParser().parse(resp);
+            if (arr.isEmpty()) return "";
             JSONObject obj = (JSONObject) arr.get(0);
             return str(obj, "id");
         }
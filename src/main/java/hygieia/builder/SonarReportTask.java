@@ -0,0 +1,135 @@
+package hygieia.builder;
+
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The {@code report-task.txt} a Sonar scanner leaves in the workspace after submitting an analysis.
+ * <p>
+ * It names the server, the project key and the compute engine task processing the analysis, so
+ * the analysis can be followed through the web API without reading the console log.
+ */
+public class SonarReportTask {
+
+    /**
+     * Where the CLI scanner, the Maven plugin and the Gradle plugin write the file, relative to the workspace.
+     */
+    public static final List<String> LOCATIONS = Collections.unmodifiableList(Arrays.asList(
+            ".sonar/report-task.txt", ".scannerwork/report-task.txt", "target/sonar/report-task.txt", "build/sonar/report-task.txt"));
+
+    /**
+     * Files written this long before the build started still count, to allow for clock skew between controller and agent.
+     */
+    static final long CLOCK_SKEW = 60000;
+
+    private final Properties properties;
+
+    SonarReportTask(Properties properties) {
+        this.properties = properties;
+    }
+
+    public static SonarReportTask parse(String text) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new StringReader(text));
+        return new SonarReportTask(properties);
+    }
+
+    /**
+     * @return the report tasks written during the build, in the workspace and then in each of its
+     *         directories, in {@link #LOCATIONS} order; empty if there are none
+     */
+    public static List<SonarReportTask> find(AbstractBuild build, TaskListener listener) {
+        List<SonarReportTask> tasks = new ArrayList<SonarReportTask>();
+        FilePath workspace = build.getWorkspace();
+        if (workspace == null) return tasks;
+        try {
+            for (String text : workspace.act(new Reader(LOCATIONS, build.getStartTimeInMillis() - CLOCK_SKEW))) {
+                SonarReportTask task = parse(text);
+                if (task.isComplete()) tasks.add(task);
+            }
+        } catch (IOException e) {
+            listener.getLogger().println("Hygieia Publisher: Error reading Sonar report task: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            listener.getLogger().println("Hygieia Publisher: Interrupted while reading Sonar report task");
+        }
+        return tasks;
+    }
+
+    public String getServerUrl() {
+        String url = properties.getProperty("serverUrl");
+        return (url != null && url.endsWith("/")) ? url.substring(0, url.length() - 1) : url;
+    }
+
+    public String getProjectKey() {
+        return properties.getProperty("projectKey");
+    }
+
+    public String getDashboardUrl() {
+        return properties.getProperty("dashboardUrl");
+    }
+
+    public String getCeTaskId() {
+        return properties.getProperty("ceTaskId");
+    }
+
+    public String getCeTaskUrl() {
+        String url = properties.getProperty("ceTaskUrl");
+        return (url != null) ? url : getServerUrl() + "/api/ce/task?id=" + getCeTaskId();
+    }
+
+    boolean isComplete() {
+        return getServerUrl() != null && getProjectKey() != null && getCeTaskId() != null;
+    }
+
+    /**
+     * Reads the report task files that exist and were written after a given time, on the machine
+     * that holds the workspace. Scanners run once per module or per subproject write theirs below
+     * the module's directory, so the directories directly in the workspace are searched as well.
+     */
+    static final class Reader implements FilePath.FileCallable<ArrayList<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<String> locations;
+        private final long notBefore;
+
+        Reader(List<String> locations, long notBefore) {
+            this.locations = new ArrayList<String>(locations);
+            this.notBefore = notBefore;
+        }
+
+        public ArrayList<String> invoke(File workspace, VirtualChannel channel) throws IOException {
+            ArrayList<String> texts = new ArrayList<String>();
+            read(workspace, texts);
+            File[] modules = workspace.listFiles();
+            if (modules != null) {
+                Arrays.sort(modules);
+                for (File module : modules) {
+                    if (module.isDirectory() && !module.getName().startsWith(".")) read(module, texts);
+                }
+            }
+            return texts;
+        }
+
+        private void read(File directory, List<String> texts) throws IOException {
+            for (String location : locations) {
+                File file = new File(directory, location);
+                if (file.isFile() && file.lastModified() >= notBefore) {
+                    texts.add(FileUtils.readFileToString(file, "UTF-8"));
+                }
+            }
+        }
+    }
+}
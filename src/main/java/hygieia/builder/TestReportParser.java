@@ -0,0 +1,147 @@
+package hygieia.builder;
+
+import com.capitalone.dashboard.model.TestCapability;
+import com.capitalone.dashboard.model.TestSuite;
+import com.capitalone.dashboard.model.TestSuiteType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hygieia.transformer.CucumberJsonStreamTransformer;
+import hygieia.utils.JsonMappers;
+import hygieia.utils.ParallelFileProcessor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Parses the Cucumber reports of a build on the machine that holds the workspace.
+ * <p>
+ * Only the resulting capabilities come back to the controller, as gzipped JSON, so neither the
+ * controller's CPU nor the remoting channel has to carry the reports themselves.
+ */
+public class TestReportParser implements FilePath.FileCallable<byte[]> {
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<String> paths;
+    private final String executionId;
+    private final int parallelism;
+    private final TaskListener listener;
+
+    /**
+     * @param paths workspace-relative paths of the reports
+     */
+    public TestReportParser(List<String> paths, String executionId, int parallelism, TaskListener listener) {
+        this.paths = new ArrayList<String>(paths);
+        this.executionId = executionId;
+        this.parallelism = parallelism;
+        this.listener = listener;
+    }
+
+    public byte[] invoke(File workspace, VirtualChannel channel) throws IOException {
+        List<File> testFiles = new ArrayList<File>();
+        for (String path : paths) {
+            testFiles.add(new File(workspace, path));
+        }
+        Collections.sort(testFiles);
+        ParallelFileProcessor.setParallelism(parallelism);
+        List<TestCapability> capabilities = getCapabilities(testFiles);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        try {
+            JsonMappers.writerFor(TestCapability[].class).writeValue(out, capabilities.toArray(new TestCapability[capabilities.size()]));
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the capabilities returned by {@link #invoke}.
+     */
+    public static List<TestCapability> decode(byte[] result) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(result));
+        try {
+            TestCapability[] capabilities = JsonMappers.readerFor(TestCapability[].class).readValue(in);
+            return new ArrayList<TestCapability>(Arrays.asList(capabilities));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses the report files in parallel. Capabilities keep the order of the files.
+     */
+    private List<TestCapability> getCapabilities(List<File> testFiles) {
+        final CucumberJsonStreamTransformer cucumberTransformer = new CucumberJsonStreamTransformer();
+        return ParallelFileProcessor.process(testFiles, new ParallelFileProcessor.FileFunction<TestCapability>() {
+            public TestCapability apply(File file) {
+                return getCapability(cucumberTransformer, file);
+            }
+        });
+    }
+
+    private TestCapability getCapability(CucumberJsonStreamTransformer cucumberTransformer, File file) {
+        try {
+            listener.getLogger().println("Hygieia Publisher: Processing test file: " + file.getAbsolutePath());
+            CapabilityTally tally = new CapabilityTally();
+            cucumberTransformer.transform(new FileInputStream(file), tally);
+
+            TestCapability cap = tally.capability;
+            cap.setType(TestSuiteType.Functional);
+            cap.setDescription(getCapabilityDescription(file));
+            cap.setStatus(tally.counts.overall());
+            cap.setFailedTestSuiteCount(tally.counts.getFailed());
+            cap.setSkippedTestSuiteCount(tally.counts.getSkipped());
+            cap.setSuccessTestSuiteCount(tally.counts.getSuccess());
+            cap.setUnknownStatusTestSuiteCount(tally.counts.getUnknown());
+            cap.setTotalTestSuiteCount(tally.counts.total());
+            cap.setDuration(tally.duration);
+            cap.setExecutionId(executionId);
+            return cap;
+        } catch (FileNotFoundException e) {
+            listener.getLogger().println("Hygieia Publisher: Test File Not Found: " + file.getAbsolutePath());
+        } catch (JsonProcessingException e) {
+            listener.getLogger().println("Hygieia Publisher: Error Parsing File: " + file.getAbsolutePath());
+        } catch (IOException e) {
+            listener.getLogger().println("Hygieia Publisher: Error Reading File: " + file.getAbsolutePath());
+        }
+        return null;
+    }
+
+    private String getCapabilityDescription (File file) {
+        String newFileName = file.getPath().replace("/"+file.getName(), "");
+        int lastFolderIndex = newFileName.lastIndexOf("/");
+        if (lastFolderIndex > 0) {
+            return newFileName.substring(lastFolderIndex);
+        }
+        return newFileName;
+    }
+
+    /**
+     * Collects the suites of one report into a capability, counting them as they are read.
+     */
+    private static final class CapabilityTally implements CucumberJsonStreamTransformer.SuiteListener {
+        private final TestCapability capability = new TestCapability();
+        private final CucumberJsonStreamTransformer.StatusCounts counts = new CucumberJsonStreamTransformer.StatusCounts();
+        private long duration;
+
+        public void onTestSuite(TestSuite suite) {
+            capability.getTestSuites().add(suite);
+            counts.add(suite.getStatus());
+            duration += suite.getDuration();
+        }
+    }
+}
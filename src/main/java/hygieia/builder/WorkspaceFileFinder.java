@@ -0,0 +1,97 @@
+package hygieia.builder;
+
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hygieia.utils.ScanIndex;
+import hygieia.utils.WorkspaceScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Runs all of a build's file searches in one walk of its workspace, on the machine that holds the
+ * workspace. Only the workspace-relative paths of the matches cross the remoting channel.
+ * <p>
+ * The directory listings of each walk are kept in a {@link ScanIndex} beside the workspace, in
+ * the {@code @tmp} directory Jenkins uses for workspace scratch files, so the next build of the
+ * job only reads the directories that changed.
+ */
+public class WorkspaceFileFinder implements FilePath.FileCallable<HashMap<String, ArrayList<String>>> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = Logger.getLogger(WorkspaceFileFinder.class.getName());
+
+    public static final String ARTIFACTS = "artifacts";
+    public static final String DEPLOYS = "deploys";
+    public static final String TESTS = "tests";
+
+    static final String INDEX_FILE = "hygieia-scan-index";
+
+    private final WorkspaceScanner scanner;
+
+    public WorkspaceFileFinder(WorkspaceScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    public HashMap<String, ArrayList<String>> invoke(File workspace, VirtualChannel channel) throws IOException {
+        String prefix = workspace.getPath() + File.separator;
+        File indexFile = indexFile(workspace);
+        ScanIndex index = ScanIndex.load(indexFile, workspace);
+        Map<String, List<File>> matches = scanner.scanAll(workspace, index);
+        try {
+            index.save(indexFile);
+        } catch (IOException e) {
+            logger.fine("Hygieia: Could not save scan index " + indexFile + ": " + e.getMessage());
+        }
+        logger.fine("Hygieia: Scanned " + workspace + ", reused " + index.getReused() + " and read "
+                + index.getRead() + " directories");
+
+        HashMap<String, ArrayList<String>> paths = new HashMap<String, ArrayList<String>>();
+        for (Map.Entry<String, List<File>> entry : matches.entrySet()) {
+            ArrayList<String> relative = new ArrayList<String>();
+            for (File file : entry.getValue()) {
+                relative.add(file.getPath().substring(prefix.length()).replace(File.separatorChar, '/'));
+            }
+            paths.put(entry.getKey(), relative);
+        }
+        return paths;
+    }
+
+    /**
+     * @return workspace-relative paths of the matches per query key; empty if the workspace is gone
+     */
+    public static Map<String, ArrayList<String>> find(AbstractBuild build, WorkspaceScanner scanner, TaskListener listener) {
+        FilePath workspace = build.getWorkspace();
+        if (!scanner.hasQueries()) return new HashMap<String, ArrayList<String>>();
+        if (workspace == null) {
+            listener.getLogger().println("Hygieia Publisher: No workspace available to search");
+            return new HashMap<String, ArrayList<String>>();
+        }
+        try {
+            return workspace.act(new WorkspaceFileFinder(scanner));
+        } catch (IOException e) {
+            listener.getLogger().println("Hygieia Publisher: Error searching workspace: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            listener.getLogger().println("Hygieia Publisher: Interrupted while searching workspace");
+        }
+        return new HashMap<String, ArrayList<String>>();
+    }
+
+    static File indexFile(File workspace) {
+        return new File(new File(workspace.getParentFile(), workspace.getName() + "@tmp"), INDEX_FILE);
+    }
+
+    /**
+     * @return the file name at the end of a workspace-relative path
+     */
+    static String fileName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
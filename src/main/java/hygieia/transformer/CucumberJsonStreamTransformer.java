@@ -0,0 +1,291 @@
+package hygieia.transformer;
+
+import com.capitalone.dashboard.model.TestCase;
+import com.capitalone.dashboard.model.TestCaseStatus;
+import com.capitalone.dashboard.model.TestCaseStep;
+import com.capitalone.dashboard.model.TestSuite;
+import com.capitalone.dashboard.model.TestSuiteType;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import hygieia.utils.JsonMappers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transforms a Cucumber result JSON report into test suites while reading it token by token.
+ * <p>
+ * Unlike {@link CucumberJsonToTestResultTransformer}, the report is never loaded as a JSON tree:
+ * each feature is turned into a {@link TestSuite} as soon as its closing brace is read, with
+ * statuses and durations counted along the way. Fields that are not mapped are skipped without
+ * being materialized, so memory use is bounded by the largest feature rather than by the file.
+ * <p>
+ * The report is read as raw UTF-8 bytes. Values inside skipped subtrees, such as base64
+ * screenshots under {@code embeddings}, are scanned past at the byte level and never decoded into
+ * Java strings, so a report made mostly of attachments parses in time proportional to its
+ * test content.
+ */
+public class CucumberJsonStreamTransformer implements Transformer<InputStream, List<TestSuite>> {
+
+    /**
+     * Receives each feature of the report as a test suite, in report order.
+     */
+    public interface SuiteListener {
+        void onTestSuite(TestSuite suite);
+    }
+
+    public List<TestSuite> transformer(InputStream source) {
+        if (source == null) {
+            throw new IllegalArgumentException("source must not be null");
+        }
+        final List<TestSuite> suites = new ArrayList<TestSuite>();
+        try {
+            transform(source, new SuiteListener() {
+                public void onTestSuite(TestSuite suite) {
+                    suites.add(suite);
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read Cucumber JSON: " + e.getMessage(), e);
+        }
+        return suites;
+    }
+
+    /**
+     * Reads the report, handing every feature to the listener as soon as it is complete. Closes the source.
+     */
+    public void transform(InputStream source, SuiteListener listener) throws IOException {
+        JsonParser parser = JsonMappers.mapper().getFactory().createParser(source);
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of features");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == JsonToken.START_OBJECT) {
+                    listener.onTestSuite(readFeature(parser));
+                } else if (token == null) {
+                    throw new JsonParseException(parser, "Unexpected end of report");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    private TestSuite readFeature(JsonParser parser) throws IOException {
+        TestSuite suite = new TestSuite();
+        suite.setType(TestSuiteType.Functional);
+        String keyword = null;
+        String name = null;
+        long duration = 0;
+        StatusCounts counts = new StatusCounts();
+
+        while (nextField(parser)) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field)) {
+                suite.setId(text(parser));
+            } else if ("keyword".equals(field)) {
+                keyword = text(parser);
+            } else if ("name".equals(field)) {
+                name = text(parser);
+            } else if ("elements".equals(field) && value == JsonToken.START_ARRAY) {
+                while (nextObject(parser)) {
+                    TestCase testCase = readScenario(parser);
+                    duration += testCase.getDuration();
+                    counts.add(testCase.getStatus());
+                    suite.getTestCases().add(testCase);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        suite.setDescription(keyword + ":" + name);
+        suite.setSuccessTestCaseCount(counts.getSuccess());
+        suite.setFailedTestCaseCount(counts.getFailed());
+        suite.setSkippedTestCaseCount(counts.getSkipped());
+        suite.setTotalTestCaseCount(counts.total());
+        suite.setUnknownStatusCount(counts.getUnknown());
+        suite.setDuration(duration);
+        suite.setStatus(counts.overall());
+        return suite;
+    }
+
+    private TestCase readScenario(JsonParser parser) throws IOException {
+        TestCase testCase = new TestCase();
+        String keyword = null;
+        String name = null;
+        long duration = 0;
+        StatusCounts counts = new StatusCounts();
+
+        while (nextField(parser)) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field)) {
+                testCase.setId(text(parser));
+            } else if ("keyword".equals(field)) {
+                keyword = text(parser);
+            } else if ("name".equals(field)) {
+                name = text(parser);
+            } else if ("steps".equals(field) && value == JsonToken.START_ARRAY) {
+                while (nextObject(parser)) {
+                    TestCaseStep step = readStep(parser);
+                    duration += step.getDuration();
+                    counts.add(step.getStatus());
+                    testCase.getTestSteps().add(step);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        testCase.setDescription(keyword + ":" + name);
+        testCase.setDuration(duration);
+        testCase.setSuccessTestStepCount(counts.getSuccess());
+        testCase.setSkippedTestStepCount(counts.getSkipped());
+        testCase.setFailedTestStepCount(counts.getFailed());
+        testCase.setUnknownStatusCount(counts.getUnknown());
+        testCase.setTotalTestStepCount(counts.total());
+        testCase.setStatus(counts.overall());
+        return testCase;
+    }
+
+    private TestCaseStep readStep(JsonParser parser) throws IOException {
+        TestCaseStep step = new TestCaseStep();
+        String keyword = null;
+        String name = null;
+        TestCaseStatus status = TestCaseStatus.Unknown;
+
+        while (nextField(parser)) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("keyword".equals(field)) {
+                keyword = text(parser);
+            } else if ("name".equals(field)) {
+                name = text(parser);
+            } else if ("line".equals(field)) {
+                step.setId(text(parser));
+            } else if ("result".equals(field) && value == JsonToken.START_OBJECT) {
+                status = readResult(parser, step);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        step.setDescription(keyword + ":" + name);
+        step.setStatus(status);
+        return step;
+    }
+
+    private TestCaseStatus readResult(JsonParser parser, TestCaseStep step) throws IOException {
+        TestCaseStatus status = TestCaseStatus.Unknown;
+        while (nextField(parser)) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("status".equals(field)) {
+                status = parseStatus(text(parser));
+            } else if ("duration".equals(field)) {
+                step.setDuration(parser.getValueAsLong() / 1000000l);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return status;
+    }
+
+    private TestCaseStatus parseStatus(String status) {
+        if ("passed".equalsIgnoreCase(status)) return TestCaseStatus.Success;
+        if ("failed".equalsIgnoreCase(status)) return TestCaseStatus.Failure;
+        if ("skipped".equalsIgnoreCase(status)) return TestCaseStatus.Skipped;
+        return TestCaseStatus.Unknown;
+    }
+
+    /**
+     * @return true if positioned on the next field name, false at the end of the object
+     */
+    private static boolean nextField(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.FIELD_NAME) return true;
+        if (token == JsonToken.END_OBJECT) return false;
+        throw new JsonParseException(parser, "Expected a field name but found " + token);
+    }
+
+    /**
+     * @return true if positioned on the start of the next object in an array, false at the end of the array
+     */
+    private static boolean nextObject(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) return true;
+            if (token == null) throw new JsonParseException(parser, "Unexpected end of report");
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static String text(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) return null;
+        String text = parser.getValueAsString();
+        if (text == null) parser.skipChildren();
+        return text;
+    }
+
+    /**
+     * Running tally of statuses, rolled up the same way at every level: any failure fails the
+     * whole, then any skip skips it, then any success passes it.
+     */
+    public static final class StatusCounts {
+        private int success;
+        private int failed;
+        private int skipped;
+        private int unknown;
+
+        public void add(TestCaseStatus status) {
+            switch (status) {
+                case Success:
+                    success++;
+                    break;
+                case Failure:
+                    failed++;
+                    break;
+                case Skipped:
+                    skipped++;
+                    break;
+                default:
+                    unknown++;
+                    break;
+            }
+        }
+
+        public int getSuccess() {
+            return success;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getUnknown() {
+            return unknown;
+        }
+
+        public int total() {
+            return success + failed + skipped + unknown;
+        }
+
+        public TestCaseStatus overall() {
+            if (failed > 0) return TestCaseStatus.Failure;
+            if (skipped > 0) return TestCaseStatus.Skipped;
+            if (success > 0) return TestCaseStatus.Success;
+            return TestCaseStatus.Unknown;
+        }
+    }
+}
@@ -1,15 +1,8 @@
 package hygieia.utils;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import jenkins.plugins.hygieia.CustomObjectMapper;
-import org.apache.commons.io.IOCase;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
-
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -19,31 +12,29 @@ public class HygieiaUtils {
     public static final String APPLICATION_JSON_VALUE = "application/json";
 
     public static byte[] convertObjectToJsonBytes(Object object) throws IOException {
-        ObjectMapper mapper = new CustomObjectMapper();
-        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-        return mapper.writeValueAsBytes(object);
+        return JsonMappers.writerFor(object.getClass()).writeValueAsBytes(object);
+    }
+
+    /**
+     * Writes the object as UTF-8 JSON to the stream, leaving the stream open.
+     */
+    public static void writeJson(Object object, OutputStream out) throws IOException {
+        JsonMappers.writerFor(object.getClass()).writeValue(out, object);
     }
 
     public static Object convertJsonToObject (String json, Class thisClass) throws IOException {
-        ObjectMapper mapper = new CustomObjectMapper();
-        return mapper.readValue(json,thisClass);
+        return JsonMappers.readerFor(thisClass).readValue(json);
     }
 
+    /**
+     * Adds the files under the directory that match the pattern, using the default excludes of {@link WorkspaceScanner}.
+     */
     public static List<File> getArtifactFiles(File rootDirectory, String pattern, List<File> results) {
-        FileFilter filter = new WildcardFileFilter(pattern.replace("**", "*"), IOCase.SYSTEM);
-        File[] temp = rootDirectory.listFiles(filter);
-        if ((temp != null) && (temp.length > 0)) {
-            results.addAll(Arrays.asList(temp));
+        try {
+            results.addAll(new WorkspaceScanner(pattern).scan(rootDirectory));
+        } catch (IOException e) {
+            logger.warning("Hygieia: Error scanning " + rootDirectory + " for " + pattern + ": " + e.getMessage());
         }
-
-        temp = rootDirectory.listFiles();
-        if ((temp != null) && (temp.length > 0))
-            for (File currentItem : rootDirectory.listFiles()) {
-                if (currentItem.isDirectory()) {
-                    getArtifactFiles(currentItem, pattern, results);
-                }
-            }
-
         return results;
     }
 
@@ -0,0 +1,88 @@
+package hygieia.utils;
+
+import com.capitalone.dashboard.request.BinaryArtifactCreateRequest;
+import com.capitalone.dashboard.request.BuildDataCreateRequest;
+import com.capitalone.dashboard.request.CodeQualityCreateRequest;
+import com.capitalone.dashboard.request.DeployDataCreateRequest;
+import com.capitalone.dashboard.request.TestDataCreateRequest;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import jenkins.plugins.hygieia.CustomObjectMapper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared, thread-safe JSON readers and writers, one per type.
+ * <p>
+ * Building an ObjectMapper per call throws away Jackson's serializer caches and repeats bean
+ * introspection for every payload. The mapper here is configured once (NON_NULL inclusion, target
+ * streams left open) and the writers and readers for the Hygieia request types are created and
+ * warmed up when the plugin starts.
+ */
+public final class JsonMappers {
+    private static final Logger logger = Logger.getLogger(JsonMappers.class.getName());
+
+    private static final Class<?>[] REQUEST_TYPES = {BuildDataCreateRequest.class, BinaryArtifactCreateRequest.class,
+            TestDataCreateRequest.class, CodeQualityCreateRequest.class, DeployDataCreateRequest.class};
+
+    private static final ObjectMapper MAPPER = createMapper();
+    private static final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+    private static final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+    private JsonMappers() {
+    }
+
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = new CustomObjectMapper();
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        return mapper;
+    }
+
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    public static ObjectWriter writerFor(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        if (writer == null) {
+            writer = MAPPER.writerFor(type);
+            ObjectWriter existing = writers.putIfAbsent(type, writer);
+            if (existing != null) writer = existing;
+        }
+        return writer;
+    }
+
+    public static ObjectReader readerFor(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = MAPPER.readerFor(type);
+            ObjectReader existing = readers.putIfAbsent(type, reader);
+            if (existing != null) reader = existing;
+        }
+        return reader;
+    }
+
+    /**
+     * Resolves and caches the serializers of the Hygieia request types so the first build does not pay for it.
+     */
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void warmUp() {
+        for (Class<?> type : REQUEST_TYPES) {
+            try {
+                writerFor(type).writeValueAsBytes(type.newInstance());
+                readerFor(type);
+            } catch (Exception e) {
+                logger.log(Level.FINE, "Hygieia: Could not warm up JSON mapping of " + type.getName(), e);
+            }
+        }
+    }
+}
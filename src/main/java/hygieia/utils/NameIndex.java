@@ -0,0 +1,63 @@
+package hygieia.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable set of names searchable by case-insensitive prefix.
+ * <p>
+ * The names are kept sorted by their lower-case form, so the names starting with a prefix are a
+ * contiguous range found with a binary search instead of a pass over every name.
+ */
+public final class NameIndex {
+    public static final NameIndex EMPTY = new NameIndex(Collections.<String>emptyList());
+
+    private final String[] folded;
+    private final String[] names;
+
+    /**
+     * @param names the names; blanks are left out, and names differing only in case are kept once
+     */
+    public NameIndex(Collection<String> names) {
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (String name : names) {
+            if (name == null || name.trim().isEmpty()) continue;
+            String key = fold(name);
+            if (!sorted.containsKey(key)) sorted.put(key, name);
+        }
+        this.folded = sorted.keySet().toArray(new String[sorted.size()]);
+        this.names = sorted.values().toArray(new String[sorted.size()]);
+    }
+
+    static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the names starting with the prefix, ignoring case, in order; all names for an empty prefix
+     */
+    public List<String> startingWith(String prefix) {
+        String key = fold((prefix == null) ? "" : prefix);
+        int from = Arrays.binarySearch(folded, key);
+        if (from < 0) from = -from - 1;
+        List<String> matches = new ArrayList<String>();
+        for (int i = from; i < folded.length && folded[i].startsWith(key); i++) {
+            matches.add(names[i]);
+        }
+        return matches;
+    }
+
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,106 @@
+package hygieia.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Processes report files on a shared, bounded fork/join pool.
+ * <p>
+ * The file list is split in halves until each task holds a single file, so idle workers steal
+ * whole files from busy ones. Results are joined left to right and come back in the order of the
+ * input list, whatever order the files finished in.
+ */
+public final class ParallelFileProcessor {
+    private static final Logger logger = Logger.getLogger(ParallelFileProcessor.class.getName());
+
+    public static final int DEFAULT_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private static ForkJoinPool pool = new ForkJoinPool(DEFAULT_PARALLELISM);
+
+    /**
+     * Work done for one file. Must be safe to call from several threads at once.
+     */
+    public interface FileFunction<T> {
+        /**
+         * @return the result for the file, or null to leave the file out
+         */
+        T apply(File file);
+    }
+
+    private ParallelFileProcessor() {
+    }
+
+    /**
+     * Changes the number of files processed at once. Work already running finishes on the old pool.
+     */
+    public static synchronized void setParallelism(int parallelism) {
+        int count = Math.max(1, parallelism);
+        if (count == pool.getParallelism()) return;
+        ForkJoinPool old = pool;
+        pool = new ForkJoinPool(count);
+        old.shutdown();
+        logger.info("Hygieia: Processing up to " + count + " report file(s) at once");
+    }
+
+    public static synchronized int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return the non-null results of the function, in the order of the files
+     */
+    public static <T> List<T> process(List<File> files, FileFunction<T> function) {
+        if (files.isEmpty()) return new ArrayList<T>();
+        while (true) {
+            ForkJoinPool current;
+            synchronized (ParallelFileProcessor.class) {
+                current = pool;
+            }
+            try {
+                return current.invoke(new Task<T>(files, 0, files.size(), function));
+            } catch (RejectedExecutionException e) {
+                // the pool was replaced by setParallelism; run on the new one
+                if (!current.isShutdown()) throw e;
+            }
+        }
+    }
+
+    private static final class Task<T> extends RecursiveTask<List<T>> {
+        private final List<File> files;
+        private final int from;
+        private final int to;
+        private final FileFunction<T> function;
+
+        Task(List<File> files, int from, int to, FileFunction<T> function) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.function = function;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (to - from == 1) {
+                T result = function.apply(files.get(from));
+                return (result == null) ? Collections.<T>emptyList() : Collections.singletonList(result);
+            }
+            int middle = (from + to) >>> 1;
+            Task<T> left = new Task<T>(files, from, middle, function);
+            Task<T> right = new Task<T>(files, middle, to, function);
+            left.fork();
+            List<T> rightResults = right.compute();
+            List<T> leftResults = left.join();
+
+            List<T> results = new ArrayList<T>(leftResults.size() + rightResults.size());
+            results.addAll(leftResults);
+            results.addAll(rightResults);
+            return results;
+        }
+    }
+}
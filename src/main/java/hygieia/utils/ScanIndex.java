@@ -0,0 +1,297 @@
+package hygieia.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Directory listings remembered between {@link WorkspaceScanner} walks of the same workspace.
+ * <p>
+ * A listing is reused only while its directory still has the same modification time, file key
+ * (the inode on Unix) and size. Adding, removing or renaming an entry changes the directory's
+ * modification time, so an unchanged directory is checked with one stat instead of being read
+ * and having every entry stat'ed. Directories modified within {@link #RACY_WINDOW} of the walk
+ * that recorded them are not remembered, since a later change could land in the same timestamp.
+ * <p>
+ * Each walk replaces the listings with the ones it visited, so directories that are gone or no
+ * longer searched drop out. An index that cannot be read, or that was recorded for another root,
+ * is ignored and the next walk reads every directory.
+ * <p>
+ * The index is saved as UTF-8 text, one tab separated record per line: a header naming the
+ * root, then for each directory a {@code D} line with its path, modification time, size and file
+ * key, followed by an {@code f} line per file and a {@code d} line per subdirectory. Tabs, line
+ * breaks and backslashes in names are escaped. Since the file lives in the workspace, it is parsed
+ * as untrusted input: any malformed line discards the whole index.
+ */
+public class ScanIndex {
+    private static final Logger logger = Logger.getLogger(ScanIndex.class.getName());
+
+    static final long RACY_WINDOW = 2000;
+    static final String HEADER = "hygieia-scan-index 1";
+
+    private final String root;
+    private Map<String, Listing> listings = new HashMap<String, Listing>();
+
+    private Map<String, Listing> visited;
+    private long started;
+    private int reused;
+    private int read;
+
+    public ScanIndex(File root) {
+        this.root = root.getAbsolutePath();
+    }
+
+    /**
+     * @return the index saved at the file for the root, or a new empty one if there is none or it is unusable
+     */
+    public static ScanIndex load(File file, File root) {
+        if (file.isFile()) {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+                try {
+                    ScanIndex index = parse(in, root);
+                    if (index != null) return index;
+                    logger.fine("Hygieia: Ignoring scan index " + file + " recorded for another directory");
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                logger.fine("Hygieia: Could not read scan index " + file + ": " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                logger.fine("Hygieia: Ignoring malformed scan index " + file + ": " + e.getMessage());
+            }
+        }
+        return new ScanIndex(root);
+    }
+
+    /**
+     * @return the index, or null if it was recorded for another root
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    private static ScanIndex parse(BufferedReader in, File root) throws IOException {
+        if (!HEADER.equals(in.readLine())) throw new IllegalArgumentException("not a scan index");
+        String[] rootLine = fields(in.readLine(), 2);
+        if (!"R".equals(rootLine[0])) throw new IllegalArgumentException("missing root");
+        ScanIndex index = new ScanIndex(root);
+        if (!index.root.equals(rootLine[1])) return null;
+
+        String path = null;
+        String[] directory = null;
+        List<String> files = new ArrayList<String>();
+        List<String> directories = new ArrayList<String>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("D\t")) {
+                if (directory != null) index.listings.put(path, listing(directory, files, directories));
+                directory = fields(line, 5);
+                path = directory[1];
+                files.clear();
+                directories.clear();
+            } else if (directory != null && line.startsWith("f\t")) {
+                files.add(fields(line, 2)[1]);
+            } else if (directory != null && line.startsWith("d\t")) {
+                directories.add(fields(line, 2)[1]);
+            } else {
+                throw new IllegalArgumentException("unexpected line");
+            }
+        }
+        if (directory != null) index.listings.put(path, listing(directory, files, directories));
+        return index;
+    }
+
+    private static Listing listing(String[] directory, List<String> files, List<String> directories) {
+        try {
+            return new Listing(Long.parseLong(directory[2]), Long.parseLong(directory[3]), directory[4],
+                    files.toArray(new String[files.size()]), directories.toArray(new String[directories.size()]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad timestamp or size of " + directory[1]);
+        }
+    }
+
+    /**
+     * Splits a line into its unescaped fields.
+     */
+    private static String[] fields(String line, int count) {
+        if (line == null) throw new IllegalArgumentException("truncated");
+        String[] fields = line.split("\t", -1);
+        if (fields.length != count) throw new IllegalArgumentException("expected " + count + " fields");
+        for (int i = 0; i < count; i++) {
+            fields[i] = unescape(fields[i]);
+        }
+        return fields;
+    }
+
+    /**
+     * Writes the index next to the file and moves it into place, so a concurrent reader sees either version.
+     */
+    public void save(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) throw new IOException("Could not create " + parent);
+        File temp = new File(parent, file.getName() + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+        try {
+            out.write(HEADER + "\n");
+            out.write("R\t" + escape(root) + "\n");
+            for (Map.Entry<String, Listing> entry : listings.entrySet()) {
+                Listing listing = entry.getValue();
+                out.write("D\t" + escape(entry.getKey()) + "\t" + listing.modified + "\t" + listing.size
+                        + "\t" + escape(listing.fileKey) + "\n");
+                for (String name : listing.files) {
+                    out.write("f\t" + escape(name) + "\n");
+                }
+                for (String name : listing.directories) {
+                    out.write("d\t" + escape(name) + "\n");
+                }
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                unescaped.append(c);
+                continue;
+            }
+            if (++i == value.length()) throw new IllegalArgumentException("dangling escape");
+            switch (value.charAt(i)) {
+                case '\\':
+                    unescaped.append('\\');
+                    break;
+                case 't':
+                    unescaped.append('\t');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown escape");
+            }
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * @return directories whose remembered listing was used by the last walk
+     */
+    public int getReused() {
+        return reused;
+    }
+
+    /**
+     * @return directories the last walk had to read
+     */
+    public int getRead() {
+        return read;
+    }
+
+    public int size() {
+        return listings.size();
+    }
+
+    void begin(File directory) {
+        if (!root.equals(directory.getAbsolutePath())) listings.clear();
+        visited = new HashMap<String, Listing>();
+        started = System.currentTimeMillis();
+        reused = 0;
+        read = 0;
+    }
+
+    void end() {
+        listings = visited;
+        visited = null;
+    }
+
+    /**
+     * @return the remembered listing if the directory is unchanged, otherwise null
+     */
+    Listing lookup(String relative, BasicFileAttributes attrs) {
+        Listing listing = listings.get(relative);
+        if (listing == null || !listing.matches(attrs)) return null;
+        visited.put(relative, listing);
+        reused++;
+        return listing;
+    }
+
+    Listing record(String relative, BasicFileAttributes attrs, List<String> files, List<String> directories) {
+        Listing listing = new Listing(attrs, files, directories);
+        read++;
+        if (listing.modified < started - RACY_WINDOW) {
+            visited.put(relative, listing);
+        }
+        return listing;
+    }
+
+    static final class Listing {
+        private final long modified;
+        private final long size;
+        private final String fileKey;
+        final String[] files;
+        final String[] directories;
+
+        Listing(BasicFileAttributes attrs, List<String> files, List<String> directories) {
+            this(attrs.lastModifiedTime().toMillis(), attrs.size(), String.valueOf(attrs.fileKey()),
+                    files.toArray(new String[files.size()]), directories.toArray(new String[directories.size()]));
+        }
+
+        Listing(long modified, long size, String fileKey, String[] files, String[] directories) {
+            this.modified = modified;
+            this.size = size;
+            this.fileKey = fileKey;
+            this.files = files;
+            this.directories = directories;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return modified == attrs.lastModifiedTime().toMillis() && size == attrs.size()
+                    && fileKey.equals(String.valueOf(attrs.fileKey()));
+        }
+    }
+}
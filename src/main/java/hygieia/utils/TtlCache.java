@@ -0,0 +1,81 @@
+package hygieia.utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe map whose entries expire a fixed time after they were put.
+ * <p>
+ * Expired entries are dropped when read, and all of them are swept out whenever the cache grows
+ * past its size limit, so a cache keyed by user input cannot grow without bound.
+ */
+public class TtlCache<K, V> {
+    private final long ttlMillis;
+    private final int maxSize;
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+
+    /**
+     * @param maxSize entries above which expired ones are swept and, failing that, the cache is cleared
+     */
+    public TtlCache(long ttlMillis, int maxSize) {
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the value, or null if there is none or it has expired
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) return null;
+        if (entry.expiresAt <= now()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        if (entries.size() >= maxSize) sweep();
+        entries.put(key, new Entry<V>(value, now() + ttlMillis));
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void sweep() {
+        long now = now();
+        for (Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue().expiresAt <= now) it.remove();
+        }
+        if (entries.size() >= maxSize) entries.clear();
+    }
+
+    /**
+     * The clock; tests override it.
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package hygieia.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Finds the files under a directory that match one or more globs, in a single walk of the tree.
+ * <p>
+ * Each query has a key, a base directory relative to the scanned root and an include pattern.
+ * Patterns without a slash match file names at any depth below the base, which is how the plugin
+ * has always read them ({@code *.json}). Patterns with a slash match the path relative to the base,
+ * and {@code **} crosses directories ({@code reports/**}{@code /*.json}); a leading {@code **}{@code /}
+ * also matches at the top level. Every visited file is checked against all queries at once, and
+ * only directories on the way to or below a query's base are entered.
+ * <p>
+ * Directories matching an exclude pattern (relative to the scanned root) are pruned without being
+ * read. Symbolic links are followed, and links that lead back into a directory being walked are
+ * skipped instead of looping. Given a {@link ScanIndex}, directories unchanged since an earlier
+ * walk are not read again.
+ * <p>
+ * Instances are serializable so they can be sent to an agent; matchers are compiled on first use.
+ */
+public class WorkspaceScanner implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = Logger.getLogger(WorkspaceScanner.class.getName());
+
+    /**
+     * Version control metadata and build output, offered as excludes; none are applied unless configured.
+     */
+    public static final List<String> SUGGESTED_EXCLUDES = Collections.unmodifiableList(Arrays.asList(
+            ".git", ".svn", ".hg", "node_modules", "**/target/classes", "**/target/test-classes"));
+    public static final int DEFAULT_MAX_DEPTH = 64;
+
+    private static final String SINGLE = "";
+
+    private final List<String> excludes;
+    private final int maxDepth;
+    private final Map<String, Query> queries = new LinkedHashMap<String, Query>();
+
+    private transient List<PathMatcher> excludeMatchers;
+
+    /**
+     * Creates a scanner that searches every directory for the pattern.
+     */
+    public WorkspaceScanner(String include) {
+        this(include, Collections.<String>emptyList(), DEFAULT_MAX_DEPTH);
+    }
+
+    public WorkspaceScanner(String include, List<String> excludes, int maxDepth) {
+        this(excludes, maxDepth);
+        addQuery(SINGLE, "", include);
+    }
+
+    /**
+     * Creates a scanner without queries; add them with {@link #addQuery}.
+     *
+     * @param maxDepth deepest directory level searched below each query's base; 0 for no limit
+     */
+    public WorkspaceScanner(List<String> excludes, int maxDepth) {
+        this.excludes = new ArrayList<String>(excludes);
+        this.maxDepth = (maxDepth > 0) ? maxDepth : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Parses a comma or newline separated list of exclude patterns.
+     */
+    public static List<String> parseExcludes(String excludes) {
+        List<String> patterns = new ArrayList<String>();
+        if (excludes == null) return patterns;
+        for (String pattern : excludes.split("[,\\n]")) {
+            if (!pattern.trim().isEmpty()) patterns.add(pattern.trim());
+        }
+        return patterns;
+    }
+
+    /**
+     * Adds a query whose matches are returned under the given key by {@link #scanAll}.
+     *
+     * @param directory base directory relative to the scanned root, with or without a leading slash
+     */
+    public WorkspaceScanner addQuery(String key, String directory, String include) {
+        queries.put(key, new Query(directory, include));
+        return this;
+    }
+
+    public boolean hasQueries() {
+        return !queries.isEmpty();
+    }
+
+    /**
+     * @return the files matching the scanner's single include pattern; empty if the directory does not exist
+     */
+    public List<File> scan(File directory) throws IOException {
+        List<File> files = scanAll(directory).get(SINGLE);
+        return (files == null) ? new ArrayList<File>() : files;
+    }
+
+    /**
+     * Walks the directory once and evaluates every query against each file.
+     *
+     * @return matching regular files per query key, in walk order
+     */
+    public Map<String, List<File>> scanAll(File directory) throws IOException {
+        return scanAll(directory, null);
+    }
+
+    /**
+     * Like {@link #scanAll(File)}, but reuses the listings of directories that have not changed
+     * since the index was last updated, and updates it with this walk.
+     *
+     * @param index listings from earlier walks of the same directory, or null to read every directory
+     */
+    public Map<String, List<File>> scanAll(File directory, ScanIndex index) throws IOException {
+        Map<String, List<File>> results = new LinkedHashMap<String, List<File>>();
+        for (String key : queries.keySet()) {
+            results.put(key, new ArrayList<File>());
+        }
+        Path root = directory.toPath();
+        if (queries.isEmpty() || !Files.isDirectory(root)) return results;
+        compile();
+
+        int deepestBase = 0;
+        for (Query query : queries.values()) {
+            deepestBase = Math.max(deepestBase, query.depth());
+        }
+        int walkDepth = (maxDepth == Integer.MAX_VALUE) ? maxDepth : maxDepth + deepestBase;
+
+        if (index != null) index.begin(directory);
+        walk(root, null, 0, walkDepth, new HashSet<Object>(), index, results);
+        if (index != null) index.end();
+        return results;
+    }
+
+    /**
+     * Visits the directory's files and enters its subdirectories that are neither excluded nor off
+     * the way to every query's base. Symbolic links are followed; a link to a directory that is
+     * already being walked is skipped.
+     *
+     * @param relative the directory relative to the scanned root, null for the root
+     */
+    private void walk(Path dir, Path relative, int depth, int walkDepth, Set<Object> ancestors,
+                      ScanIndex index, Map<String, List<File>> results) {
+        ScanIndex.Listing listing;
+        Object key;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(dir, BasicFileAttributes.class);
+            key = (attrs.fileKey() != null) ? attrs.fileKey() : dir.toRealPath();
+            if (ancestors.contains(key)) {
+                logger.fine("Hygieia: Not following symbolic link loop at " + dir);
+                return;
+            }
+            String name = (relative == null) ? "" : relative.toString().replace(File.separatorChar, '/');
+            listing = (index == null) ? null : index.lookup(name, attrs);
+            if (listing == null) {
+                listing = list(dir, name, attrs, index);
+            }
+        } catch (IOException e) {
+            logger.fine("Hygieia: Could not read " + dir + ": " + e.getMessage());
+            return;
+        }
+
+        for (String name : listing.files) {
+            Path file = (relative == null) ? Paths.get(name) : relative.resolve(name);
+            if (matches(excludeMatchers, file)) continue;
+            for (Map.Entry<String, Query> entry : queries.entrySet()) {
+                if (entry.getValue().matches(file, maxDepth)) {
+                    results.get(entry.getKey()).add(dir.resolve(name).toFile());
+                }
+            }
+        }
+        if (depth >= walkDepth) return;
+
+        ancestors.add(key);
+        for (String name : listing.directories) {
+            Path child = (relative == null) ? Paths.get(name) : relative.resolve(name);
+            if (matches(excludeMatchers, child) || !isOnPathToAnyBase(child)) continue;
+            walk(dir.resolve(name), child, depth + 1, walkDepth, ancestors, index, results);
+        }
+        ancestors.remove(key);
+    }
+
+    private boolean isOnPathToAnyBase(Path dir) {
+        for (Query query : queries.values()) {
+            if (query.isOnPathTo(dir)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the directory's regular files and subdirectories, sorted by name, and records them in the index.
+     */
+    private static ScanIndex.Listing list(Path dir, String name, BasicFileAttributes attrs, ScanIndex index) throws IOException {
+        List<String> files = new ArrayList<String>();
+        List<String> directories = new ArrayList<String>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+        try {
+            for (Path entry : stream) {
+                try {
+                    BasicFileAttributes entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                    if (entryAttrs.isDirectory()) {
+                        directories.add(entry.getFileName().toString());
+                    } else if (entryAttrs.isRegularFile()) {
+                        files.add(entry.getFileName().toString());
+                    }
+                } catch (IOException e) {
+                    logger.fine("Hygieia: Could not read " + entry + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            stream.close();
+        }
+        Collections.sort(files);
+        Collections.sort(directories);
+        if (index != null) return index.record(name, attrs, files, directories);
+        return new ScanIndex.Listing(attrs, files, directories);
+    }
+
+    private void compile() {
+        if (excludeMatchers == null) {
+            excludeMatchers = matchers(excludes);
+        }
+    }
+
+    private static List<PathMatcher> matchers(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+        for (String pattern : patterns) {
+            String glob = stripSlashes(pattern.trim());
+            if (glob.isEmpty()) continue;
+            matchers.add(matcher(glob));
+            if (glob.startsWith("**/")) {
+                matchers.add(matcher(glob.substring(3)));
+            }
+        }
+        return matchers;
+    }
+
+    private static PathMatcher matcher(String glob) {
+        final boolean byName = !glob.contains("/");
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return new PathMatcher() {
+            public boolean matches(Path path) {
+                if (byName) {
+                    Path name = path.getFileName();
+                    return name != null && matcher.matches(name);
+                }
+                return matcher.matches(path);
+            }
+        };
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path relative) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relative)) return true;
+        }
+        return false;
+    }
+
+    private static String stripSlashes(String path) {
+        String stripped = path.replace('\\', '/');
+        while (stripped.startsWith("/")) stripped = stripped.substring(1);
+        while (stripped.endsWith("/")) stripped = stripped.substring(0, stripped.length() - 1);
+        return stripped;
+    }
+
+    private static final class Query implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String directory;
+        private final String include;
+
+        private transient Path base;
+        private transient List<PathMatcher> includeMatchers;
+
+        Query(String directory, String include) {
+            this.directory = stripSlashes(directory.trim());
+            this.include = include.trim();
+        }
+
+        /**
+         * @return the base relative to the scanned root, or null for the root itself
+         */
+        private Path base() {
+            if (includeMatchers == null) {
+                base = directory.isEmpty() ? null : Paths.get(directory).normalize();
+                includeMatchers = matchers(Collections.singletonList(include));
+            }
+            return base;
+        }
+
+        int depth() {
+            Path b = base();
+            return (b == null) ? 0 : b.getNameCount();
+        }
+
+        /**
+         * @return true if the directory is the base, below it, or on the way down to it
+         */
+        boolean isOnPathTo(Path dir) {
+            Path b = base();
+            return b == null || dir.startsWith(b) || b.startsWith(dir);
+        }
+
+        boolean matches(Path file, int maxDepth) {
+            Path b = base();
+            if (b != null && !file.startsWith(b)) return false;
+            Path relative = (b == null) ? file : b.relativize(file);
+            return relative.getNameCount() <= maxDepth && WorkspaceScanner.matches(includeMatchers, relative);
+        }
+    }
+}
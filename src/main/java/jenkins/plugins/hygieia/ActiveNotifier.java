@@ -1,33 +1,56 @@
 package jenkins.plugins.hygieia;
 
-import com.capitalone.dashboard.model.SCM;
 import com.capitalone.dashboard.request.BinaryArtifactCreateRequest;
 import com.capitalone.dashboard.request.BuildDataCreateRequest;
 import com.capitalone.dashboard.request.CodeQualityCreateRequest;
 import com.capitalone.dashboard.request.DeployDataCreateRequest;
 import com.capitalone.dashboard.request.TestDataCreateRequest;
-import hudson.EnvVars;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
+import hudson.model.Result;
 import hygieia.builder.ArtifactBuilder;
-import hygieia.builder.CommitBuilder;
+import hygieia.builder.BuildContext;
 import hygieia.builder.CucumberTestBuilder;
 import hygieia.builder.DeployBuilder;
+import hygieia.builder.SonarAnalysis;
 import hygieia.builder.SonarBuilder;
+import hygieia.builder.WorkspaceFileFinder;
+import hygieia.utils.WorkspaceScanner;
 import org.apache.commons.httpclient.HttpStatus;
-import org.json.simple.parser.ParseException;
+import org.apache.commons.lang.StringUtils;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
+/**
+ * Publishes the builds of a job with the {@link HygieiaPublisher}.
+ * <p>
+ * Everything that reads the build's workspace, agent or log runs on the build's thread: the start
+ * data when the build starts, the workspace files in {@link #collect} while the publisher runs and
+ * the build still holds its workspace, and the completion data once the build completed. Only the
+ * posts are handed to the {@link PublishQueue}; they log to the Jenkins log, since the build's log
+ * is closed by the time they run.
+ */
 @SuppressWarnings("rawtypes")
 public class ActiveNotifier implements FineGrainedNotifier {
 
     private static final Logger logger = Logger.getLogger(HygieiaListener.class.getName());
 
+    /**
+     * What {@link #collect} read from the workspace of each build not yet completed.
+     */
+    private static final ConcurrentMap<AbstractBuild, Collected> collected = new ConcurrentHashMap<AbstractBuild, Collected>();
+
     HygieiaPublisher publisher;
     BuildListener listener;
 
@@ -37,8 +60,8 @@ public class ActiveNotifier implements FineGrainedNotifier {
         this.listener = listener;
     }
 
-    private HygieiaService getHygieiaService(AbstractBuild r) {
-        return publisher.newHygieiaService(r, listener);
+    private HygieiaService getHygieiaService(BuildContext context) {
+        return publisher.newHygieiaService(context);
     }
 
     public void started(AbstractBuild r) {
@@ -50,12 +73,19 @@ public class ActiveNotifier implements FineGrainedNotifier {
 
 
         if (publish) {
-            HygieiaResponse response = getHygieiaService(r).publishBuildData(getBuildData(r, false));
-            if (response.getResponseCode() == HttpStatus.SC_CREATED) {
-                listener.getLogger().println("Hygieia: Published Build Complete Data. " + response.toString());
-            } else {
-                listener.getLogger().println("Hygieia: Failed Publishing Build Complete Data. " + response.toString());
-            }
+            BuildContext context = BuildContext.create(r, listener, publisher.getDescriptor().getMaxCommits());
+            final HygieiaService service = getHygieiaService(context);
+            final BuildDataCreateRequest request = getBuildData(context, false);
+            final String name = context.getBuildUrl();
+            PublishQueue.get().submit(r, "started", false, new PublishQueue.Publication() {
+                public void publish() {
+                    report(name, "Build Start Data", service.publishBuildData(request));
+                }
+
+                public void spool() {
+                    service.spool("/build", request);
+                }
+            });
         }
 
     }
@@ -68,122 +98,332 @@ public class ActiveNotifier implements FineGrainedNotifier {
 
     }
 
-    public void completed(AbstractBuild r) {
-        boolean publishBuild = (publisher.getHygieiaArtifact() != null) ||
-                (publisher.getHygieiaBuild() != null) || (publisher.getHygieiaTest() != null) || (publisher.getHygieiaDeploy() != null);
+    /**
+     * Drops what {@link #collect} read for a build that will not be published.
+     */
+    static void discard(AbstractBuild r) {
+        collected.remove(r);
+    }
+
+    /**
+     * Reads the artifacts, test results, deploy files and Sonar analyses of the build from its
+     * workspace, for {@link #completed}. Runs while the publisher runs, so the workspace is still
+     * the build's and the log is open. The workspace is scanned once for every kind of file, whose
+     * data is then gathered concurrently on {@link PublishStagePool#gathering()}, whose stages never
+     * queue behind posts, so a slow Hygieia server does not hold up the build. The environment and
+     * commits are read once, into a {@link BuildContext} shared by every stage.
+     */
+    public void collect(final AbstractBuild r) {
+        if (!isPublishingCompletion()) return;
+        PublishStagePool pool = PublishStagePool.gathering();
+        final BuildContext context = BuildContext.create(r, listener, publisher.getDescriptor().getMaxCommits());
+        Collected data = new Collected(context);
+        if (!isSuccessful(r.getResult())) {
+            collected.put(r, data);
+            return;
+        }
 
-        if (publishBuild) {
-            HygieiaResponse buildResponse = getHygieiaService(r).publishBuildData(getBuildData(r, true));
-            if (buildResponse.getResponseCode() == HttpStatus.SC_CREATED) {
-                listener.getLogger().println("Hygieia: Published Build Complete Data. " + buildResponse.toString());
-            } else {
-                listener.getLogger().println("Hygieia: Failed Publishing Build Complete Data. " + buildResponse.toString());
-            }
+        Future<List<SonarAnalysis>> sonarAnalyses = null;
+        if (publisher.getHygieiaSonar() != null) {
+            sonarAnalyses = pool.submit(new Callable<List<SonarAnalysis>>() {
+                public List<SonarAnalysis> call() throws IOException {
+                    return SonarBuilder.findAnalyses(r, listener);
+                }
+            });
+        }
+
+        WorkspaceScanner scanner = publisher.getDescriptor().newWorkspaceScanner();
+        if (publisher.getHygieiaArtifact() != null) {
+            scanner.addQuery(WorkspaceFileFinder.ARTIFACTS, publisher.getHygieiaArtifact().getArtifactDirectory(),
+                    publisher.getHygieiaArtifact().getArtifactName());
+        }
+        if (publisher.getHygieiaTest() != null) {
+            scanner.addQuery(WorkspaceFileFinder.TESTS, publisher.getHygieiaTest().getTestResultsDirectory(),
+                    publisher.getHygieiaTest().getTestFileNamePattern());
+        }
+        if (publisher.getHygieiaDeploy() != null) {
+            scanner.addQuery(WorkspaceFileFinder.DEPLOYS, publisher.getHygieiaDeploy().getArtifactDirectory(),
+                    publisher.getHygieiaDeploy().getArtifactName());
+        }
+        Map<String, ArrayList<String>> files = scanner.hasQueries()
+                ? WorkspaceFileFinder.find(r, scanner, listener)
+                : new HashMap<String, ArrayList<String>>();
+
+        Future<Set<BinaryArtifactCreateRequest>> artifacts = null;
+        if (publisher.getHygieiaArtifact() != null) {
+            final List<String> paths = found(files, WorkspaceFileFinder.ARTIFACTS);
+            artifacts = pool.submit(new Callable<Set<BinaryArtifactCreateRequest>>() {
+                public Set<BinaryArtifactCreateRequest> call() {
+                    return new ArtifactBuilder(context, publisher, listener, null, paths).getArtifacts();
+                }
+            });
+        }
+
+        Future<TestDataCreateRequest> testData = null;
+        if (publisher.getHygieiaTest() != null) {
+            final List<String> paths = found(files, WorkspaceFileFinder.TESTS);
+            testData = pool.submit(new Callable<TestDataCreateRequest>() {
+                public TestDataCreateRequest call() {
+                    return new CucumberTestBuilder(context, publisher, listener, null, paths).getTestDataCreateRequest();
+                }
+            });
+        }
+
+        Future<Set<DeployDataCreateRequest>> deploys = null;
+        if (publisher.getHygieiaDeploy() != null) {
+            final List<String> paths = found(files, WorkspaceFileFinder.DEPLOYS);
+            deploys = pool.submit(new Callable<Set<DeployDataCreateRequest>>() {
+                public Set<DeployDataCreateRequest> call() {
+                    return new DeployBuilder(context, publisher, listener, null, paths).getDeploys();
+                }
+            });
+        }
+
+        data.analyses = PublishStagePool.await(sonarAnalyses, listener);
+        data.artifacts = PublishStagePool.await(artifacts, listener);
+        data.test = PublishStagePool.await(testData, listener);
+        if (testData != null && data.test == null) {
+            listener.getLogger().println("Hygieia: Published Test Data. Nothing to publish");
+        }
+        data.deploys = PublishStagePool.await(deploys, listener);
+        if (sonarAnalyses != null && (data.analyses == null || data.analyses.isEmpty())) {
+            listener.getLogger().println("Hygieia: Published Sonar Result. Nothing to publish");
+        }
+        collected.put(r, data);
+    }
+
+    /**
+     * Queues the posts of the completed build: the build, then, once its ID is back, what
+     * {@link #collect} read from the workspace, if the build succeeded. The result and duration
+     * are only final now, so they are set here, as for the build itself.
+     */
+    public void completed(final AbstractBuild r) {
+        Collected data = collected.remove(r);
+        if (!isPublishingCompletion()) return;
 
-            boolean successBuild = ("success".equalsIgnoreCase(r.getResult().toString()) ||
-                    "unstable".equalsIgnoreCase(r.getResult().toString()));
-            boolean publishArt = (publisher.getHygieiaArtifact() != null) && successBuild;
+        BuildContext context = (data == null)
+                ? BuildContext.create(r, listener, publisher.getDescriptor().getMaxCommits()) : data.context;
+        if (data == null || !isSuccessful(r.getResult())) {
+            data = new Collected(context);
+        } else {
+            data.completed(r);
+        }
+        HygieiaService service = getHygieiaService(context);
+        PublishQueue.get().submit(r, "completed", true, new CompletedBuild(service,
+                ResultDigests.forJob(r.getProject()), getBuildData(context, true), data));
+    }
 
-            if (publishArt) {
-                ArtifactBuilder builder = new ArtifactBuilder(r, publisher, listener, buildResponse.getResponseValue());
-                Set<BinaryArtifactCreateRequest> requests = builder.getArtifacts();
+    private boolean isPublishingCompletion() {
+        return (publisher.getHygieiaArtifact() != null) || (publisher.getHygieiaBuild() != null)
+                || (publisher.getHygieiaTest() != null) || (publisher.getHygieiaDeploy() != null);
+    }
+
+    /**
+     * @return true for a successful or unstable build, or one still running without a result yet
+     */
+    private static boolean isSuccessful(Result result) {
+        return (result == null) || result.isBetterOrEqualTo(Result.UNSTABLE);
+    }
+
+    private static List<String> found(Map<String, ArrayList<String>> files, String key) {
+        List<String> paths = files.get(key);
+        return (paths == null) ? new ArrayList<String>() : paths;
+    }
+
+    /**
+     * The data of a completed build, ready to post.
+     */
+    private final class CompletedBuild implements PublishQueue.Publication {
+        private final HygieiaService service;
+        private final ResultDigests digests;
+        private final BuildDataCreateRequest buildData;
+        private final Collected data;
+        private final String name;
+
+        CompletedBuild(HygieiaService service, ResultDigests digests, BuildDataCreateRequest buildData, Collected data) {
+            this.service = service;
+            this.digests = digests;
+            this.buildData = buildData;
+            this.data = data;
+            this.name = data.context.getBuildUrl();
+        }
+
+        /**
+         * Posts the build; once its ID is back the other posts run concurrently on the
+         * {@link PublishStagePool}. The metrics of each Sonar analysis are read and posted there
+         * too, without this thread waiting for the compute engine to process them.
+         */
+        public void publish() {
+            PublishStagePool pool = PublishStagePool.get();
+            HygieiaResponse buildResponse = service.publishBuildData(buildData);
+            report(name, "Build Complete Data", buildResponse);
+            String buildId = buildResponse.getResponseValue();
+
+            List<Future<Void>> posts = new ArrayList<Future<Void>>();
+            if (data.artifacts != null && !data.artifacts.isEmpty()) {
+                final List<BinaryArtifactCreateRequest> requests = new ArrayList<BinaryArtifactCreateRequest>(data.artifacts);
+                // the commits are reachable through the build only if it was stored
+                boolean referenceBuild = !publisher.getDescriptor().isCommitsWithArtifacts()
+                        && (buildResponse.getResponseCode() == HttpStatus.SC_CREATED) && StringUtils.isNotBlank(buildId);
                 for (BinaryArtifactCreateRequest bac : requests) {
-                    HygieiaResponse artifactResponse = getHygieiaService(r).publishArtifactData(bac);
-                    if (artifactResponse.getResponseCode() == HttpStatus.SC_CREATED) {
-                        listener.getLogger().println("Hygieia: Published Build Artifact Data. Filename=" +
-                                bac.getCanonicalName() + ", Name=" + bac.getArtifactName() + ", Version=" + bac.getArtifactVersion() +
-                                ", Group=" + bac.getArtifactGroup() + ". " + artifactResponse.toString());
-                    } else {
-                        listener.getLogger().println("Hygieia: Failed Publishing Build Artifact Data. " + bac.getCanonicalName() + ", Name=" + bac.getArtifactName() + ", Version=" + bac.getArtifactVersion() +
-                                ", Group=" + bac.getArtifactGroup() + ". " + artifactResponse.toString());
-                    }
+                    bac.setBuildId(buildId);
+                    if (referenceBuild) bac.getSourceChangeSet().clear();
                 }
+                if (referenceBuild) CommitPayloads.omitted("/artifact", data.context.getCommits(), requests.size());
+                posts.add(pool.submit(new Callable<Void>() {
+                    public Void call() {
+                        publishArtifacts(service, name, requests);
+                        return null;
+                    }
+                }));
             }
 
-            boolean publishTest = (publisher.getHygieiaTest() != null) && successBuild;
-
-            if (publishTest) {
-                CucumberTestBuilder builder = new CucumberTestBuilder(r, publisher, listener, buildResponse.getResponseValue());
-                TestDataCreateRequest request = builder.getTestDataCreateRequest();
-                if (request != null) {
-                    HygieiaResponse testResponse = getHygieiaService(r).publishTestResults(request);
-                    if (testResponse.getResponseCode() == HttpStatus.SC_CREATED) {
-                        listener.getLogger().println("Hygieia: Published Test Data. " + testResponse.toString());
-                    } else {
-                        listener.getLogger().println("Hygieia: Failed Publishing Test Data. " + testResponse.toString());
+            if (data.test != null) {
+                final TestDataCreateRequest request = data.test;
+                request.setTestJobId(buildId);
+                posts.add(pool.submit(new Callable<Void>() {
+                    public Void call() {
+                        publishTest(service, digests, name, request);
+                        return null;
                     }
-                } else {
-                    listener.getLogger().println("Hygieia: Published Test Data. Nothing to publish");
+                }));
+            }
+
+            if (data.deploys != null && !data.deploys.isEmpty()) {
+                final List<DeployDataCreateRequest> requests = new ArrayList<DeployDataCreateRequest>(data.deploys);
+                for (DeployDataCreateRequest bac : requests) {
+                    bac.setHygieiaId(buildId);
                 }
+                posts.add(pool.submit(new Callable<Void>() {
+                    public Void call() {
+                        publishDeploys(service, name, requests);
+                        return null;
+                    }
+                }));
             }
 
-            boolean publishSonar = (publisher.getHygieiaSonar() != null) && successBuild;
-
-            if (publishSonar) {
-                try {
-                    SonarBuilder builder = new SonarBuilder(r, publisher, listener, buildResponse.getResponseValue());
-                    CodeQualityCreateRequest request = builder.getSonarMetrics();
-                    if (request != null) {
-                        HygieiaResponse sonarResponse = getHygieiaService(r).publishSonarResults(request);
-                        if (sonarResponse.getResponseCode() == HttpStatus.SC_CREATED) {
-                            listener.getLogger().println("Hygieia: Published Sonar Data. " + sonarResponse.toString());
-                        } else {
-                            listener.getLogger().println("Hygieia: Failed Publishing Sonar Data. " + sonarResponse.toString());
-                        }
-                    } else {
-                        listener.getLogger().println("Hygieia: Published Sonar Result. Nothing to publish");
+            // one read per analysis, so a slow analysis or server does not hold up the others
+            for (SonarAnalysis analysis : data.getAnalyses()) {
+                new SonarBuilder(analysis, publisher, buildId).readSonarMetrics(pool, new SonarBuilder.MetricsCallback() {
+                    public void read(CodeQualityCreateRequest request) {
+                        if (request != null) publishSonar(service, digests, name, request);
                     }
-                } catch (IOException e) {
-                    listener.getLogger().println("Hygieia: Publishing error" + '\n' + e.getMessage());
-                } catch (URISyntaxException e) {
-                    listener.getLogger().println("Hygieia: Publishing error" + '\n' + e.getMessage());
-                } catch (ParseException e) {
-                    listener.getLogger().println("Hygieia: Publishing error" + '\n' + e.getMessage());
+                });
+            }
+
+            PublishStagePool.awaitAll(posts, null);
+            logger.fine("Hygieia: Build context of " + name + " saved "
+                    + data.context.getSavedLookups() + " lookups, " + BuildContext.getLookupsSaved() + " in total");
+        }
+
+        /**
+         * Spools every post, in order. Without the build's ID, the other posts are spooled with
+         * their commits and without a reference to the build; the Sonar metrics are read on the
+         * {@link PublishStagePool} and spooled once read.
+         */
+        public void spool() {
+            service.spool("/build", buildData);
+            if (data.artifacts != null) {
+                for (BinaryArtifactCreateRequest request : data.artifacts) {
+                    service.spool("/artifact", request);
                 }
+            }
+            if (data.test != null) {
+                service.spool("/quality/test", data.test);
+            }
+            if (data.deploys != null) {
+                for (DeployDataCreateRequest request : data.deploys) {
+                    service.spool("/deploy", request);
+                }
+            }
+            for (SonarAnalysis analysis : data.getAnalyses()) {
+                new SonarBuilder(analysis, publisher, null).readSonarMetrics(PublishStagePool.get(), new SonarBuilder.MetricsCallback() {
+                    public void read(CodeQualityCreateRequest request) {
+                        if (request != null) service.spool("/quality/static-analysis", request);
+                    }
+                });
+            }
+        }
+    }
+
+    private void publishArtifacts(HygieiaService service, String name, List<BinaryArtifactCreateRequest> requests) {
+        List<HygieiaResponse> responses = service.publishArtifacts(requests);
+        for (int i = 0; i < requests.size() && i < responses.size(); i++) {
+            BinaryArtifactCreateRequest bac = requests.get(i);
+            report(name, "Build Artifact Data. Filename=" + bac.getCanonicalName() + ", Name=" + bac.getArtifactName()
+                    + ", Version=" + bac.getArtifactVersion() + ", Group=" + bac.getArtifactGroup(), responses.get(i));
+        }
+    }
 
+    private void publishTest(HygieiaService service, ResultDigests digests, String name, TestDataCreateRequest request) {
+        String key = "test|" + request.getType() + "|" + request.getTargetAppName() + "|" + request.getTargetEnvName();
+        String digest = null;
+        if (ResultDigests.SKIP.equals(publisher.getDescriptor().getUnchangedResults())) {
+            digest = ResultDigests.digest(request);
+            boolean unchanged = digests.isUnchanged(key, digest);
+            ResultDigests.counted("test", unchanged);
+            if (unchanged) {
+                logger.info("Hygieia: Test Data of " + name + " unchanged since the last publish. Skipped");
+                return;
             }
+        }
+        HygieiaResponse testResponse = service.publishTestResults(request);
+        if (digest != null && testResponse.getResponseCode() == HttpStatus.SC_CREATED) {
+            digests.record(key, digest);
+        }
+        report(name, "Test Data", testResponse);
+    }
 
-            boolean publishDeploy = (publisher.getHygieiaDeploy() != null) && successBuild;
-            if (publishDeploy) {
-                DeployBuilder builder = new DeployBuilder(r, publisher, listener, buildResponse.getResponseValue());
-                Set<DeployDataCreateRequest> requests = builder.getDeploys();
-                for (DeployDataCreateRequest bac : requests) {
-                    HygieiaResponse deployResponse = getHygieiaService(r).publishDeployData(bac);
-                    if (deployResponse.getResponseCode() == HttpStatus.SC_CREATED) {
-                        listener.getLogger().println("Hygieia: Published Deploy Data: " +  deployResponse.toString());
-                    } else {
-                        listener.getLogger().println("Hygieia: Failed Publishing Deploy Data:" + deployResponse.toString());
-                    }
-                }
+    private void publishSonar(HygieiaService service, ResultDigests digests, String name, CodeQualityCreateRequest request) {
+        String key = "sonar|" + request.getServerUrl() + "|" + request.getProjectName();
+        String digest = null;
+        if (ResultDigests.SKIP.equals(publisher.getDescriptor().getUnchangedResults())) {
+            digest = ResultDigests.digest(request);
+            boolean unchanged = digests.isUnchanged(key, digest);
+            ResultDigests.counted("sonar", unchanged);
+            if (unchanged) {
+                logger.info("Hygieia: Sonar Data of " + name + " unchanged since the last publish. Skipped");
+                return;
             }
         }
+        HygieiaResponse sonarResponse = service.publishSonarResults(request);
+        if (digest != null && sonarResponse.getResponseCode() == HttpStatus.SC_CREATED) {
+            digests.record(key, digest);
+        }
+        report(name, "Sonar Data", sonarResponse);
     }
 
-    private BuildDataCreateRequest getBuildData(AbstractBuild r, boolean isComplete) {
-        BuildDataCreateRequest request = new BuildDataCreateRequest();
-        request.setNiceName(publisher.getDescriptor().getHygieiaJenkinsName());
-        request.setJobName(r.getProject().getName());
-        request.setBuildUrl(r.getProject().getAbsoluteUrl() + String.valueOf(r.getNumber()) + "/");
-        request.setJobUrl(r.getProject().getAbsoluteUrl());
-
-        EnvVars env = null;
-        try {
-            env = r.getEnvironment(listener);
-        } catch (IOException e) {
-            logger.warning("Error getting environment variables");
-        } catch (InterruptedException e) {
-            logger.warning("Error getting environment variables");
-        }
-        if (env != null) {
-            request.setInstanceUrl(env.get("JENKINS_URL"));
+    private void publishDeploys(HygieiaService service, String name, List<DeployDataCreateRequest> requests) {
+        for (HygieiaResponse deployResponse : service.publishDeploys(requests)) {
+            report(name, "Deploy Data", deployResponse);
+        }
+    }
+
+    private static void report(String name, String what, HygieiaResponse response) {
+        if (response.getResponseCode() == HttpStatus.SC_CREATED) {
+            logger.info("Hygieia: Published " + what + " of " + name + ". " + response.toString());
         } else {
-            String jobPath = "/job" + "/" + r.getProject().getName() + "/";
-            int ind = r.getProject().getAbsoluteUrl().indexOf(jobPath);
-            request.setInstanceUrl(r.getProject().getAbsoluteUrl().substring(0, ind));
+            logger.warning("Hygieia: Failed Publishing " + what + " of " + name + ". " + response.toString());
         }
+    }
+
+    private BuildDataCreateRequest getBuildData(BuildContext context, boolean isComplete) {
+        AbstractBuild r = context.getBuild();
+        BuildDataCreateRequest request = new BuildDataCreateRequest();
+        request.setNiceName(publisher.getDescriptor().getHygieiaJenkinsName());
+        request.setJobName(context.getJobName());
+        request.setBuildUrl(context.getBuildUrl());
+        request.setJobUrl(context.getJobUrl());
+        request.setInstanceUrl(context.getInstanceUrl());
         request.setNumber(String.valueOf(r.getNumber()));
         request.setStartTime(r.getStartTimeInMillis());
-        request.setSourceChangeSet(getCommitList(r));
+        boolean withCommits = isComplete ? publisher.getDescriptor().isCommitsWithBuildComplete()
+                : publisher.getDescriptor().isCommitsWithBuildStart();
+        if (withCommits) {
+            request.setSourceChangeSet(context.getCommits());
+        } else {
+            CommitPayloads.omitted("/build", context.getCommits(), 1);
+        }
 
         if (isComplete) {
             request.setBuildStatus(r.getResult().toString());
@@ -195,9 +435,41 @@ public class ActiveNotifier implements FineGrainedNotifier {
         return request;
     }
 
-    List<SCM> getCommitList(AbstractBuild r) {
-        CommitBuilder commitBuilder = new CommitBuilder(r);
-        return commitBuilder.getCommits();
-    }
+    /**
+     * What was read from a build's workspace; null fields had nothing to read.
+     */
+    private static final class Collected {
+        private final BuildContext context;
+        private List<SonarAnalysis> analyses;
+        private Set<BinaryArtifactCreateRequest> artifacts;
+        private TestDataCreateRequest test;
+        private Set<DeployDataCreateRequest> deploys;
+
+        Collected(BuildContext context) {
+            this.context = context;
+        }
 
+        /**
+         * Sets the result and duration of the completed build on what was read while it ran.
+         */
+        void completed(AbstractBuild r) {
+            long duration = r.getDuration();
+            long endTime = r.getStartTimeInMillis() + duration;
+            if (test != null) {
+                test.setDuration(duration);
+                test.setEndTime(endTime);
+            }
+            if (deploys != null) {
+                for (DeployDataCreateRequest deploy : deploys) {
+                    deploy.setDeployStatus(r.getResult().toString());
+                    deploy.setDuration(duration);
+                    deploy.setEndTime(endTime);
+                }
+            }
+        }
+
+        List<SonarAnalysis> getAnalyses() {
+            return (analyses == null) ? Collections.<SonarAnalysis>emptyList() : analyses;
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package jenkins.plugins.hygieia;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hygieia.utils.NameIndex;
+import hygieia.utils.TtlCache;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Names offered by the configuration form's auto-completion, such as the Hygieia application
+ * names and the environments of each application, loaded in the background.
+ * <p>
+ * A lookup never calls Hygieia. It answers from the cached {@link NameIndex}, and when the names
+ * are missing or older than {@link #REFRESH_AFTER} it queues a reload, so the next keystroke sees
+ * fresh names. One reload per key runs at a time. Names not reloaded within {@link #EXPIRE_AFTER}
+ * are dropped, and at most {@link #MAX_ENTRIES} keys are kept.
+ * <p>
+ * A reload that finds no names keeps the previous ones until they expire, since the service
+ * answers a failed request with an empty list.
+ */
+public class AutoCompleteCache {
+    private static final Logger logger = Logger.getLogger(AutoCompleteCache.class.getName());
+
+    static final long REFRESH_AFTER = 5 * 60 * 1000L;
+    static final long EXPIRE_AFTER = 30 * 60 * 1000L;
+    static final int MAX_ENTRIES = 500;
+
+    /**
+     * Loads the names of one key; runs on a background thread.
+     */
+    public interface Loader {
+        Collection<String> load();
+    }
+
+    private final TtlCache<String, Entry> entries = new TtlCache<String, Entry>(EXPIRE_AFTER, MAX_ENTRIES) {
+        @Override
+        protected long now() {
+            return AutoCompleteCache.this.now();
+        }
+    };
+    private final ConcurrentMap<String, Boolean> loading = new ConcurrentHashMap<String, Boolean>();
+    private final Executor executor;
+
+    public AutoCompleteCache() {
+        this(newExecutor());
+    }
+
+    AutoCompleteCache(Executor executor) {
+        this.executor = executor;
+    }
+
+    private static Executor newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_ENTRIES),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Hygieia auto-completion"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return the cached names of the key, empty until they were first loaded
+     */
+    public NameIndex get(String key, Loader loader) {
+        Entry entry = entries.get(key);
+        if (entry == null || now() - entry.loadedAt >= REFRESH_AFTER) {
+            reload(key, loader);
+        }
+        return (entry == null) ? NameIndex.EMPTY : entry.names;
+    }
+
+    /**
+     * Starts loading the names of the key, unless they are fresh, so a later lookup finds them.
+     */
+    public void prefetch(String key, Loader loader) {
+        get(key, loader);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private void reload(final String key, final Loader loader) {
+        if (loading.putIfAbsent(key, Boolean.TRUE) != null) return;
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        NameIndex names = new NameIndex(loader.load());
+                        Entry previous = entries.get(key);
+                        if (!names.isEmpty() || previous == null || previous.names.isEmpty()) {
+                            entries.put(key, new Entry(names, now()));
+                        }
+                    } catch (RuntimeException e) {
+                        logger.log(Level.FINE, "Hygieia: Could not load auto-completion names for " + key, e);
+                    } finally {
+                        loading.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.remove(key);
+            logger.fine("Hygieia: Too many auto-completion reloads queued; skipped " + key);
+        }
+    }
+
+    /**
+     * The clock; tests override it.
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static final class Entry {
+        private final NameIndex names;
+        private final long loadedAt;
+
+        Entry(NameIndex names, long loadedAt) {
+            this.names = names;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package jenkins.plugins.hygieia;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker for one Hygieia endpoint.
+ * <p>
+ * After {@link #FAILURE_THRESHOLD} consecutive failures the circuit opens and calls fail fast for
+ * {@link #OPEN_MILLIS}. Then a single trial call is let through; its outcome closes the circuit
+ * again or re-opens it.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+
+    static final int FAILURE_THRESHOLD = 5;
+    static final long OPEN_MILLIS = 30000;
+
+    private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return the breaker guarding the given endpoint URL
+     */
+    public static CircuitBreaker forEndpoint(String url) {
+        CircuitBreaker breaker = breakers.get(url);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(url, FAILURE_THRESHOLD, OPEN_MILLIS);
+            breaker = breakers.putIfAbsent(url, created);
+            if (breaker == null) breaker = created;
+        }
+        return breaker;
+    }
+
+    public boolean allowRequest() {
+        return allowRequest(System.currentTimeMillis());
+    }
+
+    synchronized boolean allowRequest(long now) {
+        switch (state) {
+            case OPEN:
+                if (now - openedAt < openMillis) return false;
+                state = State.HALF_OPEN;
+                return true;
+            case HALF_OPEN:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Hygieia: Circuit closed for " + name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    public void recordFailure() {
+        recordFailure(System.currentTimeMillis());
+    }
+
+    synchronized void recordFailure(long now) {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            if (state != State.OPEN) {
+                logger.warning("Hygieia: Circuit opened for " + name + " after " + failures + " failure(s)");
+            }
+            state = State.OPEN;
+            openedAt = now;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
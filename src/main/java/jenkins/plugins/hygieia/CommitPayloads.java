@@ -0,0 +1,62 @@
+package jenkins.plugins.hygieia;
+
+import com.capitalone.dashboard.model.SCM;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Counts the commit lists left out of requests that reference the Hygieia build instead, per
+ * endpoint, for {@link #getReport()}.
+ * <p>
+ * An artifact posted after its build carries the build's Hygieia ID, so the server can reach the
+ * commits through the build; repeating the list in every artifact only costs bytes.
+ */
+public final class CommitPayloads {
+    private static final Logger logger = Logger.getLogger(CommitPayloads.class.getName());
+    private static final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+    private CommitPayloads() {
+    }
+
+    /**
+     * Records that the commits were left out of the given number of requests to the endpoint.
+     */
+    public static void omitted(String endpoint, List<SCM> commits, int requests) {
+        if (commits.isEmpty() || requests <= 0) return;
+        long bytes = JsonRequestEntity.sizeOf(commits) * requests;
+        Stats s = stats.get(endpoint);
+        if (s == null) {
+            Stats created = new Stats();
+            s = stats.putIfAbsent(endpoint, created);
+            if (s == null) s = created;
+        }
+        s.requests.addAndGet(requests);
+        s.bytes.addAndGet(bytes);
+        logger.fine("Hygieia: Left " + commits.size() + " commits out of " + requests + " " + endpoint
+                + " request(s), " + bytes + " bytes");
+    }
+
+    /**
+     * @return requests sent without commits and bytes saved, per endpoint
+     */
+    public static String getReport() {
+        if (stats.isEmpty()) return "No commit lists left out";
+        StringBuilder report = new StringBuilder();
+        for (String key : stats.keySet()) {
+            Stats s = stats.get(key);
+            if (report.length() > 0) report.append("; ");
+            report.append(key).append(": ").append(s.requests.get()).append(" requests without commits, ")
+                    .append(s.bytes.get()).append(" bytes saved");
+        }
+        return report.toString();
+    }
+
+    private static final class Stats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+    }
+}
@@ -5,23 +5,32 @@ import com.capitalone.dashboard.request.BuildDataCreateRequest;
 import com.capitalone.dashboard.request.CodeQualityCreateRequest;
 import com.capitalone.dashboard.request.DeployDataCreateRequest;
 import com.capitalone.dashboard.request.TestDataCreateRequest;
+import com.fasterxml.jackson.databind.util.RawValue;
 import hudson.model.BuildListener;
 import hygieia.utils.HygieiaUtils;
+import hygieia.utils.TtlCache;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.RequestEntity;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
-import org.springframework.util.CollectionUtils;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 //import org.json.simple.JSONArray;
 
@@ -29,10 +38,31 @@ public class DefaultHygieiaService implements HygieiaService {
 
     private static final Logger logger = Logger.getLogger(DefaultHygieiaService.class.getName());
 
+    static final int DEFAULT_BATCH_ITEMS = 100;
+    static final long DEFAULT_BATCH_BYTES = 1024 * 1024;
+    static final String BULK_SUFFIX = "/bulk";
+    static final long BULK_RECHECK_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Bulk URLs that answered 404/405, with the time they did so.
+     */
+    private static final ConcurrentMap<String, Long> bulkUnsupported = new ConcurrentHashMap<String, Long>();
+
+    static final long LIST_CACHE_TTL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Lists read with an entity tag, by URL and projection, for conditional requests; shared by every service.
+     */
+    private static final TtlCache<String, Validated<?>> lists = new TtlCache<String, Validated<?>>(LIST_CACHE_TTL, 200);
+
     private String hygieiaAPIUrl = "";
     private String hygieiaToken = "";
     private String hygieiaJenkinsName = "";
     private BuildListener listener;
+    private long compressionThreshold = -1;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int batchItems = DEFAULT_BATCH_ITEMS;
+    private long batchBytes = DEFAULT_BATCH_BYTES;
 
 
     public DefaultHygieiaService(String hygieiaAPIUrl, String hygieiaToken, String hygieiaJenkinsName) {
@@ -46,176 +76,318 @@ public class DefaultHygieiaService implements HygieiaService {
         this.hygieiaAPIUrl = hygieiaAPIUrl;
     }
 
+    /**
+     * Enables gzip compression of request bodies larger than the threshold.
+     *
+     * @param thresholdBytes bodies up to this size are sent uncompressed; negative disables compression
+     * @param level          deflate level, 1 (fastest) to 9 (smallest)
+     */
+    public void setCompression(long thresholdBytes, int level) {
+        this.compressionThreshold = thresholdBytes;
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Bounds the batches posted by {@link #publishArtifacts} and {@link #publishDeploys}.
+     */
+    public void setBatchLimits(int maxItems, long maxBytes) {
+        this.batchItems = Math.max(1, maxItems);
+        this.batchBytes = Math.max(1, maxBytes);
+    }
+
     public HygieiaResponse publishBuildData(BuildDataCreateRequest request) {
-        String responseValue;
-        int responseCode = HttpStatus.SC_NO_CONTENT;
-        try {
-            String jsonString = new String(HygieiaUtils.convertObjectToJsonBytes(request));
-            RestCall restCall = new RestCall();
-            RestCall.RestCallResponse callResponse = restCall.makeRestCallPost(hygieiaAPIUrl + "/build", jsonString);
-            responseCode = callResponse.getResponseCode();
-            responseValue = callResponse.getResponseString().replaceAll("\"", "");
-            if (responseCode != HttpStatus.SC_CREATED) {
-                logger.log(Level.SEVERE, "Hygieia: Build Publisher post may have failed. Response: " + responseCode);
-            }
-            return new HygieiaResponse(responseCode, responseValue);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Hygieia: Error posting to Hygieia", e);
-            responseValue = "";
+        HygieiaResponse response = post("/build", request);
+        if (response.getResponseCode() != HttpStatus.SC_CREATED) {
+            logger.log(Level.SEVERE, "Hygieia: Build Publisher post may have failed. Response: " + response.getResponseCode());
         }
-
-        return new HygieiaResponse(responseCode, responseValue);
+        response.setResponseValue(response.getResponseValue().replaceAll("\"", ""));
+        return response;
     }
 
     public HygieiaResponse publishArtifactData(BinaryArtifactCreateRequest request) {
-        String responseValue;
-        int responseCode = HttpStatus.SC_NO_CONTENT;
-        try {
-            String jsonString = new String(HygieiaUtils.convertObjectToJsonBytes(request));
-            RestCall restCall = new RestCall();
-            RestCall.RestCallResponse callResponse = restCall.makeRestCallPost(hygieiaAPIUrl + "/artifact", jsonString);
-            responseCode = callResponse.getResponseCode();
-            responseValue = callResponse.getResponseString();
-            if (responseCode != HttpStatus.SC_CREATED) {
-                logger.log(Level.WARNING, "Hygieia Artifact Publisher post may have failed. Response: " + responseCode);
-            }
-            return new HygieiaResponse(responseCode, responseValue);
-        } catch (IOException ioe) {
-            logger.log(Level.WARNING, "Error posting to Hygieia", ioe);
-            responseValue = "";
+        HygieiaResponse response = post("/artifact", request);
+        if (response.getResponseCode() != HttpStatus.SC_CREATED) {
+            logger.log(Level.WARNING, "Hygieia Artifact Publisher post may have failed. Response: " + response.getResponseCode());
         }
-        return new HygieiaResponse(responseCode, responseValue);
+        return response;
     }
 
     public HygieiaResponse publishTestResults(TestDataCreateRequest request) {
-        String responseValue;
-        int responseCode = HttpStatus.SC_NO_CONTENT;
-        try {
-            String jsonString = new String(HygieiaUtils.convertObjectToJsonBytes(request));
-            RestCall restCall = new RestCall();
-            RestCall.RestCallResponse callResponse = restCall.makeRestCallPost(hygieiaAPIUrl + "/quality/test", jsonString);
-            responseCode = callResponse.getResponseCode();
-            responseValue = callResponse.getResponseString();
-            if (responseCode != HttpStatus.SC_CREATED) {
-                logger.log(Level.WARNING, "Hygieia Artifact Publisher post may have failed. Response: " + responseCode);
-            }
-            return new HygieiaResponse(responseCode, responseValue);
-        } catch (IOException ioe) {
-            logger.log(Level.WARNING, "Error posting to Hygieia", ioe);
-            responseValue = "";
+        HygieiaResponse response = post("/quality/test", request);
+        if (response.getResponseCode() != HttpStatus.SC_CREATED) {
+            logger.log(Level.WARNING, "Hygieia Test Publisher post may have failed. Response: " + response.getResponseCode());
         }
-        return new HygieiaResponse(responseCode, responseValue);
+        return response;
     }
 
     public HygieiaResponse publishSonarResults(CodeQualityCreateRequest request) {
-        String responseValue = "";
-        int responseCode = HttpStatus.SC_NO_CONTENT;
-        try {
-            String jsonString = new String(HygieiaUtils.convertObjectToJsonBytes(request));
-            RestCall restCall = new RestCall();
-            RestCall.RestCallResponse callResponse = restCall.makeRestCallPost(hygieiaAPIUrl + "/quality/static-analysis", jsonString);
-            responseCode = callResponse.getResponseCode();
-            responseValue = callResponse.getResponseString();
-            if (responseCode != HttpStatus.SC_CREATED) {
-                logger.log(Level.WARNING, "Hygieia Sonar Publisher post may have failed. Response: " + responseCode);
-            }
-        } catch (IOException ioe) {
-            logger.log(Level.WARNING, "Error posting to Hygieia", ioe);
+        HygieiaResponse response = post("/quality/static-analysis", request);
+        if (response.getResponseCode() != HttpStatus.SC_CREATED) {
+            logger.log(Level.WARNING, "Hygieia Sonar Publisher post may have failed. Response: " + response.getResponseCode());
         }
-        return new HygieiaResponse(responseCode, responseValue);
+        return response;
     }
 
     public HygieiaResponse publishDeployData(DeployDataCreateRequest request) {
-        String responseValue;
-        int responseCode = HttpStatus.SC_NO_CONTENT;
-        try {
-            String jsonString = new String(HygieiaUtils.convertObjectToJsonBytes(request));
-            RestCall restCall = new RestCall();
-            RestCall.RestCallResponse callResponse = restCall.makeRestCallPost(hygieiaAPIUrl + "/deploy", jsonString);
-            responseCode = callResponse.getResponseCode();
-            responseValue = callResponse.getResponseString();
-            if (responseCode != HttpStatus.SC_CREATED) {
-                logger.log(Level.WARNING, "Hygieia Deploy post may have failed. Response: " + responseCode);
+        HygieiaResponse response = post("/deploy", request);
+        if (response.getResponseCode() != HttpStatus.SC_CREATED) {
+            logger.log(Level.WARNING, "Hygieia Deploy post may have failed. Response: " + response.getResponseCode());
+        }
+        return response;
+    }
+
+    public List<HygieiaResponse> publishArtifacts(Collection<BinaryArtifactCreateRequest> requests) {
+        List<HygieiaResponse> responses = new ArrayList<HygieiaResponse>(requests.size());
+        Batches batches = new Batches(requests);
+        while (batches.hasNext()) {
+            Batch batch = batches.next();
+            if (!postBatch("/artifact", batch, responses)) {
+                for (Object request : batch.requests) {
+                    responses.add(publishArtifactData((BinaryArtifactCreateRequest) request));
+                }
             }
-            return new HygieiaResponse(responseCode, responseValue);
-        } catch (IOException ioe) {
-            logger.log(Level.WARNING, "Error posting to Hygieia", ioe);
-            responseValue = "";
         }
-        return new HygieiaResponse(responseCode, responseValue);
+        return responses;
     }
 
-    private String getCollectorItemJSON(String type) {
-        RestCall restCall = new RestCall();
-        RestCall.RestCallResponse callResponse = restCall.makeRestCallGet(hygieiaAPIUrl + "/collector/item/type/" + type);
-        int responseCode = callResponse.getResponseCode();
-        if (responseCode != HttpStatus.SC_OK) {
-            logger.log(Level.WARNING, "Hygieia get collector items failed: " + responseCode);
-            return "";
+    public List<HygieiaResponse> publishDeploys(Collection<DeployDataCreateRequest> requests) {
+        List<HygieiaResponse> responses = new ArrayList<HygieiaResponse>(requests.size());
+        Batches batches = new Batches(requests);
+        while (batches.hasNext()) {
+            Batch batch = batches.next();
+            if (!postBatch("/deploy", batch, responses)) {
+                for (Object request : batch.requests) {
+                    responses.add(publishDeployData((DeployDataCreateRequest) request));
+                }
+            }
         }
-        return callResponse.getResponseString();
+        return responses;
     }
 
-    private String getDeploymentDetailsJSON(String appName) {
-        ///deploy/status/application/
-        RestCall restCall = new RestCall();
-        RestCall.RestCallResponse callResponse = restCall.makeRestCallGet(hygieiaAPIUrl + "/deploy/status/application/" + appName);
-        int responseCode = callResponse.getResponseCode();
-        if (responseCode != HttpStatus.SC_OK) {
-            logger.log(Level.WARNING, "Hygieia get collector items failed: " + responseCode);
-            return "";
+    /**
+     * Requests posted together, each with its JSON. The JSON that sized the batch is the JSON
+     * posted, so no request is serialized just to measure it.
+     */
+    private static final class Batch {
+        private final List<Object> requests = new ArrayList<Object>();
+        private final List<RawValue> json = new ArrayList<RawValue>();
+        private long bytes;
+
+        void add(Object request, String requestJson, long size) {
+            requests.add(request);
+            json.add(new RawValue(requestJson));
+            bytes += size;
         }
-        return callResponse.getResponseString();
     }
 
-    public Set<String> getDeploymentEnvironments(String appName) {
-        Set<String> list = new HashSet<String>();
-        JSONParser parser = new JSONParser();
-        try {
-            JSONObject json = (JSONObject) parser.parse(getDeploymentDetailsJSON(appName));
-            if (json != null) {
-                JSONArray itemArray = (JSONArray) json.get("result");
-                if (!CollectionUtils.isEmpty(itemArray)) {
-                    for (Object o : itemArray) {
-                        list.add((String) ((JSONObject) o).get("name"));
-                    }
+    /**
+     * Splits the requests into batches of at most {@link #batchItems} requests and, unless a
+     * single request is larger, {@link #batchBytes} bytes of JSON. Batches are built one at a
+     * time, so only the JSON of the batch being posted is held.
+     */
+    private final class Batches {
+        private final Iterator<?> requests;
+        private Object nextRequest;
+        private byte[] nextJson;
+
+        Batches(Collection<?> requests) {
+            this.requests = requests.iterator();
+        }
+
+        boolean hasNext() {
+            return nextRequest != null || requests.hasNext();
+        }
+
+        Batch next() {
+            Batch batch = new Batch();
+            while (hasNext()) {
+                if (nextRequest == null) {
+                    nextRequest = requests.next();
+                    nextJson = toJson(nextRequest);
                 }
+                if (!batch.requests.isEmpty()
+                        && (batch.requests.size() >= batchItems || batch.bytes + nextJson.length > batchBytes)) {
+                    break;
+                }
+                batch.add(nextRequest, new String(nextJson, StandardCharsets.UTF_8), nextJson.length);
+                nextRequest = null;
+                nextJson = null;
+            }
+            return batch;
+        }
+
+        private byte[] toJson(Object request) {
+            try {
+                return HygieiaUtils.convertObjectToJsonBytes(request);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not serialize " + request.getClass().getSimpleName(), e);
             }
-        } catch (ParseException e) {
-            logger.log(Level.WARNING, "Hygieia fill deployment environments failed: Parsing JSON error.");
         }
-        return list;
     }
 
-    public List<JSONObject> getCollectorItemOptions(String type) {
-        List<JSONObject> options = new ArrayList<JSONObject>();
+    /**
+     * Posts a batch as a JSON array to the endpoint's bulk route. The server answers with a JSON
+     * array holding the ID of each created record.
+     *
+     * @return false if the batch has to be posted one request at a time because the server has
+     * no bulk route or the batch holds a single request
+     */
+    private boolean postBatch(String endpoint, Batch batch, List<HygieiaResponse> responses) {
+        String bulkUrl = hygieiaAPIUrl + endpoint + BULK_SUFFIX;
+        if (batch.requests.size() < 2 || !isBulkSupported(bulkUrl)) return false;
+
+        HygieiaResponse response = post(endpoint + BULK_SUFFIX, batch.json);
+        int code = response.getResponseCode();
+        if (code == HttpStatus.SC_NOT_FOUND || code == HttpStatus.SC_METHOD_NOT_ALLOWED) {
+            logger.info("Hygieia: " + bulkUrl + " is not available, publishing one request at a time");
+            bulkUnsupported.put(bulkUrl, System.currentTimeMillis());
+            return false;
+        }
+        if (code != HttpStatus.SC_CREATED) {
+            logger.log(Level.WARNING, "Hygieia: Bulk post to " + bulkUrl + " may have failed. Response: " + code);
+        }
 
-        JSONParser parser = new JSONParser();
+        List<String> ids = parseIds(response.getResponseValue());
+        for (int i = 0; i < batch.requests.size(); i++) {
+            String value = (ids.size() == batch.requests.size()) ? ids.get(i) : response.getResponseValue();
+            responses.add(new HygieiaResponse(code, value));
+        }
+        return true;
+    }
+
+    private static boolean isBulkSupported(String bulkUrl) {
+        Long failedAt = bulkUnsupported.get(bulkUrl);
+        if (failedAt == null) return true;
+        if (System.currentTimeMillis() - failedAt < BULK_RECHECK_MILLIS) return false;
+        bulkUnsupported.remove(bulkUrl, failedAt);
+        return true;
+    }
+
+    private static List<String> parseIds(String json) {
+        List<String> ids = new ArrayList<String>();
         try {
-            JSONArray itemArray = (JSONArray) parser.parse(getCollectorItemJSON(type));
-            if (!CollectionUtils.isEmpty(itemArray)) {
-                for (Object o : itemArray) {
-                    JSONObject jo = (JSONObject) o;
-                    JSONObject option = (JSONObject) jo.get("options");
-                    if (option != null) options.add(option);
+            Object parsed = new JSONParser().parse(json);
+            if (parsed instanceof JSONArray) {
+                for (Object id : (JSONArray) parsed) {
+                    ids.add(String.valueOf(id));
                 }
             }
-            return options;
         } catch (ParseException e) {
-            logger.log(Level.WARNING, "Hygieia get collector items failed: Parsing JSON error.");
-            return options;
+            logger.fine("Hygieia: Bulk response is not a list of IDs: " + json);
         }
+        return ids;
     }
 
+    /**
+     * Posts the request to the given Hygieia endpoint, retrying transient failures with backoff.
+     * While the endpoint's circuit is open, or the API is known to be down, the post fails fast.
+     * Posts that do not reach Hygieia are spooled to the {@link HygieiaOutbox} and replayed later.
+     */
+    private HygieiaResponse post(String endpoint, Object request) {
+        String url = hygieiaAPIUrl + endpoint;
+        CircuitBreaker breaker = CircuitBreaker.forEndpoint(url);
+        if (HygieiaHealth.get().isKnownDown(hygieiaAPIUrl) || !breaker.allowRequest()) {
+            logger.log(Level.WARNING, "Hygieia: " + url + " is unavailable, spooling post for later delivery");
+            spoolTo(url, request);
+            return new HygieiaResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, "");
+        }
 
-    public boolean testConnection() {
         RestCall restCall = new RestCall();
-        RestCall.RestCallResponse callResponse = restCall.makeRestCallGet(hygieiaAPIUrl + "/ping");
-        int responseCode = callResponse.getResponseCode();
+        RequestEntity entity = new JsonRequestEntity(request);
+        if (compressionThreshold >= 0 && GzipRequestEntity.isLarger(entity, compressionThreshold)) {
+            entity = new GzipRequestEntity(entity, compressionLevel, endpoint);
+        }
+        RetryPolicy retryPolicy = new RetryPolicy();
+        RestCall.RestCallResponse callResponse = restCall.makeRestCallPost(url, entity);
+        while (callResponse.isTransientFailure() && retryPolicy.canRetry() && retryPolicy.backOff()) {
+            callResponse = restCall.makeRestCallPost(url, entity);
+        }
+
+        if (callResponse.isTransientFailure()) {
+            breaker.recordFailure();
+            spoolTo(url, request);
+        } else {
+            breaker.recordSuccess();
+        }
+        return new HygieiaResponse(callResponse.getResponseCode(), callResponse.getResponseString());
+    }
+
+    public void spool(String endpoint, Object request) {
+        spoolTo(hygieiaAPIUrl + endpoint, request);
+    }
+
+    private void spoolTo(String url, Object request) {
+        try {
+            HygieiaOutbox.get().add(url, HygieiaUtils.convertObjectToJsonBytes(request));
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "Hygieia: Could not serialize post to " + url, ioe);
+        }
+    }
+
+    public List<JSONObject> getCollectorItemOptions(String type) {
+        List<JSONObject> options = getList(hygieiaAPIUrl + "/collector/item/type/" + type, "options",
+                ProjectedJson.collectorItemOptions());
+        return (options == null) ? new ArrayList<JSONObject>() : new ArrayList<JSONObject>(options);
+    }
 
-        if (responseCode == HttpStatus.SC_OK) return true;
+    public List<String> getCollectorItemOptionValues(String type, String option) {
+        List<String> values = getList(hygieiaAPIUrl + "/collector/item/type/" + type, "options." + option,
+                ProjectedJson.collectorItemOption(option));
+        return (values == null) ? new ArrayList<String>() : new ArrayList<String>(values);
+    }
+
+    public Set<String> getDeploymentEnvironments(String appName) {
+        Set<String> names = getList(hygieiaAPIUrl + "/deploy/status/application/" + appName, "environments",
+                ProjectedJson.deploymentEnvironments());
+        return (names == null) ? new HashSet<String>() : new HashSet<String>(names);
+    }
+
+    /**
+     * Reads a list through the parser, or, if the server reports it unchanged since the copy held
+     * in {@link #lists}, returns that copy.
+     *
+     * @param projection names what the parser keeps, so different projections of a URL are held apart
+     * @return the list; null if it could not be read
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T getList(String url, String projection, RestCall.ResponseParser<T> parser) {
+        String key = url + "#" + projection;
+        Validated<T> cached = (Validated<T>) lists.get(key);
+        RestCall.StreamedResponse<T> response = new RestCall().makeStreamingGet(url,
+                (cached == null) ? null : cached.etag, parser);
+        if (response.isNotModified() && cached != null) {
+            return cached.value;
+        }
+        if (response.getResponseCode() != HttpStatus.SC_OK || response.getValue() == null) {
+            logger.log(Level.WARNING, "Hygieia get " + url + " failed: " + response.getResponseCode());
+            return null;
+        }
+        if (response.getEtag() != null) {
+            lists.put(key, new Validated<T>(response.getEtag(), response.getValue()));
+        } else {
+            lists.invalidate(key);
+        }
+        return response.getValue();
+    }
+
+    /**
+     * A parsed list and the entity tag of the response it came from.
+     */
+    private static final class Validated<T> {
+        private final String etag;
+        private final T value;
+
+        Validated(String etag, T value) {
+            this.etag = etag;
+            this.value = value;
+        }
+    }
+
+
+    public boolean testConnection() {
+        if (HygieiaHealth.get().isHealthy(hygieiaAPIUrl)) return true;
 
-        logger.log(Level.WARNING, "Hygieia Test Connection Failed. Response: " + responseCode);
+        logger.log(Level.WARNING, "Hygieia Test Connection Failed for " + hygieiaAPIUrl);
         return false;
     }
 }
@@ -13,6 +13,9 @@ public class DisabledNotifier implements FineGrainedNotifier {
     public void finalized(AbstractBuild r) {
     }
 
+    public void collect(AbstractBuild r) {
+    }
+
     public void completed(AbstractBuild r) {
     }
 
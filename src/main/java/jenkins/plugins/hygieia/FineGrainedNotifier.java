@@ -13,6 +13,12 @@ public interface FineGrainedNotifier {
 //    @SuppressWarnings("rawtypes")
     void finalized(AbstractBuild r);
 
+    /**
+     * Reads what the completion publishes from the build's workspace, while the build still holds it.
+     */
+    @SuppressWarnings("rawtypes")
+    void collect(AbstractBuild r);
+
     @SuppressWarnings("rawtypes")
     void completed(AbstractBuild r);
 
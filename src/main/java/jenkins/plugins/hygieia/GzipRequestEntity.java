@@ -0,0 +1,170 @@
+package jenkins.plugins.hygieia;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Request entity that gzip-compresses another entity while it is written to the connection, so no
+ * compressed copy of the body is ever held in memory. Sent with {@code Content-Encoding: gzip}.
+ * <p>
+ * Bytes before and after compression are accumulated per endpoint and reported by {@link #getReport()}.
+ */
+public class GzipRequestEntity implements RequestEntity {
+    private static final Logger logger = Logger.getLogger(GzipRequestEntity.class.getName());
+    private static final int BUFFER_SIZE = 8192;
+    private static final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+    private final RequestEntity entity;
+    private final int level;
+    private final String endpoint;
+
+    public GzipRequestEntity(RequestEntity entity, int level, String endpoint) {
+        this.entity = entity;
+        this.level = level;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @return true if the entity writes more than the given number of bytes. Stops writing as soon
+     * as the threshold is passed, so the cost of the check is bounded by the threshold.
+     */
+    public static boolean isLarger(RequestEntity entity, long threshold) {
+        ThresholdOutputStream probe = new ThresholdOutputStream(threshold);
+        try {
+            entity.writeRequest(probe);
+        } catch (IOException e) {
+            // expected once the threshold is passed
+        } catch (RuntimeException e) {
+            // serialization problems surface when the entity is actually sent
+        }
+        return probe.exceeded;
+    }
+
+    public boolean isRepeatable() {
+        return entity.isRepeatable();
+    }
+
+    public void writeRequest(OutputStream out) throws IOException {
+        CountingOutputStream sent = new CountingOutputStream(out);
+        LevelGzipOutputStream gzip = newGzipStream(sent);
+        try {
+            CountingOutputStream raw = new CountingOutputStream(gzip);
+            entity.writeRequest(raw);
+            gzip.finish();
+            gzip.flush();
+            record(raw.getByteCount(), sent.getByteCount());
+        } finally {
+            // the connection stays open, so the stream is not closed; free the native deflater here
+            gzip.end();
+        }
+    }
+
+    LevelGzipOutputStream newGzipStream(OutputStream out) throws IOException {
+        return new LevelGzipOutputStream(out, level);
+    }
+
+    public long getContentLength() {
+        return -1;
+    }
+
+    public String getContentType() {
+        return entity.getContentType();
+    }
+
+    private void record(long rawBytes, long sentBytes) {
+        Stats s = stats.get(endpoint);
+        if (s == null) {
+            Stats created = new Stats();
+            s = stats.putIfAbsent(endpoint, created);
+            if (s == null) s = created;
+        }
+        s.requests.incrementAndGet();
+        s.rawBytes.addAndGet(rawBytes);
+        s.sentBytes.addAndGet(sentBytes);
+        logger.fine("Hygieia: Compressed " + endpoint + " payload from " + rawBytes + " to " + sentBytes + " bytes");
+    }
+
+    /**
+     * @return bytes saved by compression, per endpoint
+     */
+    public static String getReport() {
+        if (stats.isEmpty()) return "No compressed requests";
+        StringBuilder report = new StringBuilder();
+        for (String key : stats.keySet()) {
+            Stats s = stats.get(key);
+            long raw = s.rawBytes.get();
+            long sent = s.sentBytes.get();
+            if (report.length() > 0) report.append("; ");
+            report.append(key).append(": ").append(s.requests.get()).append(" requests, ")
+                    .append(raw).append(" -> ").append(sent).append(" bytes");
+            if (raw > 0) {
+                report.append(" (").append(100 * (raw - sent) / raw).append("% saved)");
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Gzip stream at a chosen compression level whose deflater can be released without closing
+     * the underlying stream.
+     */
+    static final class LevelGzipOutputStream extends GZIPOutputStream {
+        private boolean ended;
+
+        LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+
+        void end() {
+            def.end();
+            ended = true;
+        }
+
+        boolean isEnded() {
+            return ended;
+        }
+    }
+
+    private static final class Stats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong rawBytes = new AtomicLong();
+        private final AtomicLong sentBytes = new AtomicLong();
+    }
+
+    private static final class ThresholdOutputStream extends OutputStream {
+        private final long threshold;
+        private long count;
+        private boolean exceeded;
+
+        ThresholdOutputStream(long threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            add(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            add(len);
+        }
+
+        private void add(long len) throws IOException {
+            count += len;
+            if (count > threshold) {
+                exceeded = true;
+                throw new IOException("Threshold of " + threshold + " bytes reached");
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package jenkins.plugins.hygieia;
+
+import hudson.ProxyConfiguration;
+import jenkins.model.Jenkins;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide pool of keep-alive HTTP connections.
+ * <p>
+ * One connection manager holds the connections to every host, so every {@link RestCall} to the
+ * same Hygieia or Sonar server reuses already established connections instead of paying a new
+ * TCP/TLS handshake. It allows {@link #MAX_CONNECTIONS_PER_HOST} connections to any one host and
+ * {@link #MAX_TOTAL_CONNECTIONS} across all of them. The client is only rebuilt when the Jenkins
+ * proxy configuration actually changes; it keeps using the same connections.
+ */
+public final class HttpClientPool {
+    private static final Logger logger = Logger.getLogger(HttpClientPool.class.getName());
+
+    static final int MAX_CONNECTIONS_PER_HOST = 20;
+    static final int MAX_TOTAL_CONNECTIONS = 100;
+    static final int CONNECTION_TIMEOUT = 10000;
+    static final int SOCKET_TIMEOUT = 60000;
+    static final long POOL_WAIT_TIMEOUT = 30000;
+    static final long IDLE_CONNECTION_TIMEOUT = 60000;
+    static final long IDLE_CHECK_INTERVAL = 15000;
+
+    private static final HttpClientPool INSTANCE = new HttpClientPool();
+
+    private final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+    private final IdleConnectionTimeoutThread idleConnectionEvictor;
+    private HttpClient client;
+    private Proxy clientProxy;
+
+    HttpClientPool() {
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+        params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+        params.setConnectionTimeout(CONNECTION_TIMEOUT);
+        params.setSoTimeout(SOCKET_TIMEOUT);
+        params.setStaleCheckingEnabled(true);
+
+        idleConnectionEvictor = new IdleConnectionTimeoutThread();
+        idleConnectionEvictor.setName("Hygieia idle connection evictor");
+        idleConnectionEvictor.setConnectionTimeout(IDLE_CONNECTION_TIMEOUT);
+        idleConnectionEvictor.setTimeoutInterval(IDLE_CHECK_INTERVAL);
+        idleConnectionEvictor.addConnectionManager(connectionManager);
+        idleConnectionEvictor.start();
+    }
+
+    public static HttpClientPool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the shared client, set up with the current Jenkins proxy.
+     */
+    public HttpClient getClient() {
+        return getClient(Proxy.of(getProxyConfiguration()));
+    }
+
+    synchronized HttpClient getClient(Proxy proxy) {
+        if (client == null || !Objects.equals(proxy, clientProxy)) {
+            client = newClient(proxy);
+            clientProxy = proxy;
+        }
+        return client;
+    }
+
+    HttpConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Stops the idle connection evictor and closes every connection.
+     */
+    void shutdown() {
+        idleConnectionEvictor.shutdown();
+        connectionManager.shutdown();
+    }
+
+    private static ProxyConfiguration getProxyConfiguration() {
+        Jenkins jenkins = Jenkins.getInstance();
+        return (jenkins == null) ? null : jenkins.proxy;
+    }
+
+    private HttpClient newClient(Proxy proxy) {
+        HttpClient httpClient = new HttpClient(connectionManager);
+        httpClient.getParams().setConnectionManagerTimeout(POOL_WAIT_TIMEOUT);
+        if (proxy != null) {
+            httpClient.getHostConfiguration().setProxy(proxy.host, proxy.port);
+            if (!StringUtils.isBlank(proxy.username) && !StringUtils.isBlank(proxy.password)) {
+                logger.info("Using proxy authentication (user=" + proxy.username + ")");
+                httpClient.getState().setProxyCredentials(AuthScope.ANY,
+                        new UsernamePasswordCredentials(proxy.username.trim(), proxy.password.trim()));
+            }
+        }
+        logger.fine("Hygieia: Created HTTP client" + ((proxy == null) ? "" : " using proxy " + proxy.host));
+        return httpClient;
+    }
+
+    /**
+     * The proxy settings the client was built with.
+     */
+    static final class Proxy {
+        private final String host;
+        private final int port;
+        private final String username;
+        private final String password;
+
+        Proxy(String host, int port, String username, String password) {
+            this.host = host;
+            this.port = port;
+            this.username = username;
+            this.password = password;
+        }
+
+        static Proxy of(ProxyConfiguration proxy) {
+            return (proxy == null) ? null : new Proxy(proxy.name, proxy.port, proxy.getUserName(), proxy.getPassword());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Proxy)) return false;
+            Proxy other = (Proxy) o;
+            return port == other.port && Objects.equals(host, other.host)
+                    && Objects.equals(username, other.username) && Objects.equals(password, other.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, username);
+        }
+    }
+}
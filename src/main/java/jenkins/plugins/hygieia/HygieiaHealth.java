@@ -0,0 +1,109 @@
+package jenkins.plugins.hygieia;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.apache.commons.httpclient.HttpStatus;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cached health of the Hygieia APIs in use, refreshed by background pings.
+ * <p>
+ * Every API URL that is published to or tested is probed on {@code /ping} at a fixed interval, so
+ * callers read the last known state instead of pinging on demand. URLs that have not been used
+ * for an hour are no longer probed.
+ */
+public final class HygieiaHealth {
+    private static final Logger logger = Logger.getLogger(HygieiaHealth.class.getName());
+
+    static final long PROBE_INTERVAL = 30000;
+    static final long FORGET_AFTER = TimeUnit.HOURS.toMillis(1);
+
+    private static final HygieiaHealth INSTANCE = new HygieiaHealth();
+
+    private final ConcurrentMap<String, State> states = new ConcurrentHashMap<String, State>();
+    private final ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "Hygieia health probe"));
+
+    private HygieiaHealth() {
+        prober.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                probeAll();
+            }
+        }, PROBE_INTERVAL, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public static HygieiaHealth get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the cached health of the API, probing it first if it has no recent state
+     */
+    public boolean isHealthy(String apiUrl) {
+        State state = track(apiUrl);
+        if (System.currentTimeMillis() - state.checkedAt > PROBE_INTERVAL) {
+            probe(apiUrl, state);
+        }
+        return state.healthy;
+    }
+
+    /**
+     * @return true only if the last background probe of the API failed; never blocks
+     */
+    public boolean isKnownDown(String apiUrl) {
+        State state = track(apiUrl);
+        return state.checkedAt > 0 && !state.healthy;
+    }
+
+    private State track(String apiUrl) {
+        State state = states.get(apiUrl);
+        if (state == null) {
+            State created = new State();
+            state = states.putIfAbsent(apiUrl, created);
+            if (state == null) state = created;
+        }
+        state.lastUsed = System.currentTimeMillis();
+        return state;
+    }
+
+    private void probeAll() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, State>> it = states.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, State> entry = it.next();
+            if (now - entry.getValue().lastUsed > FORGET_AFTER) {
+                it.remove();
+            } else {
+                try {
+                    probe(entry.getKey(), entry.getValue());
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Hygieia: Health probe failed for " + entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    private void probe(String apiUrl, State state) {
+        RestCall.RestCallResponse callResponse = new RestCall().makeRestCallGet(apiUrl + "/ping");
+        boolean healthy = callResponse.getResponseCode() == HttpStatus.SC_OK;
+        if (healthy != state.healthy && state.checkedAt > 0) {
+            logger.info("Hygieia: " + apiUrl + " is " + (healthy ? "up" : "down. Response: " + callResponse.getResponseCode()));
+        }
+        state.healthy = healthy;
+        state.checkedAt = System.currentTimeMillis();
+    }
+
+    private static final class State {
+        private volatile boolean healthy;
+        private volatile long checkedAt;
+        private volatile long lastUsed;
+    }
+}
@@ -22,16 +22,25 @@ public class HygieiaListener extends RunListener<AbstractBuild> {
         super(AbstractBuild.class);
     }
 
+    /**
+     * Reads the completion data on the build's thread, while its log is still open, and queues the posts.
+     */
     @Override
     public void onCompleted(AbstractBuild r, TaskListener listener) {
-        getNotifier(r.getProject(), listener).completed(r);
+        FineGrainedNotifier notifier = getNotifier(r.getProject(), listener);
+        if (notifier instanceof DisabledNotifier) {
+            ActiveNotifier.discard(r);
+            PublishQueue.get().forget(r);
+        } else {
+            notifier.completed(r);
+        }
         super.onCompleted(r, listener);
     }
 
     @Override
     public void onStarted(AbstractBuild r, TaskListener listener) {
-         getNotifier(r.getProject(), listener).started(r);
-         super.onStarted(r, listener);
+        getNotifier(r.getProject(), listener).started(r);
+        super.onStarted(r, listener);
     }
 
     @Override
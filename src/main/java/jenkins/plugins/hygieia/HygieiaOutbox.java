@@ -0,0 +1,488 @@
+package jenkins.plugins.hygieia;
+
+import jenkins.model.Jenkins;
+import org.apache.commons.httpclient.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only spool of posts that could not be delivered to Hygieia.
+ * <p>
+ * Each record holds the target URL and the serialized request, framed by a length and a CRC32 so a
+ * record torn by a crash is detected and discarded when the spool is reopened. Appends are made
+ * durable with group commit: one fsync covers every record written while the previous fsync was
+ * running. {@link #drain()} replays the records in order and remembers how far it got in a
+ * separate offset file, so delivery is at-least-once across restarts.
+ * <p>
+ * The records waiting for delivery are kept within {@link #setMaxBytes a limit}: an append that
+ * would exceed it drops the oldest records first. A record that fails its checksum is copied to a
+ * quarantine file and skipped, resuming at the next intact record, so it cannot block the records
+ * behind it. Delivered records are cut off the front of the spool once they take as much space as
+ * the records still waiting.
+ */
+public class HygieiaOutbox {
+    private static final Logger logger = Logger.getLogger(HygieiaOutbox.class.getName());
+
+    static final String SPOOL_FILE = "outbox.spool";
+    static final String OFFSET_FILE = "outbox.offset";
+    static final String QUARANTINE_FILE = "outbox.quarantine";
+    static final long MAX_RECORD_AGE = TimeUnit.DAYS.toMillis(3);
+    public static final int DEFAULT_MAX_MEGABYTES = 256;
+    private static final int RECORD_MAGIC = 0x48594731;
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+
+    private static HygieiaOutbox instance;
+
+    private final File directory;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final Object drainLock = new Object();
+
+    private RandomAccessFile spool;
+    private volatile long writePosition;
+    private volatile long syncedPosition;
+    private volatile long readPosition;
+    private volatile long maxBytes = DEFAULT_MAX_MEGABYTES * 1024L * 1024L;
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong quarantinedBytes = new AtomicLong();
+
+    /**
+     * Receives replayed records.
+     */
+    public interface Delivery {
+        /**
+         * @return true if the record is done with (delivered or permanently rejected), false to retry it later
+         */
+        boolean deliver(String url, byte[] payload);
+    }
+
+    HygieiaOutbox(File directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized HygieiaOutbox get() {
+        if (instance == null) {
+            Jenkins jenkins = Jenkins.getInstance();
+            instance = new HygieiaOutbox(jenkins == null ? null : new File(jenkins.getRootDir(), "hygieia-outbox"));
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the most bytes of records kept waiting for delivery.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Appends a post to the spool, first dropping the oldest records if it would not fit within
+     * the limit otherwise. Returns once the record is on disk.
+     */
+    public void add(String url, byte[] payload) {
+        if (directory == null) {
+            logger.warning("Hygieia: No outbox available, dropping undelivered post to " + url);
+            return;
+        }
+        try {
+            byte[] record = encode(url, payload, System.currentTimeMillis());
+            if (record.length > maxBytes) {
+                droppedRecords.incrementAndGet();
+                logger.warning("Hygieia: Post to " + url + " of " + record.length
+                        + " bytes is larger than the outbox limit, dropping it");
+                return;
+            }
+            long end;
+            synchronized (writeLock) {
+                RandomAccessFile file = open();
+                makeRoom(file, record.length);
+                file.seek(writePosition);
+                file.write(record);
+                writePosition += record.length;
+                end = writePosition;
+            }
+            sync(end);
+            logger.info("Hygieia: Spooled undelivered post to " + url + " for later delivery");
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Hygieia: Could not spool undelivered post to " + url, e);
+        }
+    }
+
+    public int drain() {
+        return drain(new HttpDelivery());
+    }
+
+    /**
+     * Replays spooled records in order until the spool is empty or a delivery fails.
+     *
+     * @return number of records taken off the spool
+     */
+    public int drain(Delivery delivery) {
+        if (directory == null || !new File(directory, SPOOL_FILE).exists()) return 0;
+        synchronized (drainLock) {
+            int drained = 0;
+            RandomAccessFile reader = null;
+            try {
+                synchronized (writeLock) {
+                    open();
+                }
+                reader = new RandomAccessFile(new File(directory, SPOOL_FILE), "r");
+                long position;
+                while ((position = readPosition) < writePosition) {
+                    long limit = writePosition;
+                    Record record = read(reader, position, limit);
+                    if (record == null) {
+                        quarantine(reader, position, nextRecord(reader, position + 1, limit));
+                        continue;
+                    }
+                    if (System.currentTimeMillis() - record.createdAt > MAX_RECORD_AGE) {
+                        logger.warning("Hygieia: Dropping expired outbox post to " + record.url);
+                    } else if (!delivery.deliver(record.url, record.payload)) {
+                        break;
+                    }
+                    advance(position, record.next);
+                    drained++;
+                }
+                closeQuietly(reader);
+                reader = null;
+                compact();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Hygieia: Error draining outbox", e);
+            } finally {
+                closeQuietly(reader);
+            }
+            return drained;
+        }
+    }
+
+    /**
+     * @return bytes of spooled records waiting for delivery
+     */
+    public long getPendingBytes() {
+        return writePosition - readPosition;
+    }
+
+    public String getStatus() {
+        return getPendingBytes() + " of " + maxBytes + " bytes waiting for delivery, "
+                + droppedRecords.get() + " post(s) dropped over the limit, "
+                + quarantinedBytes.get() + " unreadable bytes quarantined";
+    }
+
+    void close() throws IOException {
+        synchronized (writeLock) {
+            if (spool != null) {
+                spool.close();
+                spool = null;
+            }
+        }
+    }
+
+    private RandomAccessFile open() throws IOException {
+        if (spool == null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            spool = new RandomAccessFile(new File(directory, SPOOL_FILE), "rw");
+            long length = spool.length();
+            long offset = readOffset();
+            if (offset < 0 || offset > length) offset = 0;
+
+            // the end of the last intact record; an unreadable one followed by intact ones is
+            // quarantined when drained, anything after the last intact record is a torn append
+            long valid = offset;
+            long position = offset;
+            while (position < length) {
+                Record record = read(spool, position, length);
+                if (record != null) {
+                    valid = record.next;
+                    position = record.next;
+                } else {
+                    position = nextRecord(spool, position + 1, length);
+                }
+            }
+            if (valid < length) {
+                logger.warning("Hygieia: Discarding " + (length - valid) + " bytes of incomplete outbox records");
+                spool.setLength(valid);
+                spool.getChannel().force(true);
+            }
+            writePosition = valid;
+            syncedPosition = valid;
+            readPosition = offset;
+        }
+        return spool;
+    }
+
+    private void sync(long position) throws IOException {
+        synchronized (syncLock) {
+            if (syncedPosition >= position) return;
+            long target = writePosition;
+            RandomAccessFile file;
+            synchronized (writeLock) {
+                file = spool;
+            }
+            file.getChannel().force(false);
+            syncedPosition = target;
+        }
+    }
+
+    /**
+     * Moves the read position from a record to the next, unless an append dropped the record meanwhile.
+     */
+    private void advance(long from, long to) throws IOException {
+        synchronized (writeLock) {
+            if (readPosition == from) {
+                readPosition = to;
+                writeOffset(to);
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest records waiting for delivery until a record of the given length fits
+     * within the limit. Called with the write lock held.
+     */
+    private void makeRoom(RandomAccessFile file, int length) throws IOException {
+        long position = readPosition;
+        int dropped = 0;
+        while (writePosition - position + length > maxBytes && position < writePosition) {
+            position = recordEnd(file, position, writePosition);
+            dropped++;
+        }
+        if (dropped > 0) {
+            droppedRecords.addAndGet(dropped);
+            logger.warning("Hygieia: Outbox is over its limit of " + maxBytes + " bytes, dropping the oldest "
+                    + dropped + " post(s)");
+            readPosition = position;
+            writeOffset(position);
+        }
+    }
+
+    /**
+     * Cuts delivered records off the front of the spool: all of it once everything was
+     * delivered, otherwise once they take at least as much space as the records still waiting.
+     */
+    private void compact() throws IOException {
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                if (readPosition > 0 && readPosition == writePosition) {
+                    spool.setLength(0);
+                    writePosition = 0;
+                    syncedPosition = 0;
+                    readPosition = 0;
+                    writeOffset(0);
+                } else if (readPosition > 0 && readPosition >= writePosition - readPosition) {
+                    long live = writePosition - readPosition;
+                    File target = new File(directory, SPOOL_FILE);
+                    File temp = new File(directory, SPOOL_FILE + ".tmp");
+                    FileOutputStream out = new FileOutputStream(temp);
+                    try {
+                        FileChannel channel = out.getChannel();
+                        long copied = 0;
+                        while (copied < live) {
+                            long n = spool.getChannel().transferTo(readPosition + copied, live - copied, channel);
+                            if (n <= 0) throw new IOException("Could not copy the outbox records to " + temp);
+                            copied += n;
+                        }
+                        channel.force(true);
+                    } finally {
+                        out.close();
+                    }
+                    // replaying from the start after a crash here only repeats delivered posts
+                    writeOffset(0);
+                    spool.close();
+                    spool = null;
+                    Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    spool = new RandomAccessFile(target, "rw");
+                    writePosition = live;
+                    syncedPosition = live;
+                    readPosition = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies unreadable bytes to the quarantine file and moves the read position past them.
+     */
+    private void quarantine(RandomAccessFile reader, long from, long to) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(directory, QUARANTINE_FILE), true);
+        try {
+            long copied = 0;
+            while (copied < to - from) {
+                long n = reader.getChannel().transferTo(from + copied, to - from - copied, out.getChannel());
+                if (n <= 0) break;
+                copied += n;
+            }
+        } finally {
+            out.close();
+        }
+        quarantinedBytes.addAndGet(to - from);
+        logger.warning("Hygieia: Outbox record at " + from + " is unreadable, moved " + (to - from)
+                + " bytes to " + QUARANTINE_FILE);
+        advance(from, to);
+    }
+
+    private long readOffset() throws IOException {
+        File file = new File(directory, OFFSET_FILE);
+        if (file.length() < 8) return 0;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return in.readLong();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeOffset(long offset) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(new File(directory, OFFSET_FILE), "rw");
+        try {
+            out.writeLong(offset);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] encode(String url, byte[] payload, long createdAt) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(payload.length + url.length() + 32);
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeLong(createdAt);
+        out.writeUTF(url);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+        byte[] bodyBytes = body.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(HEADER_SIZE + bodyBytes.length);
+        DataOutputStream header = new DataOutputStream(record);
+        header.writeInt(RECORD_MAGIC);
+        header.writeInt(bodyBytes.length);
+        header.writeLong(crc.getValue());
+        header.write(bodyBytes);
+        header.flush();
+        return record.toByteArray();
+    }
+
+    /**
+     * @return the end of the record at the position, judged by its header alone, or else the
+     * position of the next intact record
+     */
+    private static long recordEnd(RandomAccessFile file, long position, long limit) throws IOException {
+        if (limit - position >= HEADER_SIZE) {
+            file.seek(position);
+            int magic = file.readInt();
+            int length = file.readInt();
+            if (magic == RECORD_MAGIC && length >= 0 && position + HEADER_SIZE + length <= limit) {
+                return position + HEADER_SIZE + length;
+            }
+        }
+        return nextRecord(file, position + 1, limit);
+    }
+
+    /**
+     * @return the position of the first intact record at or after the position, or the limit if there is none
+     */
+    private static long nextRecord(RandomAccessFile file, long position, long limit) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long start = position;
+        while (start + 4 <= limit) {
+            int length = (int) Math.min(buffer.length, limit - start);
+            file.seek(start);
+            file.readFully(buffer, 0, length);
+            for (int i = 0; i + 4 <= length; i++) {
+                if (((buffer[i] & 0xff) << 24 | (buffer[i + 1] & 0xff) << 16 | (buffer[i + 2] & 0xff) << 8
+                        | (buffer[i + 3] & 0xff)) == RECORD_MAGIC && read(file, start + i, limit) != null) {
+                    return start + i;
+                }
+            }
+            // the last three bytes may start a magic number continued in the next chunk
+            start += Math.max(1, length - 3);
+        }
+        return limit;
+    }
+
+    /**
+     * @return the record at the position, or null if there is no complete, intact record before the limit
+     */
+    private static Record read(RandomAccessFile file, long position, long limit) throws IOException {
+        if (limit - position < HEADER_SIZE) return null;
+        file.seek(position);
+        int magic = file.readInt();
+        int length = file.readInt();
+        long checksum = file.readLong();
+        if (magic != RECORD_MAGIC || length < 0 || position + HEADER_SIZE + length > limit) return null;
+
+        byte[] body = new byte[length];
+        file.readFully(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if (crc.getValue() != checksum) return null;
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        long createdAt = in.readLong();
+        String url = in.readUTF();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        return new Record(createdAt, url, payload, position + HEADER_SIZE + length);
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException ignored) {
+            // nothing to do
+        }
+    }
+
+    private static final class Record {
+        private final long createdAt;
+        private final String url;
+        private final byte[] payload;
+        private final long next;
+
+        Record(long createdAt, String url, byte[] payload, long next) {
+            this.createdAt = createdAt;
+            this.url = url;
+            this.payload = payload;
+            this.next = next;
+        }
+    }
+
+    private static final class HttpDelivery implements Delivery {
+        public boolean deliver(String url, byte[] payload) {
+            CircuitBreaker breaker = CircuitBreaker.forEndpoint(url);
+            if (!breaker.allowRequest()) return false;
+            RestCall.RestCallResponse response = new RestCall().makeRestCallPost(url, payload);
+            if (response.isTransientFailure()) {
+                breaker.recordFailure();
+                return false;
+            }
+            breaker.recordSuccess();
+            if (response.getResponseCode() != HttpStatus.SC_CREATED) {
+                logger.warning("Hygieia: Replayed post to " + url + " was rejected. Response: " + response.getResponseCode());
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package jenkins.plugins.hygieia;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically replays posts spooled in the {@link HygieiaOutbox}.
+ */
+@Extension
+public class HygieiaOutboxDrainer extends AsyncPeriodicWork {
+
+    public HygieiaOutboxDrainer() {
+        super("Hygieia outbox drainer");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.SECONDS.toMillis(30);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        int drained = HygieiaOutbox.get().drain();
+        if (drained > 0) {
+            listener.getLogger().println("Hygieia: Replayed " + drained + " spooled post(s)");
+        }
+    }
+}
@@ -14,18 +14,24 @@ import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import hygieia.builder.BuildContext;
+import hygieia.builder.CommitBuilder;
+import hygieia.builder.SonarBuilder;
 import hygieia.transformer.HygieiaConstants;
+import hygieia.utils.NameIndex;
+import hygieia.utils.ParallelFileProcessor;
+import hygieia.utils.WorkspaceScanner;
 import net.sf.json.JSONObject;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -241,9 +247,6 @@ public class HygieiaPublisher extends Notifier {
     }
 
     public HygieiaService newHygieiaService(AbstractBuild r, BuildListener listener) {
-        String hygieiaAPIUrl = getDescriptor().getHygieiaAPIUrl();
-        String hygieiaToken = getDescriptor().getHygieiaToken();
-        String hygieiaJenkinsName = getDescriptor().getHygieiaJenkinsName();
         EnvVars env;
         try {
             env = r.getEnvironment(listener);
@@ -251,37 +254,88 @@ public class HygieiaPublisher extends Notifier {
             listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
             env = new EnvVars();
         }
-        hygieiaAPIUrl = env.expand(hygieiaAPIUrl);
-        hygieiaToken = env.expand(hygieiaToken);
-        hygieiaJenkinsName = env.expand(hygieiaJenkinsName);
+        return newHygieiaService(env);
+    }
 
-        return new DefaultHygieiaService(hygieiaAPIUrl, hygieiaToken, hygieiaJenkinsName);
+    /**
+     * Like {@link #newHygieiaService(AbstractBuild, BuildListener)}, with the environment already read for the publish.
+     */
+    public HygieiaService newHygieiaService(BuildContext context) {
+        return newHygieiaService(context.getEnvironment());
     }
 
+    private HygieiaService newHygieiaService(EnvVars env) {
+        String hygieiaAPIUrl = env.expand(getDescriptor().getHygieiaAPIUrl());
+        String hygieiaToken = env.expand(getDescriptor().getHygieiaToken());
+        String hygieiaJenkinsName = env.expand(getDescriptor().getHygieiaJenkinsName());
+
+        return getDescriptor().getHygieiaService(hygieiaAPIUrl, hygieiaToken, hygieiaJenkinsName);
+    }
+
+    /**
+     * Reads the workspace files the build's completion publishes, while the build still holds
+     * its workspace; the posts are made once the build completed.
+     */
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+        new ActiveNotifier(this, listener).collect(build);
         return true;
     }
 
 
     @Extension
     public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
+        static final int DEFAULT_COMPRESSION_THRESHOLD = 64;
+        static final int DEFAULT_COMPRESSION_LEVEL = 6;
+        private static final String DEPLOY_APPLICATION = DescriptorImpl.class.getName() + ".deployApplicationName";
+        private static final String TEST_APPLICATION = DescriptorImpl.class.getName() + ".testApplicationName";
 
         private String hygieiaAPIUrl;
         private String hygieiaToken;
         private String hygieiaJenkinsName;
-        private Set<String> deployAppNames = new HashSet<String>();
-        private Set<String> deployEnvNames = new HashSet<String>();
-
-        private String deployApplicationNameSelected;
-        private String deployEnvSelected;
-        private String testApplicationNameSelected;
-        private String testEnvSelected;
+        private int publishWorkers = PublishQueue.DEFAULT_WORKERS;
+        private int publishConcurrency = PublishStagePool.DEFAULT_CONCURRENCY;
+        private int sonarServerConcurrency = SonarBuilder.DEFAULT_SERVER_CONCURRENCY;
+        private int testParseParallelism = ParallelFileProcessor.DEFAULT_PARALLELISM;
+        private String scanExcludes = "";
+        private int scanMaxDepth = WorkspaceScanner.DEFAULT_MAX_DEPTH;
+        private int maxCommits = CommitBuilder.DEFAULT_MAX_COMMITS;
+        private boolean commitsWithBuildStart = true;
+        private boolean commitsWithBuildComplete = true;
+        private boolean commitsWithArtifacts = true;
+        private String unchangedResults = ResultDigests.PUBLISH;
+        private boolean compressRequests;
+        private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+        private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+        private int outboxMaxSize = HygieiaOutbox.DEFAULT_MAX_MEGABYTES;
+        private final transient AutoCompleteCache names = new AutoCompleteCache();
 
-        Map<String, Set<String>> appEnv = new HashMap<String, Set<String>>();
+        /**
+         * Auto-completion state saved by earlier versions; kept so their configurations still load.
+         */
+        @Deprecated
+        private transient Set<String> deployAppNames;
+        @Deprecated
+        private transient Set<String> deployEnvNames;
+        @Deprecated
+        private transient String deployApplicationNameSelected;
+        @Deprecated
+        private transient String deployEnvSelected;
+        @Deprecated
+        private transient String testApplicationNameSelected;
+        @Deprecated
+        private transient String testEnvSelected;
+        @Deprecated
+        private transient Map<String, Set<String>> appEnv;
 
         public DescriptorImpl() {
             load();
+            PublishQueue.get().setWorkers(publishWorkers);
+            PublishStagePool.get().setConcurrency(publishConcurrency);
+            PublishStagePool.gathering().setConcurrency(publishConcurrency);
+            SonarBuilder.setServerConcurrency(sonarServerConcurrency);
+            ParallelFileProcessor.setParallelism(testParseParallelism);
+            HygieiaOutbox.get().setMaxBytes(outboxMaxSize * 1024L * 1024L);
         }
 
 
@@ -297,6 +351,101 @@ public class HygieiaPublisher extends Notifier {
             return hygieiaJenkinsName;
         }
 
+        public int getPublishWorkers() {
+            return publishWorkers;
+        }
+
+        public int getPublishConcurrency() {
+            return publishConcurrency;
+        }
+
+        public int getSonarServerConcurrency() {
+            return sonarServerConcurrency;
+        }
+
+        public int getTestParseParallelism() {
+            return testParseParallelism;
+        }
+
+        public String getScanExcludes() {
+            return scanExcludes;
+        }
+
+        public int getScanMaxDepth() {
+            return scanMaxDepth;
+        }
+
+        public int getMaxCommits() {
+            return maxCommits;
+        }
+
+        public boolean isCommitsWithBuildStart() {
+            return commitsWithBuildStart;
+        }
+
+        public boolean isCommitsWithBuildComplete() {
+            return commitsWithBuildComplete;
+        }
+
+        /**
+         * @return false to have artifacts reference their build's Hygieia ID instead of repeating its commits
+         */
+        public boolean isCommitsWithArtifacts() {
+            return commitsWithArtifacts;
+        }
+
+        public String getCommitPayloadStatus() {
+            return CommitPayloads.getReport();
+        }
+
+        /**
+         * @return how to send Sonar and test results identical to the job's last published ones:
+         *         {@link ResultDigests#PUBLISH} or {@link ResultDigests#SKIP}; configurations saved with
+         *         the former link setting publish in full
+         */
+        public String getUnchangedResults() {
+            return ResultDigests.SKIP.equals(unchangedResults) ? ResultDigests.SKIP : ResultDigests.PUBLISH;
+        }
+
+        public String getResultDigestStatus() {
+            return ResultDigests.getReport();
+        }
+
+        /**
+         * @return a scanner without queries that applies the global excludes and depth limit
+         */
+        public WorkspaceScanner newWorkspaceScanner() {
+            return new WorkspaceScanner(WorkspaceScanner.parseExcludes(scanExcludes), scanMaxDepth);
+        }
+
+        public boolean isCompressRequests() {
+            return compressRequests;
+        }
+
+        public int getCompressionThreshold() {
+            return compressionThreshold;
+        }
+
+        public int getCompressionLevel() {
+            return compressionLevel;
+        }
+
+        public String getCompressionStatus() {
+            return GzipRequestEntity.getReport();
+        }
+
+        public String getPublishQueueStatus() {
+            return PublishQueue.get().getStatus();
+        }
+
+        public int getOutboxMaxSize() {
+            return outboxMaxSize;
+        }
+
+        public String getOutboxStatus() {
+            return HygieiaOutbox.get().getStatus();
+        }
+
         public ListBoxModel doFillTestTypeItems(String testType) {
             ListBoxModel model = new ListBoxModel();
 
@@ -318,30 +467,9 @@ public class HygieiaPublisher extends Notifier {
         public AutoCompletionCandidates doAutoCompleteApplicationName(@QueryParameter String value, @QueryParameter("hygieiaAPIUrl") final String hygieiaAPIUrl,
                                                                       @QueryParameter("hygieiaToken") final String hygieiaToken,
                                                                       @QueryParameter("hygieiaJenkinsName") final String hygieiaJenkinsName) {
-
-            String hostUrl = hygieiaAPIUrl;
-            if (StringUtils.isEmpty(hostUrl)) {
-                hostUrl = this.hygieiaAPIUrl;
-            }
-            String targetToken = hygieiaToken;
-            if (StringUtils.isEmpty(targetToken)) {
-                targetToken = this.hygieiaToken;
-            }
-            String niceName = hygieiaJenkinsName;
-            if (StringUtils.isEmpty(niceName)) {
-                niceName = this.hygieiaJenkinsName;
-            }
-            AutoCompletionCandidates c = new AutoCompletionCandidates();
-            if (CollectionUtils.isEmpty(deployAppNames)) fillApplicationNames(hostUrl, targetToken, niceName);
-            for (String aN : deployAppNames) {
-                if (aN.toLowerCase().startsWith(value.toLowerCase())) {
-                    c.add(aN);
-                }
-            }
-            return c;
+            return candidates(applicationNames(hygieiaAPIUrl, hygieiaToken, hygieiaJenkinsName), value);
         }
 
-
         /**
          * This method provides auto-completion items for the 'state' field.
          * Stapler finds this method via the naming convention.
@@ -350,42 +478,10 @@ public class HygieiaPublisher extends Notifier {
          */
         public AutoCompletionCandidates doAutoCompleteEnvironmentName(@QueryParameter String value, @QueryParameter("hygieiaAPIUrl") final String hygieiaAPIUrl,
                                                                       @QueryParameter("hygieiaToken") final String hygieiaToken,
-                                                                      @QueryParameter("hygieiaJenkinsName") final String hygieiaJenkinsName) {
-            String hostUrl = hygieiaAPIUrl;
-            if (StringUtils.isEmpty(hostUrl)) {
-                hostUrl = this.hygieiaAPIUrl;
-            }
-            String targetToken = hygieiaToken;
-            if (StringUtils.isEmpty(targetToken)) {
-                targetToken = this.hygieiaToken;
-            }
-            String niceName = hygieiaJenkinsName;
-            if (StringUtils.isEmpty(niceName)) {
-                niceName = this.hygieiaJenkinsName;
-            }
-
-            if (!StringUtils.isEmpty(deployApplicationNameSelected)) {
-                deployEnvNames = getHygieiaService(hostUrl, targetToken, niceName)
-                        .getDeploymentEnvironments(deployApplicationNameSelected);
-            }
-            AutoCompletionCandidates c = new AutoCompletionCandidates();
-            for (String eN : deployEnvNames) {
-                if (eN.toLowerCase().startsWith(value.toLowerCase())) {
-                    c.add(eN);
-                }
-            }
-            return c;
-        }
-
-
-        private void fillApplicationNames(String hostUrl, String targetToken, String niceName) {
-            for (org.json.simple.JSONObject item : getHygieiaService(hostUrl, targetToken, niceName)
-                    .getCollectorItemOptions(HygieiaConstants.COLLECTOR_ITEM_DEPLOYMENT)) {
-                String name = (String) item.get("applicationName");
-                if (!StringUtils.isEmpty(name)) {
-                    deployAppNames.add(name);
-                }
-            }
+                                                                      @QueryParameter("hygieiaJenkinsName") final String hygieiaJenkinsName,
+                                                                      @QueryParameter("applicationName") final String applicationName) {
+            String appName = StringUtils.isEmpty(applicationName) ? remembered(DEPLOY_APPLICATION) : applicationName;
+            return candidates(environmentNames(appName, hygieiaAPIUrl, hygieiaToken, hygieiaJenkinsName), value);
         }
 
         /**
@@ -397,27 +493,7 @@ public class HygieiaPublisher extends Notifier {
         public AutoCompletionCandidates doAutoCompleteTestApplicationName(@QueryParameter String value, @QueryParameter("hygieiaAPIUrl") final String hygieiaAPIUrl,
                                                                           @QueryParameter("hygieiaToken") final String hygieiaToken,
                                                                           @QueryParameter("hygieiaJenkinsName") final String hygieiaJenkinsName) {
-
-            String hostUrl = hygieiaAPIUrl;
-            if (StringUtils.isEmpty(hostUrl)) {
-                hostUrl = this.hygieiaAPIUrl;
-            }
-            String targetToken = hygieiaToken;
-            if (StringUtils.isEmpty(targetToken)) {
-                targetToken = this.hygieiaToken;
-            }
-            String niceName = hygieiaJenkinsName;
-            if (StringUtils.isEmpty(niceName)) {
-                niceName = this.hygieiaJenkinsName;
-            }
-            AutoCompletionCandidates c = new AutoCompletionCandidates();
-            if (CollectionUtils.isEmpty(deployAppNames)) fillApplicationNames(hostUrl, targetToken, niceName);
-            for (String aN : deployAppNames) {
-                if (aN.toLowerCase().startsWith(value.toLowerCase())) {
-                    c.add(aN);
-                }
-            }
-            return c;
+            return candidates(applicationNames(hygieiaAPIUrl, hygieiaToken, hygieiaJenkinsName), value);
         }
 
         /**
@@ -428,34 +504,66 @@ public class HygieiaPublisher extends Notifier {
          */
         public AutoCompletionCandidates doAutoCompleteTestEnvironmentName(@QueryParameter String value, @QueryParameter("hygieiaAPIUrl") final String hygieiaAPIUrl,
                                                                           @QueryParameter("hygieiaToken") final String hygieiaToken,
-                                                                          @QueryParameter("hygieiaJenkinsName") final String hygieiaJenkinsName) {
-            String hostUrl = hygieiaAPIUrl;
-            if (StringUtils.isEmpty(hostUrl)) {
-                hostUrl = this.hygieiaAPIUrl;
-            }
-            String targetToken = hygieiaToken;
-            if (StringUtils.isEmpty(targetToken)) {
-                targetToken = this.hygieiaToken;
-            }
-            String niceName = hygieiaJenkinsName;
-            if (StringUtils.isEmpty(niceName)) {
-                niceName = this.hygieiaJenkinsName;
-            }
-
-            if (!StringUtils.isEmpty(testApplicationNameSelected)) {
-                deployEnvNames = getHygieiaService(hostUrl, targetToken, niceName)
-                        .getDeploymentEnvironments(testApplicationNameSelected);
-            }
+                                                                          @QueryParameter("hygieiaJenkinsName") final String hygieiaJenkinsName,
+                                                                          @QueryParameter("testApplicationName") final String testApplicationName) {
+            String appName = StringUtils.isEmpty(testApplicationName) ? remembered(TEST_APPLICATION) : testApplicationName;
+            return candidates(environmentNames(appName, hygieiaAPIUrl, hygieiaToken, hygieiaJenkinsName), value);
+        }
 
+        private static AutoCompletionCandidates candidates(NameIndex index, String value) {
             AutoCompletionCandidates c = new AutoCompletionCandidates();
-            for (String eN : deployEnvNames) {
-                if (eN.toLowerCase().startsWith(value.toLowerCase())) {
-                    c.add(eN);
-                }
+            for (String name : index.startingWith(value)) {
+                c.add(name);
             }
             return c;
         }
 
+        /**
+         * @return the deployment application names known to Hygieia, from the cache; never waits for Hygieia
+         */
+        NameIndex applicationNames(String hygieiaAPIUrl, String hygieiaToken, String hygieiaJenkinsName) {
+            final String hostUrl = StringUtils.isEmpty(hygieiaAPIUrl) ? this.hygieiaAPIUrl : hygieiaAPIUrl;
+            final String targetToken = StringUtils.isEmpty(hygieiaToken) ? this.hygieiaToken : hygieiaToken;
+            final String niceName = StringUtils.isEmpty(hygieiaJenkinsName) ? this.hygieiaJenkinsName : hygieiaJenkinsName;
+            if (StringUtils.isEmpty(hostUrl)) return NameIndex.EMPTY;
+            return names.get(hostUrl + "|applications", new AutoCompleteCache.Loader() {
+                public Collection<String> load() {
+                    return getHygieiaService(hostUrl, targetToken, niceName)
+                            .getCollectorItemOptionValues(HygieiaConstants.COLLECTOR_ITEM_DEPLOYMENT, "applicationName");
+                }
+            });
+        }
+
+        /**
+         * @return the environments of the application known to Hygieia, from the cache; never waits for Hygieia
+         */
+        NameIndex environmentNames(final String appName, String hygieiaAPIUrl, String hygieiaToken, String hygieiaJenkinsName) {
+            final String hostUrl = StringUtils.isEmpty(hygieiaAPIUrl) ? this.hygieiaAPIUrl : hygieiaAPIUrl;
+            final String targetToken = StringUtils.isEmpty(hygieiaToken) ? this.hygieiaToken : hygieiaToken;
+            final String niceName = StringUtils.isEmpty(hygieiaJenkinsName) ? this.hygieiaJenkinsName : hygieiaJenkinsName;
+            if (StringUtils.isEmpty(hostUrl) || StringUtils.isEmpty(appName)) return NameIndex.EMPTY;
+            return names.get(hostUrl + "|environments|" + appName, new AutoCompleteCache.Loader() {
+                public Collection<String> load() {
+                    return getHygieiaService(hostUrl, targetToken, niceName).getDeploymentEnvironments(appName);
+                }
+            });
+        }
+
+        /**
+         * Keeps the application name last entered by this user, whose environments are then offered.
+         * It is kept in the user's session because the descriptor is shared by every user.
+         */
+        private static void remember(String attribute, String value) {
+            StaplerRequest request = Stapler.getCurrentRequest();
+            if (request != null) request.getSession().setAttribute(attribute, value);
+        }
+
+        private static String remembered(String attribute) {
+            StaplerRequest request = Stapler.getCurrentRequest();
+            HttpSession session = (request == null) ? null : request.getSession(false);
+            return (session == null) ? null : (String) session.getAttribute(attribute);
+        }
+
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
             return true;
         }
@@ -476,12 +584,56 @@ public class HygieiaPublisher extends Notifier {
             hygieiaAPIUrl = sr.getParameter("hygieiaAPIUrl");
             hygieiaToken = sr.getParameter("hygieiaToken");
             hygieiaJenkinsName = sr.getParameter("hygieiaJenkinsName");
+            names.clear();
+            publishWorkers = intParameter(sr, "publishWorkers", PublishQueue.DEFAULT_WORKERS);
+            PublishQueue.get().setWorkers(publishWorkers);
+            publishConcurrency = intParameter(sr, "publishConcurrency", PublishStagePool.DEFAULT_CONCURRENCY);
+            PublishStagePool.get().setConcurrency(publishConcurrency);
+            PublishStagePool.gathering().setConcurrency(publishConcurrency);
+            sonarServerConcurrency = intParameter(sr, "sonarServerConcurrency", SonarBuilder.DEFAULT_SERVER_CONCURRENCY);
+            SonarBuilder.setServerConcurrency(sonarServerConcurrency);
+            testParseParallelism = intParameter(sr, "testParseParallelism", ParallelFileProcessor.DEFAULT_PARALLELISM);
+            ParallelFileProcessor.setParallelism(testParseParallelism);
+            scanExcludes = StringUtils.defaultString(sr.getParameter("scanExcludes")).trim();
+            scanMaxDepth = intParameter(sr, "scanMaxDepth", WorkspaceScanner.DEFAULT_MAX_DEPTH);
+            maxCommits = intParameter(sr, "maxCommits", CommitBuilder.DEFAULT_MAX_COMMITS);
+            commitsWithBuildStart = booleanParameter(sr, "commitsWithBuildStart");
+            commitsWithBuildComplete = booleanParameter(sr, "commitsWithBuildComplete");
+            commitsWithArtifacts = booleanParameter(sr, "commitsWithArtifacts");
+            unchangedResults = sr.getParameter("unchangedResults");
+            if (!ResultDigests.SKIP.equals(unchangedResults)) {
+                unchangedResults = ResultDigests.PUBLISH;
+            }
+            compressRequests = booleanParameter(sr, "compressRequests");
+            compressionThreshold = intParameter(sr, "compressionThreshold", DEFAULT_COMPRESSION_THRESHOLD);
+            compressionLevel = Math.min(9, Math.max(1, intParameter(sr, "compressionLevel", DEFAULT_COMPRESSION_LEVEL)));
+            outboxMaxSize = Math.max(1, intParameter(sr, "outboxMaxSize", HygieiaOutbox.DEFAULT_MAX_MEGABYTES));
+            HygieiaOutbox.get().setMaxBytes(outboxMaxSize * 1024L * 1024L);
             save();
             return super.configure(sr, formData);
         }
 
+        private static boolean booleanParameter(StaplerRequest sr, String name) {
+            return "on".equals(sr.getParameter(name)) || "true".equals(sr.getParameter(name));
+        }
+
+        private static int intParameter(StaplerRequest sr, String name, int defaultValue) {
+            String value = sr.getParameter(name);
+            if (StringUtils.isBlank(value)) return defaultValue;
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                logger.warning("Hygieia: Invalid value for " + name + ": " + value);
+                return defaultValue;
+            }
+        }
+
         HygieiaService getHygieiaService(final String hygieiaAPIUrl, final String hygieiaToken, final String hygieiaJenkinsName) {
-            return new DefaultHygieiaService(hygieiaAPIUrl, hygieiaToken, hygieiaJenkinsName);
+            DefaultHygieiaService service = new DefaultHygieiaService(hygieiaAPIUrl, hygieiaToken, hygieiaJenkinsName);
+            if (compressRequests) {
+                service.setCompression(compressionThreshold * 1024L, compressionLevel);
+            }
+            return service;
         }
 
         @Override
@@ -522,7 +674,9 @@ public class HygieiaPublisher extends Notifier {
         }
 
         public FormValidation doCheckDeployAppNameValue(@QueryParameter String value) throws IOException, ServletException {
-            deployApplicationNameSelected = value;
+            remember(DEPLOY_APPLICATION, value);
+            applicationNames(null, null, null);
+            environmentNames(value, null, null, null);
             if (value.isEmpty()) {
                 return FormValidation.warning("You must fill this box!");
             }
@@ -534,7 +688,6 @@ public class HygieiaPublisher extends Notifier {
         }
 
         public FormValidation doCheckDeployEnvValue(@QueryParameter String value) throws IOException, ServletException {
-            deployEnvSelected = value;
             if (value.isEmpty()) {
                 return FormValidation.warning("You must fill this box!");
             }
@@ -548,7 +701,9 @@ public class HygieiaPublisher extends Notifier {
 
 
         public FormValidation doCheckTestingAppNameValue(@QueryParameter String value) throws IOException, ServletException {
-            testApplicationNameSelected = value;
+            remember(TEST_APPLICATION, value);
+            applicationNames(null, null, null);
+            environmentNames(value, null, null, null);
             if (value.isEmpty()) {
                 return FormValidation.warning("You must fill this box!");
             }
@@ -560,7 +715,6 @@ public class HygieiaPublisher extends Notifier {
         }
 
         public FormValidation doCheckTestingEnvValue(@QueryParameter String value) throws IOException, ServletException {
-            testEnvSelected = value;
             if (value.isEmpty()) {
                 return FormValidation.warning("You must fill this box!");
             }
@@ -7,6 +7,7 @@ import com.capitalone.dashboard.request.DeployDataCreateRequest;
 import com.capitalone.dashboard.request.TestDataCreateRequest;
 import org.json.simple.JSONObject;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -15,6 +16,13 @@ public interface HygieiaService {
 
     HygieiaResponse publishArtifactData(BinaryArtifactCreateRequest request);
 
+    /**
+     * Publishes the artifacts in bounded batches.
+     *
+     * @return one response per request, in iteration order
+     */
+    List<HygieiaResponse> publishArtifacts(Collection<BinaryArtifactCreateRequest> requests);
+
     boolean testConnection();
 
     HygieiaResponse publishTestResults(TestDataCreateRequest request);
@@ -23,7 +31,24 @@ public interface HygieiaService {
 
     HygieiaResponse publishDeployData(DeployDataCreateRequest request);
 
+    /**
+     * Publishes the deploys in bounded batches.
+     *
+     * @return one response per request, in iteration order
+     */
+    List<HygieiaResponse> publishDeploys(Collection<DeployDataCreateRequest> requests);
+
+    /**
+     * Spools the request for the endpoint, such as {@code /build}, to the outbox without posting it.
+     */
+    void spool(String endpoint, Object request);
+
     List<JSONObject> getCollectorItemOptions(String type);
 
+    /**
+     * @return one string option of every collector item of the type, such as each deployment's application name
+     */
+    List<String> getCollectorItemOptionValues(String type, String option);
+
     Set<String> getDeploymentEnvironments(String appName);
 }
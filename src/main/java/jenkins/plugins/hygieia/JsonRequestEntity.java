@@ -0,0 +1,57 @@
+package jenkins.plugins.hygieia;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import hygieia.utils.HygieiaUtils;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Request entity that serializes a request object as UTF-8 JSON straight into the connection's
+ * output stream, so the payload is never held in memory as a byte array or String. The body is
+ * sent with chunked transfer encoding.
+ */
+public class JsonRequestEntity implements RequestEntity {
+    private final Object value;
+
+    public JsonRequestEntity(Object value) {
+        this.value = value;
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public void writeRequest(OutputStream out) throws IOException {
+        try {
+            HygieiaUtils.writeJson(value, out);
+        } catch (JsonProcessingException e) {
+            // not an I/O problem: retrying or spooling the same object would fail the same way
+            throw new IllegalArgumentException("Could not serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * @return the size of the value's JSON in bytes, counted without buffering it
+     */
+    public static long sizeOf(Object value) {
+        CountingOutputStream counter = new CountingOutputStream(new NullOutputStream());
+        try {
+            new JsonRequestEntity(value).writeRequest(counter);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to a null stream cannot fail", e);
+        }
+        return counter.getByteCount();
+    }
+
+    public long getContentLength() {
+        return -1;
+    }
+
+    public String getContentType() {
+        return RestCall.JSON_CONTENT_TYPE;
+    }
+}
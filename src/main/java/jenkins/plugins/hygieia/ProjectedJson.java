@@ -0,0 +1,147 @@
+package jenkins.plugins.hygieia;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import hygieia.utils.JsonMappers;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parsers that pull the few fields the plugin uses out of Hygieia's list responses as they are
+ * read, skipping everything else without building it.
+ * <p>
+ * A collector item list holds every item of a type, each with its collector, timestamps and
+ * options, while the auto-completion only needs one option of each; a deployment status lists
+ * every component of every environment, while only the environment names are used.
+ */
+final class ProjectedJson {
+
+    private ProjectedJson() {
+    }
+
+    /**
+     * @return a parser of {@code /collector/item/type/{type}} keeping one string option of each item
+     */
+    static RestCall.ResponseParser<List<String>> collectorItemOption(final String option) {
+        return new RestCall.ResponseParser<List<String>>() {
+            public List<String> parse(InputStream body) throws IOException {
+                final List<String> values = new ArrayList<String>();
+                readItemOptions(body, new OptionsReader() {
+                    public void read(JsonParser parser) throws IOException {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String name = parser.getCurrentName();
+                            JsonToken value = parser.nextToken();
+                            if (option.equals(name) && value == JsonToken.VALUE_STRING) {
+                                values.add(parser.getText());
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                });
+                return values;
+            }
+        };
+    }
+
+    /**
+     * @return a parser of {@code /collector/item/type/{type}} keeping the options of each item
+     */
+    static RestCall.ResponseParser<List<JSONObject>> collectorItemOptions() {
+        return new RestCall.ResponseParser<List<JSONObject>>() {
+            public List<JSONObject> parse(InputStream body) throws IOException {
+                final List<JSONObject> options = new ArrayList<JSONObject>();
+                readItemOptions(body, new OptionsReader() {
+                    @SuppressWarnings("unchecked")
+                    public void read(JsonParser parser) throws IOException {
+                        JSONObject option = new JSONObject();
+                        option.putAll(JsonMappers.mapper().readValue(parser, Map.class));
+                        options.add(option);
+                    }
+                });
+                return options;
+            }
+        };
+    }
+
+    /**
+     * @return a parser of {@code /deploy/status/application/{name}} keeping the environment names
+     */
+    static RestCall.ResponseParser<Set<String>> deploymentEnvironments() {
+        return new RestCall.ResponseParser<Set<String>>() {
+            public Set<String> parse(InputStream body) throws IOException {
+                Set<String> names = new LinkedHashSet<String>();
+                JsonParser parser = JsonMappers.mapper().getFactory().createParser(body);
+                try {
+                    if (parser.nextToken() != JsonToken.START_OBJECT) return names;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.getCurrentName();
+                        JsonToken value = parser.nextToken();
+                        if ("result".equals(field) && value == JsonToken.START_ARRAY) {
+                            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                                String name = stringField(parser, "name");
+                                if (name != null) names.add(name);
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } finally {
+                    parser.close();
+                }
+                return names;
+            }
+        };
+    }
+
+    private interface OptionsReader {
+        /**
+         * Reads an item's options object; the parser is at its start and is left at its end.
+         */
+        void read(JsonParser parser) throws IOException;
+    }
+
+    private static void readItemOptions(InputStream body, OptionsReader reader) throws IOException {
+        JsonParser parser = JsonMappers.mapper().getFactory().createParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) return;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("options".equals(field) && value == JsonToken.START_OBJECT) {
+                        reader.read(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Reads the rest of the current object, keeping one string field.
+     */
+    private static String stringField(JsonParser parser, String field) throws IOException {
+        String value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (field.equals(name) && token == JsonToken.VALUE_STRING) {
+                value = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,294 @@
+package jenkins.plugins.hygieia;
+
+import hudson.model.AbstractBuild;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded background queue that posts build events to Hygieia off the build's thread.
+ * <p>
+ * Only the posts are queued: everything read from the build, its workspace or its agent is
+ * gathered before an event is submitted, while the build still holds them. Events are spread over
+ * a configurable number of single-threaded lanes. All events of one build always land on the same
+ * lane, so they are posted in the order they were submitted (start before complete).
+ * <p>
+ * When a lane is full the event is spooled to the {@link HygieiaOutbox} instead, so neither the
+ * build nor the data waits. Once an event of a build was spooled, its later events are spooled
+ * too, after the events of the build still queued, so they cannot overtake it.
+ */
+public final class PublishQueue {
+    private static final Logger logger = Logger.getLogger(PublishQueue.class.getName());
+
+    public static final int DEFAULT_WORKERS = 2;
+    static final int LANE_CAPACITY = 500;
+
+    private static final PublishQueue INSTANCE = new PublishQueue(DEFAULT_WORKERS, LANE_CAPACITY);
+
+    /**
+     * A build event ready to post.
+     */
+    public interface Publication {
+        /**
+         * Posts the event; runs on a lane, so it must not use the build's log or workspace.
+         */
+        void publish();
+
+        /**
+         * Spools the event to the outbox instead of posting it.
+         */
+        void spool();
+    }
+
+    private final int laneCapacity;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final Map<String, BuildEvents> builds = new HashMap<String, BuildEvents>();
+    private volatile ThreadPoolExecutor[] lanes = new ThreadPoolExecutor[0];
+
+    PublishQueue(int workers, int laneCapacity) {
+        this.laneCapacity = laneCapacity;
+        setWorkers(workers);
+    }
+
+    public static PublishQueue get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Changes the number of lanes. Events already queued on the old lanes are published before
+     * any event submitted to the new lanes, so per-build ordering survives a resize.
+     */
+    public synchronized void setWorkers(int workers) {
+        int count = Math.max(1, workers);
+        final ThreadPoolExecutor[] old = lanes;
+        if (old.length == count) return;
+
+        ThreadPoolExecutor[] created = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++) {
+            created[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(laneCapacity),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "Hygieia publisher " + i));
+            if (old.length > 0) {
+                created[i].execute(new Runnable() {
+                    public void run() {
+                        awaitTermination(old);
+                    }
+                });
+            }
+        }
+        lanes = created;
+        for (ThreadPoolExecutor lane : old) {
+            lane.shutdown();
+        }
+        logger.info("Hygieia: Publishing with " + count + " worker(s)");
+    }
+
+    /**
+     * Queues an event of the build.
+     *
+     * @param last true for the build's last event, after which its ordering state is dropped
+     */
+    public void submit(AbstractBuild build, String event, boolean last, Publication publication) {
+        submit(build.getParent().getFullName() + "#" + build.getNumber(), event, last, publication);
+    }
+
+    void submit(String key, String event, boolean last, Publication publication) {
+        spoolInOrder(key, enqueue(key, event, last, publication));
+    }
+
+    /**
+     * @return the build's tasks to spool now, or null
+     */
+    private synchronized List<QueuedTask> enqueue(String key, String event, boolean last, Publication publication) {
+        submitted.incrementAndGet();
+        BuildEvents events = builds.get(key);
+        if (events == null) {
+            events = new BuildEvents();
+            builds.put(key, events);
+        }
+        events.closed = last;
+        QueuedTask task = new QueuedTask(key, event, publication);
+        if (!events.spooling) {
+            ThreadPoolExecutor[] current = lanes;
+            ThreadPoolExecutor lane = current[(key.hashCode() & Integer.MAX_VALUE) % current.length];
+            try {
+                lane.execute(task);
+                events.pending++;
+                return null;
+            } catch (RejectedExecutionException e) {
+                logger.warning("Hygieia: Publish queue is full, spooling " + key + " " + event + " to the outbox");
+                events.spooling = true;
+            }
+        }
+        events.deferred.add(task);
+        return takeDeferred(key, events);
+    }
+
+    /**
+     * Drops the ordering state of a build whose last event will not be submitted.
+     */
+    public synchronized void forget(AbstractBuild build) {
+        BuildEvents events = builds.get(build.getParent().getFullName() + "#" + build.getNumber());
+        if (events != null) events.closed = true;
+    }
+
+    private void finished(String key) {
+        spoolInOrder(key, dequeue(key));
+    }
+
+    private synchronized List<QueuedTask> dequeue(String key) {
+        completed.incrementAndGet();
+        BuildEvents events = builds.get(key);
+        if (events == null) return null;
+        events.pending--;
+        return takeDeferred(key, events);
+    }
+
+    /**
+     * Takes the deferred tasks of the build once none of its tasks is queued and no other thread
+     * is spooling its tasks; the caller spools them, outside the lock, since spooling writes to disk.
+     *
+     * @return the tasks to spool, or null if there are none to spool now
+     */
+    private List<QueuedTask> takeDeferred(String key, BuildEvents events) {
+        if (events.pending > 0 || events.flushing || events.deferred.isEmpty()) {
+            if (events.isDone()) builds.remove(key);
+            return null;
+        }
+        events.flushing = true;
+        List<QueuedTask> tasks = new ArrayList<QueuedTask>(events.deferred);
+        events.deferred.clear();
+        return tasks;
+    }
+
+    /**
+     * Spools the tasks, then any deferred behind them meanwhile, so a build's events reach the
+     * outbox in the order they were submitted.
+     */
+    private void spoolInOrder(String key, List<QueuedTask> tasks) {
+        while (tasks != null) {
+            for (QueuedTask task : tasks) {
+                task.spool();
+            }
+            tasks = spooled(key);
+        }
+    }
+
+    private synchronized List<QueuedTask> spooled(String key) {
+        BuildEvents events = builds.get(key);
+        if (events == null) return null;
+        events.flushing = false;
+        return takeDeferred(key, events);
+    }
+
+    /**
+     * @return number of events waiting to be published
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return how long the oldest waiting event has been queued, in milliseconds
+     */
+    public long getLagMillis() {
+        long oldest = Long.MAX_VALUE;
+        for (ThreadPoolExecutor lane : lanes) {
+            Runnable head = lane.getQueue().peek();
+            if (head instanceof QueuedTask) {
+                oldest = Math.min(oldest, ((QueuedTask) head).queuedAt);
+            }
+        }
+        return (oldest == Long.MAX_VALUE) ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    public int getWorkers() {
+        return lanes.length;
+    }
+
+    public String getStatus() {
+        return "Workers: " + getWorkers() + ", Queued: " + getQueueDepth() + ", Lag: " + getLagMillis() + " ms"
+                + ", Published: " + completed.get() + "/" + submitted.get()
+                + ", Spooled when full: " + spooled.get();
+    }
+
+    private static void awaitTermination(ThreadPoolExecutor[] executors) {
+        try {
+            for (ThreadPoolExecutor executor : executors) {
+                executor.awaitTermination(1, TimeUnit.HOURS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The events of one build that are queued, being spooled, or waiting to be spooled behind them.
+     */
+    private static final class BuildEvents {
+        private int pending;
+        private boolean spooling;
+        private boolean closed;
+        private boolean flushing;
+        private final List<QueuedTask> deferred = new ArrayList<QueuedTask>();
+
+        boolean isDone() {
+            return closed && pending == 0 && !flushing && deferred.isEmpty();
+        }
+    }
+
+    private final class QueuedTask implements Runnable {
+        private final String key;
+        private final String name;
+        private final Publication publication;
+        private final long queuedAt = System.currentTimeMillis();
+
+        QueuedTask(String key, String event, Publication publication) {
+            this.key = key;
+            this.name = key + " " + event;
+            this.publication = publication;
+        }
+
+        public void run() {
+            long lag = System.currentTimeMillis() - queuedAt;
+            if (lag > 0) {
+                logger.fine("Hygieia: Publishing " + name + " after " + lag + " ms in queue");
+            }
+            try {
+                publication.publish();
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "Hygieia: Error publishing " + name, t);
+            } finally {
+                finished(key);
+            }
+        }
+
+        void spool() {
+            spooled.incrementAndGet();
+            try {
+                publication.spool();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Hygieia: Error spooling " + name, e);
+            } finally {
+                completed.incrementAndGet();
+            }
+        }
+    }
+}
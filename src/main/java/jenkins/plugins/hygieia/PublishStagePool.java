@@ -0,0 +1,131 @@
+package jenkins.plugins.hygieia;
+
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared pools running the independent stages of a build's completion publish.
+ * <p>
+ * {@link #gathering()} runs the stages reading a build's workspace, such as report parsing and
+ * finding Sonar analyses; the build's thread waits for them. {@link #get()} runs the artifact,
+ * test, Sonar and deploy posts, which the publishing lane waits for, and the Sonar reads, which
+ * no one waits for. A post may sleep in its retry back-off or wait for a slow server, so the build
+ * threads never wait on that pool. Sonar reads do not wait in it: a read that must wait for the
+ * compute engine or for a free server permit is scheduled to run again instead.
+ * <p>
+ * The size of each pool is the cap on its stages running at once across all builds. Stages never
+ * wait on each other inside a pool, so a small cap cannot deadlock.
+ */
+public final class PublishStagePool implements Executor {
+    private static final Logger logger = Logger.getLogger(PublishStagePool.class.getName());
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    private static final PublishStagePool INSTANCE = new PublishStagePool("Hygieia publish stage", DEFAULT_CONCURRENCY);
+    private static final PublishStagePool GATHERING = new PublishStagePool("Hygieia gather stage", DEFAULT_CONCURRENCY);
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    PublishStagePool(int concurrency) {
+        this("Hygieia publish stage", concurrency);
+    }
+
+    PublishStagePool(String name, int concurrency) {
+        this.name = name;
+        executor = new ThreadPoolExecutor(concurrency, concurrency,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), name));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the pool of the posts and Sonar reads, which build threads never wait for
+     */
+    public static PublishStagePool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the pool of the stages reading a build's workspace, which its build waits for
+     */
+    public static PublishStagePool gathering() {
+        return GATHERING;
+    }
+
+    public synchronized void setConcurrency(int concurrency) {
+        int count = Math.max(1, concurrency);
+        if (count == executor.getMaximumPoolSize()) return;
+        if (count > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(count);
+            executor.setCorePoolSize(count);
+        } else {
+            executor.setCorePoolSize(count);
+            executor.setMaximumPoolSize(count);
+        }
+        logger.info("Hygieia: Running up to " + count + " stage(s) at once as " + name);
+    }
+
+    public int getConcurrency() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public <T> Future<T> submit(Callable<T> stage) {
+        return executor.submit(stage);
+    }
+
+    /**
+     * Runs a stage no one waits for; it must handle its own failures.
+     */
+    public void execute(Runnable stage) {
+        executor.execute(stage);
+    }
+
+    /**
+     * Waits for a stage. A failed stage is logged and yields null, so it never fails the others.
+     *
+     * @param listener the build's listener while the build runs, or null when publishing from the queue
+     * @return the stage's result, or null if there is no stage or it failed
+     */
+    public static <T> T await(Future<T> stage, TaskListener listener) {
+        if (stage == null) return null;
+        try {
+            return stage.get();
+        } catch (InterruptedException e) {
+            stage.cancel(true);
+            Thread.currentThread().interrupt();
+            if (listener != null) listener.getLogger().println("Hygieia: Publishing interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = (e.getCause() == null) ? e : e.getCause();
+            if (listener != null) listener.getLogger().println("Hygieia: Publishing error" + '\n' + cause.getMessage());
+            logger.log(Level.WARNING, "Hygieia: Publishing error", cause);
+        }
+        return null;
+    }
+
+    /**
+     * Waits for every stage, even after one of them failed.
+     *
+     * @return the results in the order of the stages, null for each stage that failed
+     */
+    public static <T> List<T> awaitAll(List<Future<T>> stages, TaskListener listener) {
+        List<T> results = new ArrayList<T>(stages.size());
+        for (Future<T> stage : stages) {
+            results.add(await(stage, listener));
+        }
+        return results;
+    }
+}
@@ -1,29 +1,30 @@
 package jenkins.plugins.hygieia;
 
-import hudson.ProxyConfiguration;
-import jenkins.model.Jenkins;
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
-import org.apache.commons.lang3.StringUtils;
 
 import javax.net.ssl.X509TrustManager;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 
 public class    RestCall {
     private static final Logger logger = Logger.getLogger(RestCall.class.getName());
+    static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
 
     public RestCall() {
     }
@@ -32,42 +33,40 @@ public class    RestCall {
 //        return new HttpClient();
 //    }
 
-    protected HttpClient getHttpClient() {
-        HttpClient client = new HttpClient();
-        if (Jenkins.getInstance() != null) {
-            ProxyConfiguration proxy = Jenkins.getInstance().proxy;
-            if (proxy != null) {
-                client.getHostConfiguration().setProxy(proxy.name, proxy.port);
-                String username = proxy.getUserName();
-                String password = proxy.getPassword();
-                if (!StringUtils.isEmpty(username.trim()) && !StringUtils.isEmpty(password.trim())) {
-                    logger.info("Using proxy authentication (user=" + username + ")");
-                     client.getState().setProxyCredentials(AuthScope.ANY,
-                            new UsernamePasswordCredentials(username.trim(), password.trim()));
-                }
-            }
-        }
-        return client;
+    protected HttpClient getHttpClient(String url) {
+        return HttpClientPool.get().getClient();
     }
 
     public RestCallResponse makeRestCallPost(String url, String jsonString) {
+        try {
+            return makeRestCallPost(url, new StringRequestEntity(jsonString, "application/json", "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            logger.log(Level.SEVERE, "Hygieia: Error posting to Hygieia", e);
+            return new RestCallResponse(HttpStatus.SC_BAD_REQUEST, "", e);
+        }
+    }
+
+    public RestCallResponse makeRestCallPost(String url, byte[] json) {
+        return makeRestCallPost(url, new ByteArrayRequestEntity(json, JSON_CONTENT_TYPE));
+    }
+
+    public RestCallResponse makeRestCallPost(String url, RequestEntity requestEntity) {
         RestCallResponse response;
-        HttpClient client = getHttpClient();
+        HttpClient client = getHttpClient(url);
 
         PostMethod post = new PostMethod(url);
 
         try {
-            StringRequestEntity requestEntity = new StringRequestEntity(
-                    jsonString,
-                    "application/json",
-                    "UTF-8");
             post.setRequestEntity(requestEntity);
+            if (requestEntity instanceof GzipRequestEntity) {
+                post.setRequestHeader("Content-Encoding", "gzip");
+            }
             int responseCode = client.executeMethod(post);
             String responseString = getResponseString(post.getResponseBodyAsStream());
             response = new RestCallResponse(responseCode, responseString);
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Hygieia: Error posting to Hygieia", e);
-            response = new RestCallResponse(HttpStatus.SC_BAD_REQUEST, "");
+            response = new RestCallResponse(HttpStatus.SC_BAD_REQUEST, "", e);
         } finally {
             post.releaseConnection();
         }
@@ -76,7 +75,7 @@ public class    RestCall {
 
     public RestCallResponse makeRestCallGet(String url) {
         RestCallResponse response;
-        HttpClient client = getHttpClient();
+        HttpClient client = getHttpClient(url);
         GetMethod get = new GetMethod(url);
         try {
             get.getParams().setContentCharset("UTF-8");
@@ -85,17 +84,58 @@ public class    RestCall {
             response = new RestCallResponse(responseCode, responseString);
         } catch (HttpException e) {
             logger.log(Level.WARNING, "Error connecting to Hygieia", e);
-            response = new RestCallResponse(HttpStatus.SC_BAD_REQUEST, "");
+            response = new RestCallResponse(HttpStatus.SC_BAD_REQUEST, "", e);
         } catch (IOException e) {
             logger.log(Level.WARNING, "Error connecting to Hygieia", e);
-            response = new RestCallResponse(HttpStatus.SC_BAD_REQUEST, "");
+            response = new RestCallResponse(HttpStatus.SC_BAD_REQUEST, "", e);
         } finally {
             get.releaseConnection();
         }
         return response;
     }
 
+    /**
+     * Sends a GET and hands the body of a 200 response to the parser as it arrives, without
+     * buffering it. The response may be gzip-compressed. Given the entity tag of an earlier
+     * response the request is conditional, and an unchanged resource is answered with a 304 and
+     * no value.
+     *
+     * @param etag the entity tag of the copy the caller holds, or null
+     */
+    public <T> StreamedResponse<T> makeStreamingGet(String url, String etag, ResponseParser<T> parser) {
+        HttpClient client = getHttpClient(url);
+        GetMethod get = new GetMethod(url);
+        try {
+            get.setRequestHeader("Accept-Encoding", "gzip");
+            if (etag != null) get.setRequestHeader("If-None-Match", etag);
+            int responseCode = client.executeMethod(get);
+            Header tag = get.getResponseHeader("ETag");
+            String responseTag = (tag == null) ? null : tag.getValue();
+            if (responseCode != HttpStatus.SC_OK) {
+                return new StreamedResponse<T>(responseCode, null, responseTag, null);
+            }
+            InputStream in = get.getResponseBodyAsStream();
+            if (in == null) return new StreamedResponse<T>(responseCode, null, responseTag, null);
+            Header encoding = get.getResponseHeader("Content-Encoding");
+            if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+                in = new GZIPInputStream(in);
+            }
+            return new StreamedResponse<T>(responseCode, parser.parse(in), responseTag, null);
+        } catch (HttpException e) {
+            logger.log(Level.WARNING, "Error connecting to Hygieia", e);
+            return new StreamedResponse<T>(HttpStatus.SC_BAD_REQUEST, null, null, e);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error connecting to Hygieia", e);
+            // the body may be partly read; do not return the connection to the pool
+            get.abort();
+            return new StreamedResponse<T>(HttpStatus.SC_BAD_REQUEST, null, null, e);
+        } finally {
+            get.releaseConnection();
+        }
+    }
+
     private String getResponseString(InputStream in) throws IOException {
+        if (in == null) return "";
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         byte[] byteArray = new byte[1024];
         int count;
@@ -105,15 +145,87 @@ public class    RestCall {
         return new String(outputStream.toByteArray(), "UTF-8");
     }
 
+    /**
+     * Reads a response body from its stream.
+     */
+    public interface ResponseParser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+
+    public static class StreamedResponse<T> {
+        private final int responseCode;
+        private final T value;
+        private final String etag;
+        private final Exception error;
+
+        StreamedResponse(int responseCode, T value, String etag, Exception error) {
+            this.responseCode = responseCode;
+            this.value = value;
+            this.etag = etag;
+            this.error = error;
+        }
+
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        /**
+         * @return the parsed body of a 200 response, otherwise null
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * @return the response's entity tag, or null if it had none
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        public boolean isNotModified() {
+            return responseCode == HttpStatus.SC_NOT_MODIFIED;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+    }
+
     public class RestCallResponse {
         private int responseCode;
         private String responseString;
+        private Exception error;
 
         public RestCallResponse(int responseCode, String responseString) {
             this.responseCode = responseCode;
             this.responseString = responseString;
         }
 
+        public RestCallResponse(int responseCode, String responseString, Exception error) {
+            this(responseCode, responseString);
+            this.error = error;
+        }
+
+        /**
+         * @return the exception that prevented the call from completing, or null if the server answered
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * @return true if the call never reached the server or the server was temporarily unavailable,
+         * so the same call may succeed later
+         */
+        public boolean isTransientFailure() {
+            if (error != null) {
+                return error instanceof IOException;
+            }
+            return responseCode == HttpStatus.SC_BAD_GATEWAY || responseCode == HttpStatus.SC_SERVICE_UNAVAILABLE
+                    || responseCode == HttpStatus.SC_GATEWAY_TIMEOUT;
+        }
+
         public int getResponseCode() {
             return responseCode;
         }
@@ -0,0 +1,226 @@
+package jenkins.plugins.hygieia;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hygieia.utils.JsonMappers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Digests of the Sonar and test results last published by a job, kept in the job's directory, so
+ * a rebuild that produced the same results can skip them.
+ * <p>
+ * A digest covers a canonical form of the request: its JSON with object keys sorted, array
+ * elements in no particular order, and the fields in {@link #IGNORED_FIELDS} left out, since
+ * timestamps, durations and build IDs differ on every run. A digest is recorded only once the
+ * server accepted the result. Results published in full whatever their digest are not digested.
+ * <p>
+ * Compared results are counted per kind, so {@link #getReport()} shows how many were unchanged
+ * and skipped.
+ */
+public final class ResultDigests {
+    private static final Logger logger = Logger.getLogger(ResultDigests.class.getName());
+
+    public static final String PUBLISH = "publish";
+    public static final String SKIP = "skip";
+
+    static final String FILE_NAME = "hygieia-result-digests.properties";
+    static final Set<String> IGNORED_FIELDS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "timestamp", "startTime", "endTime", "duration", "hygieiaId", "testJobId", "buildId", "executionId")));
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+    private static final Comparator<byte[]> UNSIGNED_BYTES = new Comparator<byte[]>() {
+        public int compare(byte[] a, byte[] b) {
+            for (int i = 0; i < a.length && i < b.length; i++) {
+                int diff = (a[i] & 0xff) - (b[i] & 0xff);
+                if (diff != 0) return diff;
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private final File file;
+
+    ResultDigests(File file) {
+        this.file = file;
+    }
+
+    public static ResultDigests forJob(AbstractProject project) {
+        return new ResultDigests(new File(project.getRootDir(), FILE_NAME));
+    }
+
+    /**
+     * @return the SHA-256 of the request's canonical form, in hex
+     */
+    public static String digest(Object request) {
+        MessageDigest digest = sha256();
+        update(digest, JsonMappers.mapper().valueToTree(request));
+        return Util.toHexString(digest.digest());
+    }
+
+    /**
+     * Feeds the node's canonical form to the digest as it walks the node, without building it.
+     * Collections such as the metrics are sets, whose order is not part of the content, so an
+     * array is fed as the sorted digests of its elements.
+     */
+    static void update(MessageDigest digest, JsonNode node) {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<String>();
+            for (Iterator<String> it = node.fieldNames(); it.hasNext(); ) {
+                String name = it.next();
+                if (!IGNORED_FIELDS.contains(name)) names.add(name);
+            }
+            Collections.sort(names);
+            digest.update((byte) '{');
+            for (String name : names) {
+                digest.update(TextNode.valueOf(name).toString().getBytes(UTF_8));
+                digest.update((byte) ':');
+                update(digest, node.get(name));
+                digest.update((byte) ',');
+            }
+            digest.update((byte) '}');
+        } else if (node.isArray()) {
+            byte[][] elements = new byte[node.size()][];
+            int i = 0;
+            for (JsonNode element : node) {
+                MessageDigest elementDigest = sha256();
+                update(elementDigest, element);
+                elements[i++] = elementDigest.digest();
+            }
+            Arrays.sort(elements, UNSIGNED_BYTES);
+            digest.update((byte) '[');
+            for (byte[] element : elements) {
+                digest.update(element);
+            }
+            digest.update((byte) ']');
+        } else {
+            digest.update(node.toString().getBytes(UTF_8));
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every JVM", e);
+        }
+    }
+
+    /**
+     * @return true if the digest is the one last recorded under the key
+     */
+    public boolean isUnchanged(String key, String digest) {
+        synchronized (ResultDigests.class) {
+            return digest.equals(load().getProperty(key));
+        }
+    }
+
+    /**
+     * Records the digest of a result the server accepted.
+     */
+    public void record(String key, String digest) {
+        synchronized (ResultDigests.class) {
+            Properties digests = load();
+            if (digest.equals(digests.getProperty(key))) return;
+            digests.setProperty(key, digest);
+            try {
+                save(digests);
+            } catch (IOException e) {
+                logger.warning("Hygieia: Could not save result digests to " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private Properties load() {
+        Properties digests = new Properties();
+        if (!file.isFile()) return digests;
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                digests.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.fine("Hygieia: Could not read result digests " + file + ": " + e.getMessage());
+        }
+        return digests;
+    }
+
+    private void save(Properties digests) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) throw new IOException("Could not create " + parent);
+        File temp = new File(parent, file.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            digests.store(out, null);
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Counts a compared result of the kind, which was skipped if it was unchanged.
+     */
+    public static void counted(String kind, boolean unchanged) {
+        Stats s = stats.get(kind);
+        if (s == null) {
+            Stats created = new Stats();
+            s = stats.putIfAbsent(kind, created);
+            if (s == null) s = created;
+        }
+        s.results.incrementAndGet();
+        if (unchanged) {
+            s.unchanged.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return unchanged and so skipped results, and hit rate, per kind
+     */
+    public static String getReport() {
+        if (stats.isEmpty()) return "No results compared yet";
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            long results = s.results.get();
+            long unchanged = s.unchanged.get();
+            if (report.length() > 0) report.append("; ");
+            report.append(entry.getKey()).append(": ").append(unchanged).append(" of ").append(results)
+                    .append(" unchanged and skipped (").append((results == 0) ? 0 : unchanged * 100 / results).append("%)");
+        }
+        return report.toString();
+    }
+
+    private static final class Stats {
+        private final AtomicLong results = new AtomicLong();
+        private final AtomicLong unchanged = new AtomicLong();
+    }
+}
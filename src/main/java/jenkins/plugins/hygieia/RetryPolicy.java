@@ -0,0 +1,46 @@
+package jenkins.plugins.hygieia;
+
+import java.util.Random;
+
+/**
+ * Bounded retries with decorrelated jitter: each delay is drawn uniformly between the base delay
+ * and three times the previous delay, capped at {@link #MAX_DELAY}. This spreads the retries of
+ * many builds hitting the same outage instead of synchronizing them.
+ */
+public class RetryPolicy {
+    static final int MAX_ATTEMPTS = 3;
+    static final long BASE_DELAY = 250;
+    static final long MAX_DELAY = 4000;
+
+    private final Random random = new Random();
+    private int attempts;
+    private long previousDelay = BASE_DELAY;
+
+    /**
+     * @return true if another attempt is allowed after the one that just failed
+     */
+    public boolean canRetry() {
+        return ++attempts < MAX_ATTEMPTS;
+    }
+
+    /**
+     * Sleeps before the next attempt.
+     *
+     * @return false if the thread was interrupted and no further attempt should be made
+     */
+    public boolean backOff() {
+        previousDelay = nextDelay(previousDelay, BASE_DELAY, MAX_DELAY, random);
+        try {
+            Thread.sleep(previousDelay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    static long nextDelay(long previousDelay, long baseDelay, long maxDelay, Random random) {
+        long upper = Math.max(baseDelay, Math.min(maxDelay, previousDelay * 3));
+        return baseDelay + (long) (random.nextDouble() * (upper - baseDelay));
+    }
+}
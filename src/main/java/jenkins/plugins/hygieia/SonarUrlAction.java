@@ -0,0 +1,32 @@
+package jenkins.plugins.hygieia;
+
+import hudson.model.InvisibleAction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sonar dashboard URLs seen in a build's console output, recorded by {@link SonarUrlLogFilter}
+ * while the build runs.
+ * <p>
+ * The action is added when the build starts, so a build without it predates the filter and its
+ * log has to be searched instead, while a build with an empty action ran no Sonar analysis.
+ */
+public class SonarUrlAction extends InvisibleAction {
+    private final List<String> urls = new ArrayList<String>();
+
+    public synchronized void add(String url) {
+        urls.add(url);
+    }
+
+    public synchronized List<String> getUrls() {
+        return new ArrayList<String>(urls);
+    }
+
+    /**
+     * @return the URL printed last, or null if none was
+     */
+    public synchronized String getLastUrl() {
+        return urls.isEmpty() ? null : urls.get(urls.size() - 1);
+    }
+}
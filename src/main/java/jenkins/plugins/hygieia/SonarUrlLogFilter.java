@@ -0,0 +1,102 @@
+package jenkins.plugins.hygieia;
+
+import hudson.Extension;
+import hudson.console.ConsoleLogFilter;
+import hudson.console.LineTransformationOutputStream;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+/**
+ * Watches the console output of builds that publish Sonar results for the line Sonar prints
+ * after an analysis, and records the dashboard URL in the build's {@link SonarUrlAction}.
+ * <p>
+ * Each line is checked for the marker as raw bytes and decoded only when it contains it, so the
+ * cost on ordinary output is one byte comparison per byte. The output itself passes through
+ * unchanged.
+ */
+@Extension
+@SuppressWarnings("rawtypes")
+public class SonarUrlLogFilter extends ConsoleLogFilter {
+    private static final Logger logger = Logger.getLogger(SonarUrlLogFilter.class.getName());
+
+    public static final String MARKER = "ANALYSIS SUCCESSFUL, you can browse ";
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final byte[] MARKER_BYTES = MARKER.getBytes(UTF_8);
+
+    @Override
+    public OutputStream decorateLogger(AbstractBuild build, OutputStream logger) throws IOException, InterruptedException {
+        AbstractProject project = build.getProject();
+        HygieiaPublisher publisher = (project == null) ? null : (HygieiaPublisher) project.getPublishersList().get(HygieiaPublisher.class);
+        if (publisher == null || publisher.getHygieiaSonar() == null) return logger;
+
+        SonarUrlAction action = (SonarUrlAction) build.getAction(SonarUrlAction.class);
+        if (action == null) {
+            action = new SonarUrlAction();
+            build.addAction(action);
+        }
+        return new UrlCapture(logger, action);
+    }
+
+    /**
+     * @return the index of the first byte after the marker in the line, or -1 if the marker is not in it
+     */
+    static int indexAfterMarker(byte[] line, int length) {
+        byte first = MARKER_BYTES[0];
+        int last = length - MARKER_BYTES.length;
+        for (int i = 0; i <= last; i++) {
+            if (line[i] != first) continue;
+            int j = 1;
+            while (j < MARKER_BYTES.length && line[i + j] == MARKER_BYTES[j]) j++;
+            if (j == MARKER_BYTES.length) return i + j;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the rest of the line after the marker, without the line terminator
+     */
+    static String urlAfterMarker(byte[] line, int from, int length) {
+        int end = length;
+        while (end > from && (line[end - 1] == '\n' || line[end - 1] == '\r')) end--;
+        return new String(line, from, end - from, UTF_8).trim();
+    }
+
+    static final class UrlCapture extends LineTransformationOutputStream {
+        private final OutputStream out;
+        private final SonarUrlAction action;
+
+        UrlCapture(OutputStream out, SonarUrlAction action) {
+            this.out = out;
+            this.action = action;
+        }
+
+        @Override
+        protected void eol(byte[] b, int len) throws IOException {
+            out.write(b, 0, len);
+            int from = indexAfterMarker(b, len);
+            if (from >= 0) {
+                String url = urlAfterMarker(b, from, len);
+                if (url.length() > 0) {
+                    action.add(url);
+                    logger.fine("Hygieia: Captured Sonar URL " + url);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package hygieia.builder;
+
+import com.capitalone.dashboard.model.SCM;
+import hudson.EnvVars;
+import hudson.model.EnvironmentContributor;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BuildContextTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void readsEnvironmentAndCommitsOnce() throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("context");
+        FreeStyleBuild build = j.buildAndAssertSuccess(project);
+        CountingContributor.reads.set(0);
+
+        BuildContext context = BuildContext.create(build, TaskListener.NULL, CommitBuilder.DEFAULT_MAX_COMMITS);
+        assertEquals(1, CountingContributor.reads.get());
+
+        List<SCM> commits = context.getCommits();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("counted", context.getEnvironment().get("CONTEXT_READS"));
+            assertEquals(context.getEnvironment().get("JENKINS_URL"), context.getInstanceUrl());
+            assertSame(commits, context.getCommits());
+        }
+        assertEquals(1, CountingContributor.reads.get());
+        // nine environment uses and four commit uses, each looked up once
+        assertEquals(8 + 3, context.getSavedLookups());
+    }
+
+    @Test
+    public void describesTheBuild() throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("described");
+        FreeStyleBuild build = j.buildAndAssertSuccess(project);
+
+        BuildContext context = BuildContext.create(build, TaskListener.NULL, CommitBuilder.DEFAULT_MAX_COMMITS);
+
+        assertSame(build, context.getBuild());
+        assertSame(build, context.getChangeBuild());
+        assertEquals("described", context.getJobName());
+        assertEquals(project.getAbsoluteUrl(), context.getJobUrl());
+        assertEquals(project.getAbsoluteUrl() + build.getNumber() + "/", context.getBuildUrl());
+        assertEquals(0, context.getCommits().size());
+    }
+
+    @TestExtension("readsEnvironmentAndCommitsOnce")
+    public static class CountingContributor extends EnvironmentContributor {
+        static final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public void buildEnvironmentFor(Run r, EnvVars envs, TaskListener listener) {
+            reads.incrementAndGet();
+            envs.put("CONTEXT_READS", "counted");
+        }
+    }
+}
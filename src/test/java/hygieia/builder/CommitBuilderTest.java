@@ -0,0 +1,199 @@
+package hygieia.builder;
+
+import com.capitalone.dashboard.model.SCM;
+import hudson.model.AbstractBuild;
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class CommitBuilderTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private FreeStyleBuild build;
+
+    @Before
+    public void setUp() throws Exception {
+        build = j.buildAndAssertSuccess(j.createFreeStyleProject("changes"));
+    }
+
+    @Test
+    public void keepsAtMostMaxCommitsAndAddsTruncationMarker() {
+        Changes changes = new Changes(build);
+        for (int i = 1; i <= 5; i++) {
+            changes.add("r" + i, "change " + i);
+        }
+
+        List<SCM> commits = new CommitBuilder(build, changes, 3).getCommits();
+
+        assertEquals(4, commits.size());
+        assertEquals("r3", commits.get(2).getScmRevisionNumber());
+        SCM marker = commits.get(3);
+        assertEquals(CommitBuilder.TRUNCATED_REVISION, marker.getScmRevisionNumber());
+        assertEquals("2 more commits not published; the limit is 3", marker.getScmCommitLog());
+    }
+
+    @Test
+    public void deduplicatesRevisionsAcrossParentChangeSets() {
+        Changes parent = new Changes(build);
+        parent.add("r1", "shared");
+        parent.add("r3", "only in parent");
+        Changes changes = new Changes(build);
+        changes.add("r1", "shared").parent = parent;
+        changes.add("r2", "own");
+        // the parent is reached from two entries but walked once
+        changes.add("r1", "shared again").parent = parent;
+
+        List<SCM> commits = new CommitBuilder(build, changes, 0).getCommits();
+
+        assertEquals(3, commits.size());
+        assertEquals("r1", commits.get(0).getScmRevisionNumber());
+        assertEquals("r3", commits.get(1).getScmRevisionNumber());
+        assertEquals("r2", commits.get(2).getScmRevisionNumber());
+    }
+
+    @Test
+    public void cutsLongCommitMessages() {
+        Changes changes = new Changes(build);
+        changes.add("r1", StringUtils.repeat("x", CommitBuilder.MAX_MESSAGE_LENGTH + 100));
+
+        String message = new CommitBuilder(build, changes, 0).getCommits().get(0).getScmCommitLog();
+
+        assertEquals(CommitBuilder.MAX_MESSAGE_LENGTH, message.length());
+        assertTrue(message.endsWith("..."));
+        assertEquals("short", CommitBuilder.truncate("short"));
+    }
+
+    @Test
+    public void stopsAtCyclicUpstreamCauses() throws Exception {
+        FreeStyleProject a = j.createFreeStyleProject("cycle-a");
+        FreeStyleProject b = j.createFreeStyleProject("cycle-b");
+        FreeStyleBuild first = a.scheduleBuild2(0).get();
+        FreeStyleBuild b1 = b.scheduleBuild2(0, new Cause.UpstreamCause(first)).get();
+        // rebuild a#1 as a downstream of b#1, whose upstream is a#1
+        first.delete();
+        a.updateNextBuildNumber(1);
+        FreeStyleBuild a1 = a.scheduleBuild2(0, new Cause.UpstreamCause(b1)).get();
+        assertEquals(1, a1.getNumber());
+
+        CommitBuilder commits = new CommitBuilder(a1, 0);
+
+        assertEquals(0, commits.getCommits().size());
+        assertEquals("cycle-a", commits.getBuild().getProject().getName());
+        assertEquals(1, commits.getBuild().getNumber());
+    }
+
+    @Test
+    public void stopsFollowingLongUpstreamChains() throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("chain");
+        FreeStyleBuild last = project.scheduleBuild2(0).get();
+        for (int i = 0; i <= CommitBuilder.MAX_UPSTREAM_DEPTH; i++) {
+            last = project.scheduleBuild2(0, new Cause.UpstreamCause(last)).get();
+        }
+
+        AbstractBuild resolved = new CommitBuilder(last, 0).getBuild();
+
+        assertEquals(last.getNumber() - CommitBuilder.MAX_UPSTREAM_DEPTH, resolved.getNumber());
+    }
+
+    @Test
+    public void remembersUpstreamOfFinishedBuilds() throws Exception {
+        FreeStyleBuild upstream = j.createFreeStyleProject("cache-upstream").scheduleBuild2(0).get();
+        FreeStyleBuild middle = j.createFreeStyleProject("cache-middle")
+                .scheduleBuild2(0, new Cause.UpstreamCause(upstream)).get();
+        FreeStyleBuild downstream = j.createFreeStyleProject("cache-downstream")
+                .scheduleBuild2(0, new Cause.UpstreamCause(middle)).get();
+        assertEquals("cache-upstream", new CommitBuilder(downstream, 0).getBuild().getProject().getName());
+
+        // the chain is gone, but the finished downstream build still resolves to the same build
+        middle.delete();
+
+        assertEquals("cache-upstream", new CommitBuilder(downstream, 0).getBuild().getProject().getName());
+    }
+
+    /**
+     * A change set whose entries can name another change set as their parent.
+     */
+    private static final class Changes extends ChangeLogSet<Change> {
+        private final List<Change> entries = new ArrayList<Change>();
+
+        Changes(AbstractBuild build) {
+            super(build);
+        }
+
+        Change add(String revision, String message) {
+            Change change = new Change(revision, message);
+            change.parent = this;
+            entries.add(change);
+            return change;
+        }
+
+        @Override
+        public boolean isEmptySet() {
+            return entries.isEmpty();
+        }
+
+        public Iterator<Change> iterator() {
+            return entries.iterator();
+        }
+    }
+
+    private static final class Change extends ChangeLogSet.Entry {
+        private final String revision;
+        private final String message;
+        private ChangeLogSet parent;
+
+        Change(String revision, String message) {
+            this.revision = revision;
+            this.message = message;
+        }
+
+        @Override
+        public ChangeLogSet getParent() {
+            return parent;
+        }
+
+        @Override
+        public String getCommitId() {
+            return revision;
+        }
+
+        @Override
+        public String getMsg() {
+            return message;
+        }
+
+        @Override
+        public User getAuthor() {
+            return User.get("developer");
+        }
+
+        @Override
+        public Collection<String> getAffectedPaths() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<? extends ChangeLogSet.AffectedFile> getAffectedFiles() {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package hygieia.builder;
+
+import com.capitalone.dashboard.model.CodeQualityMetric;
+import com.capitalone.dashboard.model.CodeQualityMetricStatus;
+import com.capitalone.dashboard.request.CodeQualityCreateRequest;
+import jenkins.plugins.hygieia.HygieiaStandInServer;
+import org.apache.commons.io.FileUtils;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SonarBuilderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void tailScanFindsEveryUrlAcrossChunkBoundaries() throws Exception {
+        File log = folder.newFile("log");
+        StringBuilder text = new StringBuilder();
+        text.append("[INFO] ANALYSIS SUCCESSFUL, you can browse http://sonar/dashboard/index/first\n");
+        for (int i = 0; i < SonarBuilder.TAIL_CHUNK - 30; i++) text.append('x');
+        text.append("[INFO] ANALYSIS SUCCESSFUL, you can browse http://sonar/dashboard/index/last\r\n");
+        text.append("Finished: SUCCESS\n");
+        FileUtils.writeStringToFile(log, text.toString(), "UTF-8");
+
+        assertEquals(Arrays.asList("http://sonar/dashboard/index/first", "http://sonar/dashboard/index/last"),
+                SonarBuilder.findUrls(log, Long.MAX_VALUE));
+        assertEquals(Arrays.asList("http://sonar/dashboard/index/last"), SonarBuilder.findUrls(log, 200));
+        assertTrue(SonarBuilder.findUrls(log, 10).isEmpty());
+    }
+
+    @Test
+    public void readsReportTasksWrittenDuringTheBuild() throws Exception {
+        File fresh = new File(folder.getRoot(), "target/sonar/report-task.txt");
+        FileUtils.writeStringToFile(fresh, "projectKey=com.example:app\nserverUrl=http://sonar/\n"
+                + "dashboardUrl=http://sonar/dashboard/index/com.example:app\nceTaskId=AVx1\n", "UTF-8");
+        File stale = new File(folder.getRoot(), ".sonar/report-task.txt");
+        FileUtils.writeStringToFile(stale, "projectKey=old\nserverUrl=http://sonar\nceTaskId=AVx0\n", "UTF-8");
+        stale.setLastModified(fresh.lastModified() - 3600000);
+
+        List<String> texts = new SonarReportTask.Reader(SonarReportTask.LOCATIONS, fresh.lastModified() - 1000)
+                .invoke(folder.getRoot(), null);
+        assertEquals(1, texts.size());
+        SonarReportTask task = SonarReportTask.parse(texts.get(0));
+        assertEquals("http://sonar", task.getServerUrl());
+        assertEquals("com.example:app", task.getProjectKey());
+        assertEquals("http://sonar/api/ce/task?id=AVx1", task.getCeTaskUrl());
+        assertTrue(task.isComplete());
+    }
+
+    @Test
+    public void readsReportTasksOfModules() throws Exception {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "service-b/.scannerwork/report-task.txt"),
+                "projectKey=b\nserverUrl=http://sonar\nceTaskId=AVx2\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "service-a/target/sonar/report-task.txt"),
+                "projectKey=a\nserverUrl=http://sonar\nceTaskId=AVx1\n", "UTF-8");
+
+        List<String> texts = new SonarReportTask.Reader(SonarReportTask.LOCATIONS, 0).invoke(folder.getRoot(), null);
+        assertEquals(2, texts.size());
+        assertEquals("a", SonarReportTask.parse(texts.get(0)).getProjectKey());
+        assertEquals("b", SonarReportTask.parse(texts.get(1)).getProjectKey());
+    }
+
+    @Test
+    public void readsAnalysesFromDashboardUrls() {
+        SonarAnalysis legacy = SonarAnalysis.fromDashboardUrl("http://sonar:9000/dashboard/index/com.example:app");
+        assertEquals("http://sonar:9000", legacy.getServerUrl());
+        assertEquals("com.example:app", legacy.getProjectKey());
+        SonarAnalysis current = SonarAnalysis.fromDashboardUrl("https://sonar/sq/dashboard?id=com.example%3Aapp&branch=x");
+        assertEquals("https://sonar/sq", current.getServerUrl());
+        assertEquals("com.example:app", current.getProjectKey());
+        assertNull(SonarAnalysis.fromDashboardUrl("http://sonar/"));
+    }
+
+    @Test
+    public void measureValuesKeepTheirNumericType() {
+        assertEquals(1234L, SonarBuilder.measureValue("1234"));
+        assertEquals(81.5, SonarBuilder.measureValue("81.5"));
+        assertEquals("OK", SonarBuilder.measureValue("OK"));
+    }
+
+    @Test
+    public void readsTheMeasuresOfOneAnalysis() throws Exception {
+        String analyses = "{\"analyses\":[{\"key\":\"AN2\",\"date\":\"2017-03-02T10:00:00+0000\"},"
+                + "{\"key\":\"AN1\",\"date\":\"2017-03-01T09:39:03+0100\"}]}";
+        assertEquals("2017-03-01T09:39:03+0100", SonarBuilder.analysisDate(analyses, "AN1"));
+        assertNull(SonarBuilder.analysisDate(analyses, "AN0"));
+
+        String history = "{\"measures\":[{\"metric\":\"coverage\",\"history\":[{\"date\":\"2017-03-01T09:39:03+0100\",\"value\":\"80.5\"}]},"
+                + "{\"metric\":\"ncloc\",\"history\":[]},"
+                + "{\"metric\":\"alert_status\",\"history\":[{\"date\":\"2017-03-01T09:39:03+0100\",\"value\":\"ERROR\"}]}]}";
+        Map<String, String> values = SonarBuilder.historyValues(history);
+        assertEquals(Arrays.asList("coverage", "alert_status"), new ArrayList<String>(values.keySet()));
+        assertEquals("80.5", values.get("coverage"));
+    }
+
+    @Test
+    public void qualityGateSetsMetricStatuses() throws Exception {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("coverage", "80.5");
+        values.put("violations", "12");
+        values.put("ncloc", "1000");
+        values.put("alert_status", "ERROR");
+        JSONObject gate = (JSONObject) new JSONParser().parse("{\"status\":\"ERROR\",\"conditions\":["
+                + "{\"status\":\"ERROR\",\"metricKey\":\"coverage\",\"comparator\":\"LT\",\"errorThreshold\":\"85\",\"actualValue\":\"80.5\"},"
+                + "{\"status\":\"WARN\",\"metricKey\":\"violations\",\"comparator\":\"GT\",\"warningThreshold\":\"10\",\"actualValue\":\"12\"}]}");
+
+        List<CodeQualityMetric> metrics = SonarBuilder.measureMetrics(values, gate);
+
+        assertEquals(CodeQualityMetricStatus.Alert, metrics.get(0).getStatus());
+        assertEquals("coverage < 85", metrics.get(0).getStatusMessage());
+        assertEquals(CodeQualityMetricStatus.Warning, metrics.get(1).getStatus());
+        assertEquals("violations > 10", metrics.get(1).getStatusMessage());
+        assertEquals(CodeQualityMetricStatus.Ok, metrics.get(2).getStatus());
+        assertEquals(CodeQualityMetricStatus.Alert, metrics.get(3).getStatus());
+    }
+
+    @Test
+    public void alertStatusValueSetsItsStatusWithoutGate() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("alert_status", "WARN");
+        assertEquals(CodeQualityMetricStatus.Warning, SonarBuilder.measureMetrics(values, null).get(0).getStatus());
+    }
+
+    @Test
+    public void alertStatusesMapToAlert() {
+        assertEquals(CodeQualityMetricStatus.Ok, SonarBuilder.metricStatus(null));
+        assertEquals(CodeQualityMetricStatus.Ok, SonarBuilder.metricStatus("OK"));
+        assertEquals(CodeQualityMetricStatus.Warning, SonarBuilder.metricStatus("WARN"));
+        assertEquals(CodeQualityMetricStatus.Alert, SonarBuilder.metricStatus("ALERT"));
+        assertEquals(CodeQualityMetricStatus.Alert, SonarBuilder.metricStatus("ERROR"));
+    }
+
+    @Test
+    public void pendingAnalysisDoesNotHoldAThreadBetweenPolls() throws Exception {
+        HygieiaStandInServer sonar = new HygieiaStandInServer();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            String serverUrl = sonar.getApiUrl().substring(0, sonar.getApiUrl().length() - "/api".length());
+            sonar.respond("/api/ce/task", 200, "{\"task\":{\"status\":\"PENDING\"}}");
+            SonarAnalysis analysis = SonarAnalysis.fromReportTask(SonarReportTask.parse(
+                    "projectKey=app\nserverUrl=" + serverUrl + "\nceTaskId=AVx1\n"));
+            final CountDownLatch read = new CountDownLatch(1);
+            final List<CodeQualityCreateRequest> metrics = new ArrayList<CodeQualityCreateRequest>();
+            new SonarBuilder(analysis, null, null).readSonarMetrics(executor, new SonarBuilder.MetricsCallback() {
+                public void read(CodeQualityCreateRequest request) {
+                    metrics.add(request);
+                    read.countDown();
+                }
+            });
+
+            while (sonar.getRequests().isEmpty()) Thread.sleep(10);
+            // the only thread is free for other work while the analysis waits for its next poll
+            executor.submit(new Runnable() {
+                public void run() {
+                }
+            }).get(SonarBuilder.CE_POLL_INITIAL / 2, TimeUnit.MILLISECONDS);
+            assertEquals(1, sonar.getRequests().size());
+
+            sonar.respond("/api/ce/task", 200, "{\"task\":{\"status\":\"FAILED\"}}");
+            assertTrue(read.await(10, TimeUnit.SECONDS));
+            assertEquals(2, sonar.getRequests().size());
+            assertNull(metrics.get(0));
+        } finally {
+            executor.shutdownNow();
+            sonar.stop();
+        }
+    }
+
+    @Test
+    public void readWaitingForAPermitDoesNotHoldAThread() throws Exception {
+        HygieiaStandInServer sonar = new HygieiaStandInServer();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        String serverUrl = sonar.getApiUrl().substring(0, sonar.getApiUrl().length() - "/api".length());
+        Semaphore permits = SonarBuilder.permits(serverUrl);
+        int taken = permits.drainPermits();
+        try {
+            sonar.respond("/api/ce/task", 200, "{\"task\":{\"status\":\"FAILED\"}}");
+            SonarAnalysis analysis = SonarAnalysis.fromReportTask(SonarReportTask.parse(
+                    "projectKey=app\nserverUrl=" + serverUrl + "\nceTaskId=AVx1\n"));
+            final CountDownLatch read = new CountDownLatch(1);
+            new SonarBuilder(analysis, null, null).readSonarMetrics(executor, new SonarBuilder.MetricsCallback() {
+                public void read(CodeQualityCreateRequest request) {
+                    read.countDown();
+                }
+            });
+
+            Thread.sleep(SonarBuilder.PERMIT_RETRY * 2);
+            executor.submit(new Runnable() {
+                public void run() {
+                }
+            }).get(SonarBuilder.PERMIT_RETRY, TimeUnit.MILLISECONDS);
+            assertTrue(sonar.getRequests().isEmpty());
+
+            permits.release(taken);
+            taken = 0;
+            assertTrue(read.await(10, TimeUnit.SECONDS));
+            assertEquals(1, sonar.getRequests().size());
+        } finally {
+            permits.release(taken);
+            executor.shutdownNow();
+            sonar.stop();
+        }
+    }
+}
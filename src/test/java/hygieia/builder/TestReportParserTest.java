@@ -0,0 +1,68 @@
+package hygieia.builder;
+
+import com.capitalone.dashboard.model.TestCapability;
+import com.capitalone.dashboard.model.TestCaseStatus;
+import hudson.util.StreamTaskListener;
+import hygieia.utils.WorkspaceScanner;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestReportParserTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    @Test
+    public void parsesReportsUnderWorkspaceIntoCompactResult() throws Exception {
+        writeReport("target/cucumber/a/report.json", "passed");
+        writeReport("target/cucumber/b/report.json", "failed");
+        writeReport("target/other/ignored.txt", "passed");
+
+        TestReportParser parser = new TestReportParser(Arrays.asList("target/cucumber/b/report.json", "target/cucumber/a/report.json"),
+                "42", 2, StreamTaskListener.fromStdout());
+        List<TestCapability> capabilities = TestReportParser.decode(parser.invoke(workspace.getRoot(), null));
+
+        assertEquals(2, capabilities.size());
+        assertEquals(TestCaseStatus.Success, capabilities.get(0).getStatus());
+        assertEquals(TestCaseStatus.Failure, capabilities.get(1).getStatus());
+        assertEquals("42", capabilities.get(1).getExecutionId());
+        assertEquals(1, capabilities.get(1).getTestSuites().size());
+    }
+
+    @Test
+    public void findsAllPatternsInOneSearchRelativeToWorkspace() throws Exception {
+        File root = workspace.newFolder("workspace");
+        writeReport("workspace/dist/app-1.0.jar", "passed");
+        writeReport("workspace/target/cucumber/a/report.json", "passed");
+
+        WorkspaceScanner scanner = new WorkspaceScanner(WorkspaceScanner.SUGGESTED_EXCLUDES, 0)
+                .addQuery(WorkspaceFileFinder.ARTIFACTS, "/dist", "*.jar")
+                .addQuery(WorkspaceFileFinder.TESTS, "target/cucumber", "*.json")
+                .addQuery(WorkspaceFileFinder.DEPLOYS, "deploy", "*.war");
+        Map<String, ArrayList<String>> paths = new WorkspaceFileFinder(scanner).invoke(root, null);
+
+        assertEquals(Collections.singletonList("dist/app-1.0.jar"), paths.get(WorkspaceFileFinder.ARTIFACTS));
+        assertEquals(Collections.singletonList("target/cucumber/a/report.json"), paths.get(WorkspaceFileFinder.TESTS));
+        assertEquals(0, paths.get(WorkspaceFileFinder.DEPLOYS).size());
+        assertEquals("app-1.0.jar", WorkspaceFileFinder.fileName(paths.get(WorkspaceFileFinder.ARTIFACTS).get(0)));
+        assertTrue(WorkspaceFileFinder.indexFile(root).isFile());
+    }
+
+    private void writeReport(String path, String status) throws Exception {
+        File file = new File(workspace.getRoot(), path);
+        FileUtils.writeStringToFile(file, "[{\"id\":\"f\",\"keyword\":\"Feature\",\"name\":\"F\",\"elements\":[{\"id\":\"s\",\"keyword\":\"Scenario\",\"name\":\"S\","
+                + "\"steps\":[{\"keyword\":\"Given \",\"name\":\"x\",\"line\":1,\"result\":{\"status\":\"" + status + "\",\"duration\":1000000}}]}]}]", "UTF-8");
+    }
+}
@@ -0,0 +1,77 @@
+package hygieia.transformer;
+
+import com.capitalone.dashboard.model.TestCase;
+import com.capitalone.dashboard.model.TestCaseStatus;
+import com.capitalone.dashboard.model.TestSuite;
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CucumberJsonStreamTransformerTest {
+
+    private static final String REPORT = "[{\"id\":\"login\",\"keyword\":\"Feature\",\"name\":\"Login\",\"tags\":[{\"name\":\"@ui\"}],"
+            + "\"elements\":[{\"id\":\"login;ok\",\"keyword\":\"Scenario\",\"name\":\"ok\",\"steps\":["
+            + "{\"keyword\":\"Given \",\"name\":\"a user\",\"line\":3,\"embeddings\":[{\"data\":\"iVBORw0KGgo=\",\"mime_type\":\"image/png\"}],"
+            + "\"result\":{\"status\":\"passed\",\"duration\":2000000}},"
+            + "{\"keyword\":\"Then \",\"name\":\"it fails\",\"line\":4,\"result\":{\"status\":\"failed\",\"duration\":3000000,\"error_message\":\"boom\"}}]},"
+            + "{\"id\":\"login;skip\",\"keyword\":\"Scenario\",\"name\":\"skip\",\"steps\":[{\"keyword\":\"Given \",\"name\":\"nothing\",\"line\":7,\"result\":{\"status\":\"skipped\"}}]}]},"
+            + "{\"id\":\"empty\",\"keyword\":\"Feature\",\"name\":\"Empty\"}]";
+
+    @Test
+    public void matchesTreeTransformer() throws Exception {
+        List<TestSuite> expected = new CucumberJsonToTestResultTransformer().transformer((JSONArray) new JSONParser().parse(REPORT));
+        List<TestSuite> actual = new CucumberJsonStreamTransformer().transformer(new ByteArrayInputStream(REPORT.getBytes("UTF-8")));
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            TestSuite e = expected.get(i);
+            TestSuite a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getDescription(), a.getDescription());
+            assertEquals(e.getStatus(), a.getStatus());
+            assertEquals(e.getDuration(), a.getDuration());
+            assertEquals(e.getTotalTestCaseCount(), a.getTotalTestCaseCount());
+            assertEquals(e.getFailedTestCaseCount(), a.getFailedTestCaseCount());
+            assertEquals(e.getSkippedTestCaseCount(), a.getSkippedTestCaseCount());
+            assertEquals(e.getTestCases().size(), a.getTestCases().size());
+            for (int j = 0; j < e.getTestCases().size(); j++) {
+                TestCase ec = e.getTestCases().get(j);
+                TestCase ac = a.getTestCases().get(j);
+                assertEquals(ec.getDescription(), ac.getDescription());
+                assertEquals(ec.getStatus(), ac.getStatus());
+                assertEquals(ec.getDuration(), ac.getDuration());
+                assertEquals(ec.getTestSteps().size(), ac.getTestSteps().size());
+            }
+        }
+        assertEquals(TestCaseStatus.Failure, actual.get(0).getStatus());
+        assertEquals(5, actual.get(0).getDuration());
+    }
+
+    @Test
+    public void skipsEmbeddedAttachments() throws Exception {
+        StringBuilder report = new StringBuilder("[{\"id\":\"shots\",\"keyword\":\"Feature\",\"name\":\"Shots\",\"elements\":[");
+        report.append("{\"id\":\"shots;one\",\"keyword\":\"Scenario\",\"name\":\"one\",\"steps\":[{\"keyword\":\"Given \",\"name\":\"a page\",\"line\":3,");
+        report.append("\"output\":[\"log line\"],\"doc_string\":{\"value\":\"text\",\"line\":4},\"rows\":[{\"cells\":[\"a\",\"b\"]}],");
+        report.append("\"embeddings\":[{\"mime_type\":\"image/png\",\"data\":\"");
+        for (int i = 0; i < 1024 * 1024; i++) {
+            report.append("iVBO");
+        }
+        report.append("\"}],\"result\":{\"status\":\"passed\",\"duration\":1000000}}]}]}]");
+
+        List<TestSuite> suites = new CucumberJsonStreamTransformer().transformer(new ByteArrayInputStream(report.toString().getBytes("UTF-8")));
+
+        assertEquals(1, suites.size());
+        assertEquals(TestCaseStatus.Success, suites.get(0).getStatus());
+        assertEquals("Given :a page", suites.get(0).getTestCases().get(0).getTestSteps().get(0).getDescription());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedReport() throws Exception {
+        new CucumberJsonStreamTransformer().transformer(new ByteArrayInputStream("[{\"id\":\"login\",".getBytes("UTF-8")));
+    }
+}
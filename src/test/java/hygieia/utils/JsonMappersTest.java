@@ -0,0 +1,55 @@
+package hygieia.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class JsonMappersTest {
+
+    public static class Sample {
+        public String name;
+        public String missing;
+    }
+
+    @Test
+    public void leavesOutNullFields() throws Exception {
+        Sample sample = new Sample();
+        sample.name = "app";
+
+        assertEquals("{\"name\":\"app\"}", JsonMappers.writerFor(Sample.class).writeValueAsString(sample));
+    }
+
+    @Test
+    public void cachesWritersAndReadersPerType() {
+        assertSame(JsonMappers.writerFor(Sample.class), JsonMappers.writerFor(Sample.class));
+        assertSame(JsonMappers.readerFor(Sample.class), JsonMappers.readerFor(Sample.class));
+    }
+
+    @Test
+    public void leavesTheTargetStreamOpen() throws Exception {
+        assertFalse(JsonMappers.mapper().getFactory().isEnabled(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+
+        final boolean[] closed = {false};
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        Sample sample = new Sample();
+        sample.name = "app";
+        JsonMappers.writerFor(Sample.class).writeValue(out, sample);
+        assertFalse(closed[0]);
+
+        Sample read = JsonMappers.readerFor(Sample.class).readValue(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("app", read.name);
+        assertNull(read.missing);
+    }
+}
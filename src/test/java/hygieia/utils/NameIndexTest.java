@@ -0,0 +1,30 @@
+package hygieia.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NameIndexTest {
+
+    @Test
+    public void findsNamesByPrefixIgnoringCase() {
+        NameIndex index = new NameIndex(Arrays.asList("Payments", "portal", "PayRoll", "billing", "", null, "PORTAL"));
+
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("Payments", "PayRoll"), index.startingWith("pay"));
+        assertEquals(Arrays.asList("portal"), index.startingWith("PO"));
+        assertEquals(Arrays.asList("billing", "Payments", "PayRoll", "portal"), index.startingWith(""));
+        assertTrue(index.startingWith("x").isEmpty());
+        assertTrue(index.startingWith("paymentsx").isEmpty());
+    }
+
+    @Test
+    public void emptyIndexHasNoMatches() {
+        assertTrue(new NameIndex(Collections.<String>emptyList()).startingWith("a").isEmpty());
+        assertTrue(NameIndex.EMPTY.isEmpty());
+    }
+}
@@ -0,0 +1,84 @@
+package hygieia.utils;
+
+import com.capitalone.dashboard.model.TestSuite;
+import hygieia.transformer.CucumberJsonStreamTransformer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times parsing of a sharded Cucumber run at increasing parallelism.
+ * Run with {@code java -cp <test classpath> hygieia.utils.ParallelFileProcessorBenchmark [files] [scenarios per file]}.
+ */
+public class ParallelFileProcessorBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int fileCount = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        int scenarios = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        File directory = createReports(fileCount, scenarios);
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(fileCount + " reports, " + scenarios + " scenarios each, " + cores + " processor(s)");
+
+        final CucumberJsonStreamTransformer transformer = new CucumberJsonStreamTransformer();
+        ParallelFileProcessor.FileFunction<Integer> parse = new ParallelFileProcessor.FileFunction<Integer>() {
+            public Integer apply(File file) {
+                try {
+                    List<TestSuite> suites = transformer.transformer(new FileInputStream(file));
+                    return suites.size();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < fileCount; i++) {
+            files.add(new File(directory, "report-" + i + ".json"));
+        }
+
+        long baseline = 0;
+        for (int parallelism = 1; parallelism <= Math.max(8, cores * 2); parallelism *= 2) {
+            ParallelFileProcessor.setParallelism(parallelism);
+            ParallelFileProcessor.process(files, parse);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                ParallelFileProcessor.process(files, parse);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            if (parallelism == 1) baseline = best;
+            System.out.println(String.format("parallelism %2d: %6d ms, speedup %.2fx",
+                    parallelism, best / 1000000, (double) baseline / best));
+        }
+    }
+
+    private static File createReports(int fileCount, int scenarios) throws IOException {
+        File directory = File.createTempFile("cucumber", "reports");
+        if (!directory.delete() || !directory.mkdir()) throw new IOException("Could not create " + directory);
+        directory.deleteOnExit();
+        for (int i = 0; i < fileCount; i++) {
+            File file = new File(directory, "report-" + i + ".json");
+            file.deleteOnExit();
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                out.write("[{\"id\":\"feature-" + i + "\",\"keyword\":\"Feature\",\"name\":\"Shard " + i + "\",\"elements\":[");
+                for (int s = 0; s < scenarios; s++) {
+                    if (s > 0) out.write(",");
+                    out.write("{\"id\":\"scenario-" + s + "\",\"keyword\":\"Scenario\",\"name\":\"Scenario " + s + "\",\"steps\":["
+                            + "{\"keyword\":\"Given \",\"name\":\"a precondition\",\"line\":3,\"result\":{\"status\":\"passed\",\"duration\":1200000}},"
+                            + "{\"keyword\":\"When \",\"name\":\"an action\",\"line\":4,\"result\":{\"status\":\"passed\",\"duration\":3400000}},"
+                            + "{\"keyword\":\"Then \",\"name\":\"an outcome\",\"line\":5,\"result\":{\"status\":\"" + ((s % 50 == 0) ? "failed" : "passed") + "\",\"duration\":800000}}]}");
+                }
+                out.write("]}]");
+            } finally {
+                out.close();
+            }
+        }
+        return directory;
+    }
+}
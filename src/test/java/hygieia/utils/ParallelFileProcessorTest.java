@@ -0,0 +1,56 @@
+package hygieia.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelFileProcessorTest {
+
+    @After
+    public void tearDown() {
+        ParallelFileProcessor.setParallelism(ParallelFileProcessor.DEFAULT_PARALLELISM);
+    }
+
+    @Test
+    public void keepsFileOrderAndDropsNulls() {
+        ParallelFileProcessor.setParallelism(4);
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 50; i++) {
+            files.add(new File("report-" + i + ".json"));
+        }
+        final Random random = new Random(7);
+
+        List<String> names = ParallelFileProcessor.process(files, new ParallelFileProcessor.FileFunction<String>() {
+            public String apply(File file) {
+                try {
+                    Thread.sleep(random.nextInt(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return file.getName().endsWith("7.json") ? null : file.getName();
+            }
+        });
+
+        assertEquals(45, names.size());
+        int previous = -1;
+        for (String name : names) {
+            int index = Integer.parseInt(name.substring("report-".length(), name.length() - ".json".length()));
+            assertEquals(true, index > previous);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void parallelismCanBeChanged() {
+        ParallelFileProcessor.setParallelism(2);
+        assertEquals(2, ParallelFileProcessor.getParallelism());
+        ParallelFileProcessor.setParallelism(0);
+        assertEquals(1, ParallelFileProcessor.getParallelism());
+    }
+}
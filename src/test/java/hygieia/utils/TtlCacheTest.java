@@ -0,0 +1,41 @@
+package hygieia.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TtlCacheTest {
+
+    private long time = 1000;
+
+    private final TtlCache<String, String> cache = new TtlCache<String, String>(100, 3) {
+        @Override
+        protected long now() {
+            return time;
+        }
+    };
+
+    @Test
+    public void entriesExpireAfterTtl() {
+        cache.put("project", "42");
+        time += 99;
+        assertEquals("42", cache.get("project"));
+        time += 1;
+        assertNull(cache.get("project"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void growthPastLimitSweepsExpiredEntries() {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        time += 50;
+        cache.put("c", "3");
+        time += 60;
+        cache.put("d", "4");
+        assertEquals(2, cache.size());
+        assertEquals("3", cache.get("c"));
+        assertEquals("4", cache.get("d"));
+    }
+}
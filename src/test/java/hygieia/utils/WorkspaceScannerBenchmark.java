@@ -0,0 +1,119 @@
+package hygieia.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOCase;
+import org.apache.commons.io.filefilter.WildcardFileFilter;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares {@link WorkspaceScanner} with the recursive File.listFiles search it replaced, on a
+ * synthetic monorepo workspace, and a walk with a warm {@link ScanIndex} with one that reads
+ * every directory. Run with
+ * {@code java -cp <test classpath> hygieia.utils.WorkspaceScannerBenchmark [modules] [files per directory]}.
+ */
+public class WorkspaceScannerBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int modules = (args.length > 0) ? Integer.parseInt(args[0]) : 40;
+        int filesPerDirectory = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        File workspace = File.createTempFile("workspace", "");
+        if (!workspace.delete() || !workspace.mkdir()) throw new IOException("Could not create " + workspace);
+        try {
+            int files = createWorkspace(workspace, modules, filesPerDirectory);
+            age(workspace, System.currentTimeMillis() - 60000);
+            System.out.println(files + " files in workspace");
+            ScanIndex index = new ScanIndex(workspace);
+            new WorkspaceScanner("*.json", new ArrayList<String>(), 0).scanAll(workspace, index);
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                int legacy = legacyScan(workspace, "*.json", new ArrayList<File>()).size();
+                long legacyMillis = (System.nanoTime() - start) / 1000000;
+
+                start = System.nanoTime();
+                int walked = new WorkspaceScanner("*.json", new ArrayList<String>(), 0).scan(workspace).size();
+                long walkMillis = (System.nanoTime() - start) / 1000000;
+
+                start = System.nanoTime();
+                int scanned = new WorkspaceScanner("*.json", WorkspaceScanner.SUGGESTED_EXCLUDES,
+                        WorkspaceScanner.DEFAULT_MAX_DEPTH).scan(workspace).size();
+                long scannerMillis = (System.nanoTime() - start) / 1000000;
+
+                start = System.nanoTime();
+                int indexed = new WorkspaceScanner("*.json", new ArrayList<String>(), 0).scanAll(workspace, index).get("").size();
+                long indexedMillis = (System.nanoTime() - start) / 1000000;
+                System.out.println("listFiles recursion: " + legacy + " matches in " + legacyMillis + " ms; "
+                        + "WorkspaceScanner without excludes: " + walked + " matches in " + walkMillis + " ms; "
+                        + "with the suggested excludes: " + scanned + " matches in " + scannerMillis + " ms; "
+                        + "without excludes from a warm index: " + indexed + " matches in " + indexedMillis + " ms");
+            }
+        } finally {
+            FileUtils.deleteDirectory(workspace);
+        }
+    }
+
+    /**
+     * Each module has a report directory, compiled classes and a node_modules tree, which is where
+     * most files of a real monorepo live.
+     */
+    private static int createWorkspace(File workspace, int modules, int filesPerDirectory) throws IOException {
+        int count = 0;
+        for (int m = 0; m < modules; m++) {
+            File module = new File(workspace, "module-" + m);
+            count += createFiles(new File(module, "target/cucumber"), "report-", ".json", 2);
+            count += createFiles(new File(module, "target/classes/com/example"), "Type", ".class", filesPerDirectory);
+            for (int p = 0; p < 10; p++) {
+                File nodeModule = new File(module, "node_modules/package-" + p);
+                count += createFiles(nodeModule, "package", ".json", 1);
+                count += createFiles(new File(nodeModule, "lib"), "index", ".js", filesPerDirectory);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moves directory modification times out of the window in which the index does not trust them.
+     */
+    private static void age(File directory, long time) {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) age(child, time);
+            }
+        }
+        directory.setLastModified(time);
+    }
+
+    private static int createFiles(File directory, String prefix, String suffix, int count) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Could not create " + directory);
+        for (int i = 0; i < count; i++) {
+            new File(directory, prefix + i + suffix).createNewFile();
+        }
+        return count;
+    }
+
+    /**
+     * The search HygieiaUtils.getArtifactFiles used to do.
+     */
+    private static List<File> legacyScan(File rootDirectory, String pattern, List<File> results) {
+        FileFilter filter = new WildcardFileFilter(pattern.replace("**", "*"), IOCase.SYSTEM);
+        File[] temp = rootDirectory.listFiles(filter);
+        if ((temp != null) && (temp.length > 0)) {
+            results.addAll(Arrays.asList(temp));
+        }
+
+        temp = rootDirectory.listFiles();
+        if ((temp != null) && (temp.length > 0))
+            for (File currentItem : rootDirectory.listFiles()) {
+                if (currentItem.isDirectory()) {
+                    legacyScan(currentItem, pattern, results);
+                }
+            }
+        return results;
+    }
+}
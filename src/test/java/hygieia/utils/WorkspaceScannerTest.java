@@ -0,0 +1,189 @@
+package hygieia.utils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class WorkspaceScannerTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        touch("report.json");
+        touch("target/cucumber/a/report.json");
+        touch("target/cucumber/b/notes.txt");
+        touch("target/classes/generated.json");
+        touch("node_modules/lib/package.json");
+        touch("deep/1/2/3/4/report.json");
+    }
+
+    @Test
+    public void nameOnlyPatternMatchesAtAnyDepth() throws IOException {
+        assertEquals(list("deep/1/2/3/4/report.json", "node_modules/lib/package.json", "report.json",
+                "target/classes/generated.json", "target/cucumber/a/report.json"),
+                scan(new WorkspaceScanner("*.json")));
+    }
+
+    @Test
+    public void suggestedExcludesPruneVcsAndBuildOutput() throws IOException {
+        assertEquals(list("deep/1/2/3/4/report.json", "report.json", "target/cucumber/a/report.json"),
+                scan(suggested("*.json")));
+    }
+
+    @Test
+    public void doubleStarCrossesDirectories() throws IOException {
+        assertEquals(list("target/classes/generated.json", "target/cucumber/a/report.json"),
+                scan(new WorkspaceScanner("target/**/*.json")));
+        assertEquals(list("deep/1/2/3/4/report.json", "report.json", "target/cucumber/a/report.json"),
+                scan(new WorkspaceScanner("**/report.json")));
+    }
+
+    @Test
+    public void excludesAndDepthAreConfigurable() throws IOException {
+        List<String> excludes = WorkspaceScanner.parseExcludes("deep, target");
+        assertEquals(list("node_modules/lib/package.json", "report.json"), scan(new WorkspaceScanner("*.json", excludes, 0)));
+        assertEquals(list("report.json"), scan(new WorkspaceScanner("*.json", WorkspaceScanner.SUGGESTED_EXCLUDES, 1)));
+    }
+
+    @Test
+    public void symbolicLinkLoopsAreNotFollowed() throws IOException {
+        File loop = new File(workspace.getRoot(), "target/cucumber/a/loop");
+        try {
+            Files.createSymbolicLink(loop.toPath(), workspace.getRoot().toPath());
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+        assertEquals(list("deep/1/2/3/4/report.json", "report.json", "target/cucumber/a/report.json"),
+                scan(suggested("*.json")));
+    }
+
+    @Test
+    public void evaluatesEveryQueryInOneWalk() throws IOException {
+        WorkspaceScanner scanner = new WorkspaceScanner(WorkspaceScanner.SUGGESTED_EXCLUDES, 0)
+                .addQuery("tests", "target/cucumber", "*.json")
+                .addQuery("notes", "/target/", "*.txt")
+                .addQuery("all", "", "report.json");
+        Map<String, List<File>> results = scanner.scanAll(workspace.getRoot());
+
+        assertEquals(list("target/cucumber/a/report.json"), relative(results.get("tests")));
+        assertEquals(list("target/cucumber/b/notes.txt"), relative(results.get("notes")));
+        assertEquals(list("deep/1/2/3/4/report.json", "report.json", "target/cucumber/a/report.json"),
+                relative(results.get("all")));
+    }
+
+    @Test
+    public void reusesListingsOfUnchangedDirectories() throws IOException {
+        File indexFile = new File(workspace.newFolder("index"), "scan-index");
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+        File reports = new File(workspace.getRoot(), "target/cucumber/a");
+        for (File dir : new File[]{workspace.getRoot(), new File(workspace.getRoot(), "target"),
+                new File(workspace.getRoot(), "target/cucumber"), reports}) {
+            Files.setLastModifiedTime(dir.toPath(), past);
+        }
+        WorkspaceScanner scanner = suggested("target/**/*.json");
+        ScanIndex index = new ScanIndex(workspace.getRoot());
+        scanner.scanAll(workspace.getRoot(), index);
+        assertEquals(0, index.getReused());
+
+        index.save(indexFile);
+        index = ScanIndex.load(indexFile, workspace.getRoot());
+        touch("target/cucumber/a/new.json");
+        Files.setLastModifiedTime(reports.toPath(), past);
+        assertEquals(list("target/cucumber/a/report.json"), relative(scanner.scanAll(workspace.getRoot(), index).get("")));
+        assertEquals(4, index.getReused());
+
+        Files.setLastModifiedTime(reports.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+        assertEquals(list("target/cucumber/a/new.json", "target/cucumber/a/report.json"),
+                relative(scanner.scanAll(workspace.getRoot(), index).get("")));
+    }
+
+    @Test
+    public void indexOfAnotherDirectoryIsIgnored() throws IOException {
+        File indexFile = new File(workspace.getRoot(), "index/scan-index");
+        new ScanIndex(new File(workspace.getRoot(), "elsewhere")).save(indexFile);
+        assertEquals(0, ScanIndex.load(indexFile, workspace.getRoot()).size());
+        assertEquals(0, ScanIndex.load(new File(workspace.getRoot(), "report.json"), workspace.getRoot()).size());
+    }
+
+    @Test
+    public void indexKeepsNamesWithTabsAndLineBreaks() throws IOException {
+        touch("odd\tname\\dir/line\nbreak.json");
+        File indexFile = new File(workspace.newFolder("index"), "scan-index");
+        File dir = new File(workspace.getRoot(), "odd\tname\\dir");
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+        Files.setLastModifiedTime(workspace.getRoot().toPath(), past);
+        Files.setLastModifiedTime(dir.toPath(), past);
+        WorkspaceScanner scanner = new WorkspaceScanner("odd*/*.json");
+        ScanIndex index = new ScanIndex(workspace.getRoot());
+        scanner.scanAll(workspace.getRoot(), index);
+        index.save(indexFile);
+
+        index = ScanIndex.load(indexFile, workspace.getRoot());
+        assertEquals(list("odd\tname\\dir/line\nbreak.json"), relative(scanner.scanAll(workspace.getRoot(), index).get("")));
+        assertEquals(2, index.getReused());
+    }
+
+    @Test
+    public void malformedIndexIsIgnored() throws IOException {
+        File indexFile = new File(workspace.newFolder("index"), "scan-index");
+        String root = workspace.getRoot().getAbsolutePath();
+        for (String content : new String[]{
+                ScanIndex.HEADER + "\nR\t" + root + "\nD\t\tnot-a-time\t1\tkey\n",
+                ScanIndex.HEADER + "\nR\t" + root + "\nf\torphan.json\n",
+                ScanIndex.HEADER + "\nR\t" + root + "\nD\t\t1\t1\tkey\nf\tbad\\escape\n",
+                "\u00ac\u00ed\u0000\u0005sr\u0000\u0019hygieia.utils.ScanIndex"}) {
+            Files.write(indexFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            assertEquals(0, ScanIndex.load(indexFile, workspace.getRoot()).size());
+        }
+    }
+
+    @Test
+    public void missingDirectoryHasNoFiles() throws IOException {
+        assertEquals(0, new WorkspaceScanner("*.json").scan(new File(workspace.getRoot(), "missing")).size());
+    }
+
+    private static WorkspaceScanner suggested(String include) {
+        return new WorkspaceScanner(include, WorkspaceScanner.SUGGESTED_EXCLUDES, WorkspaceScanner.DEFAULT_MAX_DEPTH);
+    }
+
+    private void touch(String path) throws IOException {
+        File file = new File(workspace.getRoot(), path);
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+    }
+
+    private List<String> scan(WorkspaceScanner scanner) throws IOException {
+        return relative(scanner.scan(workspace.getRoot()));
+    }
+
+    private List<String> relative(List<File> files) {
+        List<String> paths = new ArrayList<String>();
+        String root = workspace.getRoot().getPath() + File.separator;
+        for (File file : files) {
+            paths.add(file.getPath().substring(root.length()).replace(File.separatorChar, '/'));
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static List<String> list(String... paths) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, paths);
+        return list;
+    }
+}
@@ -0,0 +1,79 @@
+package jenkins.plugins.hygieia;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AutoCompleteCacheTest {
+
+    private final List<Runnable> queued = new ArrayList<Runnable>();
+    private long now = 1000;
+
+    private final AutoCompleteCache cache = new AutoCompleteCache(new Executor() {
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+    }) {
+        @Override
+        protected long now() {
+            return now;
+        }
+    };
+
+    private void runQueued() {
+        List<Runnable> tasks = new ArrayList<Runnable>(queued);
+        queued.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private static AutoCompleteCache.Loader names(final String... names) {
+        return new AutoCompleteCache.Loader() {
+            public Collection<String> load() {
+                return Arrays.asList(names);
+            }
+        };
+    }
+
+    @Test
+    public void lookupsAnswerFromTheCacheAndReloadInTheBackground() {
+        assertTrue(cache.get("apps", names("Payments")).isEmpty());
+        cache.get("apps", names("Payments"));
+        assertEquals("one reload per key at a time", 1, queued.size());
+        runQueued();
+        assertEquals(Arrays.asList("Payments"), cache.get("apps", names("Payments", "Portal")).startingWith("p"));
+        assertTrue(queued.isEmpty());
+
+        now += AutoCompleteCache.REFRESH_AFTER;
+        assertEquals("stale names are served while reloading",
+                Arrays.asList("Payments"), cache.get("apps", names("Payments", "Portal")).startingWith("p"));
+        runQueued();
+        assertEquals(Arrays.asList("Payments", "Portal"), cache.get("apps", names()).startingWith("p"));
+    }
+
+    @Test
+    public void emptyReloadKeepsPreviousNamesUntilTheyExpire() {
+        cache.prefetch("envs", names("dev", "prod"));
+        runQueued();
+        now += AutoCompleteCache.REFRESH_AFTER;
+        cache.get("envs", new AutoCompleteCache.Loader() {
+            public Collection<String> load() {
+                return Collections.emptyList();
+            }
+        });
+        runQueued();
+        assertEquals(2, cache.get("envs", names("dev", "prod")).size());
+
+        now += AutoCompleteCache.EXPIRE_AFTER;
+        assertTrue(cache.get("envs", names("dev")).isEmpty());
+    }
+}
@@ -0,0 +1,120 @@
+package jenkins.plugins.hygieia;
+
+import com.capitalone.dashboard.request.BinaryArtifactCreateRequest;
+import com.capitalone.dashboard.request.DeployDataCreateRequest;
+import hygieia.utils.HygieiaUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkPublishTest {
+
+    private HygieiaStandInServer server;
+    private DefaultHygieiaService service;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new HygieiaStandInServer();
+        service = new DefaultHygieiaService(server.getApiUrl(), "token", "myname");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void artifactsArePostedAsOneBatch() {
+        server.respond("/api/artifact/bulk", 201, "[\"id1\",\"id2\",\"id3\"]");
+
+        List<HygieiaResponse> responses = service.publishArtifacts(makeArtifacts(3));
+
+        assertEquals(1, server.getRequests().size());
+        HygieiaStandInServer.Request received = server.getRequests().get(0);
+        assertEquals("/api/artifact/bulk", received.path);
+        assertTrue(received.body.startsWith("["));
+        assertTrue(received.body.contains("\"canonicalName\":\"file2.jar\""));
+        assertEquals(3, responses.size());
+        assertEquals(201, responses.get(1).getResponseCode());
+        assertEquals("id2", responses.get(1).getResponseValue());
+    }
+
+    @Test
+    public void batchesAreBoundedByCount() {
+        service.setBatchLimits(2, DefaultHygieiaService.DEFAULT_BATCH_BYTES);
+
+        List<HygieiaResponse> responses = service.publishArtifacts(makeArtifacts(5));
+
+        assertEquals(5, responses.size());
+        assertEquals(3, server.getRequests().size());
+        assertEquals("/api/artifact/bulk", server.getRequests().get(0).path);
+        assertEquals("/api/artifact/bulk", server.getRequests().get(1).path);
+        assertEquals("/api/artifact", server.getRequests().get(2).path);
+    }
+
+    @Test
+    public void batchesAreBoundedByBytesOfTheirJson() throws Exception {
+        List<BinaryArtifactCreateRequest> artifacts = makeArtifacts(5);
+        String first = json(artifacts.get(0));
+        String second = json(artifacts.get(1));
+        service.setBatchLimits(DefaultHygieiaService.DEFAULT_BATCH_ITEMS, first.length() + second.length());
+
+        List<HygieiaResponse> responses = service.publishArtifacts(artifacts);
+
+        assertEquals(5, responses.size());
+        assertEquals(3, server.getRequests().size());
+        assertEquals("[" + first + "," + second + "]", server.getRequests().get(0).body);
+        assertEquals("/api/artifact/bulk", server.getRequests().get(1).path);
+        assertEquals("/api/artifact", server.getRequests().get(2).path);
+    }
+
+    @Test
+    public void fallsBackToSinglePostsWithoutBulkRoute() {
+        server.respond("/api/deploy/bulk", 404, "");
+
+        List<HygieiaResponse> first = service.publishDeploys(makeDeploys(3));
+        List<HygieiaResponse> second = service.publishDeploys(makeDeploys(2));
+
+        assertEquals(3, first.size());
+        assertEquals(2, second.size());
+        assertEquals(201, first.get(0).getResponseCode());
+        // the bulk route is tried once, then remembered as missing
+        assertEquals(6, server.getRequests().size());
+        assertEquals("/api/deploy/bulk", server.getRequests().get(0).path);
+        for (int i = 1; i < 6; i++) {
+            assertEquals("/api/deploy", server.getRequests().get(i).path);
+        }
+    }
+
+    private static String json(Object request) throws Exception {
+        return new String(HygieiaUtils.convertObjectToJsonBytes(request), "UTF-8");
+    }
+
+    private List<BinaryArtifactCreateRequest> makeArtifacts(int count) {
+        List<BinaryArtifactCreateRequest> requests = new ArrayList<BinaryArtifactCreateRequest>();
+        for (int i = 1; i <= count; i++) {
+            BinaryArtifactCreateRequest request = new BinaryArtifactCreateRequest();
+            request.setCanonicalName("file" + i + ".jar");
+            request.setArtifactName("file.jar");
+            request.setArtifactVersion(String.valueOf(i));
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    private List<DeployDataCreateRequest> makeDeploys(int count) {
+        List<DeployDataCreateRequest> requests = new ArrayList<DeployDataCreateRequest>();
+        for (int i = 1; i <= count; i++) {
+            DeployDataCreateRequest request = new DeployDataCreateRequest();
+            request.setArtifactName("file" + i + ".jar");
+            requests.add(request);
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,49 @@
+package jenkins.plugins.hygieia;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailuresAndFailsFast() {
+        CircuitBreaker breaker = new CircuitBreaker("/build", 3, 1000);
+        breaker.recordFailure(0);
+        breaker.recordFailure(0);
+        assertTrue(breaker.allowRequest(0));
+        breaker.recordFailure(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(999));
+    }
+
+    @Test
+    public void letsOneTrialThroughAfterOpenPeriod() {
+        CircuitBreaker breaker = new CircuitBreaker("/build", 1, 1000);
+        breaker.recordFailure(0);
+        assertTrue(breaker.allowRequest(1000));
+        assertFalse(breaker.allowRequest(1001));
+
+        breaker.recordFailure(1002);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest(2002));
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(2003));
+    }
+
+    @Test
+    public void jitteredDelayStaysWithinBounds() {
+        Random random = new Random(42);
+        long delay = RetryPolicy.BASE_DELAY;
+        for (int i = 0; i < 100; i++) {
+            delay = RetryPolicy.nextDelay(delay, RetryPolicy.BASE_DELAY, RetryPolicy.MAX_DELAY, random);
+            assertTrue(delay >= RetryPolicy.BASE_DELAY);
+            assertTrue(delay <= RetryPolicy.MAX_DELAY);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package jenkins.plugins.hygieia;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CollectorItemListTest {
+
+    private static final String ITEMS = "[{\"id\":\"1\",\"collector\":{\"name\":\"Jenkins\",\"tags\":[1,2]},\"enabled\":true,"
+            + "\"options\":{\"environmentName\":\"dev\",\"applicationName\":\"Payments\",\"extra\":{\"applicationName\":\"nested\"}}},"
+            + "{\"id\":\"2\",\"options\":{\"applicationName\":null}},"
+            + "{\"options\":{\"applicationName\":\"Portal\"},\"lastUpdated\":1}]";
+
+    private HygieiaStandInServer server;
+    private DefaultHygieiaService service;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new HygieiaStandInServer();
+        service = new DefaultHygieiaService(server.getApiUrl(), "token", "myname");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void keepsOnlyTheRequestedOption() {
+        server.respond("/api/collector/item/type/Deployment", 200, ITEMS);
+
+        assertEquals(Arrays.asList("Payments", "Portal"), service.getCollectorItemOptionValues("Deployment", "applicationName"));
+        assertEquals("dev", service.getCollectorItemOptions("Deployment").get(0).get("environmentName"));
+    }
+
+    @Test
+    public void unchangedListIsNotDownloadedAgain() {
+        server.respond("/api/collector/item/type/Deployment", 200, ITEMS, "\"v1\"");
+
+        assertEquals(Arrays.asList("Payments", "Portal"), service.getCollectorItemOptionValues("Deployment", "applicationName"));
+        assertEquals(Arrays.asList("Payments", "Portal"), service.getCollectorItemOptionValues("Deployment", "applicationName"));
+
+        assertEquals(2, server.getRequests().size());
+        assertNull(server.getRequests().get(0).ifNoneMatch);
+        assertEquals("\"v1\"", server.getRequests().get(1).ifNoneMatch);
+    }
+
+    @Test
+    public void readsEnvironmentNamesOfTheDeploymentStatus() {
+        server.respond("/api/deploy/status/application/Payments", 200, "{\"lastUpdated\":5,\"result\":["
+                + "{\"name\":\"dev\",\"units\":[{\"name\":\"web\"}],\"online\":true},{\"units\":[],\"name\":\"prod\"}]}");
+
+        assertEquals(new HashSet<String>(Arrays.asList("dev", "prod")), service.getDeploymentEnvironments("Payments"));
+    }
+
+    @Test
+    public void failedRequestGivesAnEmptyList() {
+        server.respond("/api/deploy/status/application/Missing", 404, "");
+
+        assertEquals(Collections.<String>emptySet(), service.getDeploymentEnvironments("Missing"));
+    }
+}
@@ -0,0 +1,28 @@
+package jenkins.plugins.hygieia;
+
+import com.capitalone.dashboard.model.SCM;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class CommitPayloadsTest {
+
+    @Test
+    public void reportsBytesOfOmittedCommitListsPerEndpoint() {
+        SCM commit = new SCM();
+        commit.setScmRevisionNumber("abc123");
+        commit.setScmCommitLog("Fix the build");
+        List<SCM> commits = Collections.singletonList(commit);
+        long size = JsonRequestEntity.sizeOf(commits);
+
+        CommitPayloads.omitted("/test-endpoint", commits, 3);
+        CommitPayloads.omitted("/test-endpoint", new ArrayList<SCM>(), 5);
+
+        assertTrue(CommitPayloads.getReport(),
+                CommitPayloads.getReport().contains("/test-endpoint: 3 requests without commits, " + (3 * size) + " bytes saved"));
+    }
+}
@@ -0,0 +1,81 @@
+package jenkins.plugins.hygieia;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GzipRequestEntityTest {
+
+    @Test
+    public void releasesDeflaterAfterWriting() throws Exception {
+        RecordingGzipEntity entity = new RecordingGzipEntity(
+                new StringRequestEntity("{\"name\":\"value\"}", "application/json", "UTF-8"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        entity.writeRequest(out);
+
+        assertTrue(entity.gzip.isEnded());
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            unzipped.write(buffer, 0, n);
+        }
+        assertEquals("{\"name\":\"value\"}", unzipped.toString("UTF-8"));
+    }
+
+    @Test
+    public void releasesDeflaterWhenWritingFails() throws Exception {
+        RecordingGzipEntity entity = new RecordingGzipEntity(new FailingEntity());
+        try {
+            entity.writeRequest(new ByteArrayOutputStream());
+            fail("Expected the entity's error");
+        } catch (IOException e) {
+            assertEquals("connection reset", e.getMessage());
+        }
+        assertTrue(entity.gzip.isEnded());
+    }
+
+    private static final class RecordingGzipEntity extends GzipRequestEntity {
+        private LevelGzipOutputStream gzip;
+
+        RecordingGzipEntity(RequestEntity entity) {
+            super(entity, 6, "/test");
+        }
+
+        @Override
+        LevelGzipOutputStream newGzipStream(OutputStream out) throws IOException {
+            gzip = super.newGzipStream(out);
+            return gzip;
+        }
+    }
+
+    private static final class FailingEntity implements RequestEntity {
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public void writeRequest(OutputStream out) throws IOException {
+            out.write(new byte[100]);
+            throw new IOException("connection reset");
+        }
+
+        public long getContentLength() {
+            return -1;
+        }
+
+        public String getContentType() {
+            return "application/json";
+        }
+    }
+}
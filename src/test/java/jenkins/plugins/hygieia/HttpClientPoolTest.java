@@ -0,0 +1,61 @@
+package jenkins.plugins.hygieia;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpClientPoolTest {
+
+    private final HttpClientPool pool = new HttpClientPool();
+
+    @After
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void reusesOneClientAndConnectionManagerForEveryHost() {
+        HttpClient client = pool.getClient((HttpClientPool.Proxy) null);
+
+        assertSame(client, pool.getClient((HttpClientPool.Proxy) null));
+        assertSame(pool.getConnectionManager(), client.getHttpConnectionManager());
+        assertNull(client.getHostConfiguration().getProxyHost());
+    }
+
+    @Test
+    public void capsConnectionsPerHostAndAcrossAllHosts() {
+        HttpConnectionManagerParams params = pool.getConnectionManager().getParams();
+        HostConfiguration hygieia = new HostConfiguration();
+        hygieia.setHost("hygieia.example.com", 443);
+        HostConfiguration sonar = new HostConfiguration();
+        sonar.setHost("sonar.example.com", 9000);
+
+        assertEquals(HttpClientPool.MAX_CONNECTIONS_PER_HOST, params.getMaxConnectionsPerHost(hygieia));
+        assertEquals(HttpClientPool.MAX_CONNECTIONS_PER_HOST, params.getMaxConnectionsPerHost(sonar));
+        assertEquals(HttpClientPool.MAX_TOTAL_CONNECTIONS, params.getMaxTotalConnections());
+        assertTrue(HttpClientPool.MAX_CONNECTIONS_PER_HOST < HttpClientPool.MAX_TOTAL_CONNECTIONS);
+    }
+
+    @Test
+    public void rebuildsClientOnlyWhenProxyChanges() {
+        HttpClientPool.Proxy proxy = new HttpClientPool.Proxy("proxy.example.com", 8080, "user", "secret");
+        HttpClient direct = pool.getClient((HttpClientPool.Proxy) null);
+
+        HttpClient proxied = pool.getClient(proxy);
+        assertTrue(direct != proxied);
+        assertEquals("proxy.example.com", proxied.getHostConfiguration().getProxyHost());
+        assertEquals(8080, proxied.getHostConfiguration().getProxyPort());
+        assertSame(proxied, pool.getClient(new HttpClientPool.Proxy("proxy.example.com", 8080, "user", "secret")));
+
+        HttpClient changed = pool.getClient(new HttpClientPool.Proxy("proxy.example.com", 8080, "user", "rotated"));
+        assertTrue(proxied != changed);
+        assertSame(pool.getConnectionManager(), changed.getHttpConnectionManager());
+    }
+}
@@ -0,0 +1,147 @@
+package jenkins.plugins.hygieia;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HygieiaOutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void drainReplaysRecordsInOrder() throws Exception {
+        HygieiaOutbox outbox = new HygieiaOutbox(folder.getRoot());
+        outbox.add("http://hygieia/api/build", "{\"n\":1}".getBytes("UTF-8"));
+        outbox.add("http://hygieia/api/artifact", "{\"n\":2}".getBytes("UTF-8"));
+
+        RecordingDelivery delivery = new RecordingDelivery(true);
+        assertEquals(2, outbox.drain(delivery));
+        assertEquals("http://hygieia/api/build {\"n\":1}", delivery.received.get(0));
+        assertEquals("http://hygieia/api/artifact {\"n\":2}", delivery.received.get(1));
+        assertEquals(0, outbox.getPendingBytes());
+        assertEquals(0, new File(folder.getRoot(), HygieiaOutbox.SPOOL_FILE).length());
+    }
+
+    @Test
+    public void failedDeliveryKeepsRecordsForNextDrain() throws Exception {
+        HygieiaOutbox outbox = new HygieiaOutbox(folder.getRoot());
+        outbox.add("http://hygieia/api/build", "{}".getBytes("UTF-8"));
+
+        assertEquals(0, outbox.drain(new RecordingDelivery(false)));
+        outbox.close();
+
+        HygieiaOutbox reopened = new HygieiaOutbox(folder.getRoot());
+        RecordingDelivery delivery = new RecordingDelivery(true);
+        assertEquals(1, reopened.drain(delivery));
+        assertEquals("http://hygieia/api/build {}", delivery.received.get(0));
+    }
+
+    @Test
+    public void tornRecordIsDiscardedOnReopen() throws Exception {
+        HygieiaOutbox outbox = new HygieiaOutbox(folder.getRoot());
+        outbox.add("http://hygieia/api/build", "{}".getBytes("UTF-8"));
+        outbox.close();
+
+        FileOutputStream out = new FileOutputStream(new File(folder.getRoot(), HygieiaOutbox.SPOOL_FILE), true);
+        out.write(new byte[]{0x48, 0x59, 0x47, 0x31, 0, 0, 0, 100, 1, 2, 3});
+        out.close();
+
+        HygieiaOutbox reopened = new HygieiaOutbox(folder.getRoot());
+        RecordingDelivery delivery = new RecordingDelivery(true);
+        assertEquals(1, reopened.drain(delivery));
+        assertEquals(1, delivery.received.size());
+    }
+
+    @Test
+    public void dropsOldestRecordsOverLimit() throws Exception {
+        HygieiaOutbox outbox = new HygieiaOutbox(folder.getRoot());
+        outbox.add("http://hygieia/api/build", "{\"n\":1}".getBytes("UTF-8"));
+        long recordSize = outbox.getPendingBytes();
+        outbox.setMaxBytes(2 * recordSize);
+        outbox.add("http://hygieia/api/build", "{\"n\":2}".getBytes("UTF-8"));
+        outbox.add("http://hygieia/api/build", "{\"n\":3}".getBytes("UTF-8"));
+        assertEquals(2 * recordSize, outbox.getPendingBytes());
+
+        RecordingDelivery delivery = new RecordingDelivery(true);
+        assertEquals(2, outbox.drain(delivery));
+        assertEquals("http://hygieia/api/build {\"n\":2}", delivery.received.get(0));
+        assertEquals("http://hygieia/api/build {\"n\":3}", delivery.received.get(1));
+    }
+
+    @Test
+    public void corruptRecordIsQuarantinedAndSkipped() throws Exception {
+        HygieiaOutbox outbox = new HygieiaOutbox(folder.getRoot());
+        outbox.add("http://hygieia/api/build", "{\"n\":1}".getBytes("UTF-8"));
+        long recordSize = outbox.getPendingBytes();
+        outbox.add("http://hygieia/api/build", "{\"n\":2}".getBytes("UTF-8"));
+        outbox.add("http://hygieia/api/build", "{\"n\":3}".getBytes("UTF-8"));
+        outbox.close();
+
+        RandomAccessFile spool = new RandomAccessFile(new File(folder.getRoot(), HygieiaOutbox.SPOOL_FILE), "rw");
+        spool.seek(2 * recordSize - 2);
+        spool.write('x');
+        spool.close();
+
+        HygieiaOutbox reopened = new HygieiaOutbox(folder.getRoot());
+        RecordingDelivery delivery = new RecordingDelivery(true);
+        assertEquals(2, reopened.drain(delivery));
+        assertEquals("http://hygieia/api/build {\"n\":1}", delivery.received.get(0));
+        assertEquals("http://hygieia/api/build {\"n\":3}", delivery.received.get(1));
+        assertEquals(recordSize, new File(folder.getRoot(), HygieiaOutbox.QUARANTINE_FILE).length());
+        assertEquals(0, reopened.getPendingBytes());
+    }
+
+    @Test
+    public void deliveredRecordsAreCutOffTheSpool() throws Exception {
+        HygieiaOutbox outbox = new HygieiaOutbox(folder.getRoot());
+        outbox.add("http://hygieia/api/build", "{\"n\":1}".getBytes("UTF-8"));
+        long recordSize = outbox.getPendingBytes();
+        outbox.add("http://hygieia/api/build", "{\"n\":2}".getBytes("UTF-8"));
+        outbox.add("http://hygieia/api/build", "{\"n\":3}".getBytes("UTF-8"));
+
+        assertEquals(2, outbox.drain(new RecordingDelivery(true, 2)));
+        assertEquals(recordSize, new File(folder.getRoot(), HygieiaOutbox.SPOOL_FILE).length());
+        outbox.close();
+
+        HygieiaOutbox reopened = new HygieiaOutbox(folder.getRoot());
+        RecordingDelivery delivery = new RecordingDelivery(true);
+        assertEquals(1, reopened.drain(delivery));
+        assertEquals("http://hygieia/api/build {\"n\":3}", delivery.received.get(0));
+    }
+
+    private static class RecordingDelivery implements HygieiaOutbox.Delivery {
+        private final boolean succeed;
+        private final int limit;
+        private final List<String> received = new ArrayList<String>();
+
+        RecordingDelivery(boolean succeed) {
+            this(succeed, Integer.MAX_VALUE);
+        }
+
+        RecordingDelivery(boolean succeed, int limit) {
+            this.succeed = succeed;
+            this.limit = limit;
+        }
+
+        public boolean deliver(String url, byte[] payload) {
+            if (received.size() >= limit) return false;
+            if (succeed) {
+                try {
+                    received.add(url + " " + new String(payload, "UTF-8"));
+                } catch (java.io.UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return succeed;
+        }
+    }
+}
@@ -16,6 +16,7 @@ import org.junit.runners.Parameterized;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -92,6 +93,10 @@ public class HygieiaPublisherTest extends TestCase {
             return hygieiaResponse;
         }
 
+        public List<HygieiaResponse> publishArtifacts(Collection<BinaryArtifactCreateRequest> requests) {
+            return Collections.nCopies(requests.size(), hygieiaResponse);
+        }
+
         public boolean testConnection() {
             return responseBoolean;
         }
@@ -108,10 +113,21 @@ public class HygieiaPublisherTest extends TestCase {
             return hygieiaResponse;
         }
 
+        public List<HygieiaResponse> publishDeploys(Collection<DeployDataCreateRequest> requests) {
+            return Collections.nCopies(requests.size(), hygieiaResponse);
+        }
+
+        public void spool(String endpoint, Object request) {
+        }
+
         public List<JSONObject> getCollectorItemOptions(String type) {
             return null;
         }
 
+        public List<String> getCollectorItemOptionValues(String type, String option) {
+            return null;
+        }
+
         public Set<String> getDeploymentEnvironments(String appName) {
             return null;
         }
@@ -0,0 +1,107 @@
+package jenkins.plugins.hygieia;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the Hygieia API that records every request it receives.
+ */
+public class HygieiaStandInServer {
+
+    private final HttpServer server;
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+    private final Map<String, Integer> statuses = new ConcurrentHashMap<String, Integer>();
+    private final Map<String, String> bodies = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> etags = new ConcurrentHashMap<String, String>();
+
+    public HygieiaStandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                record(exchange);
+            }
+        });
+        server.start();
+    }
+
+    public String getApiUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+    }
+
+    public void respond(String path, int status, String body) {
+        statuses.put(path, status);
+        bodies.put(path, body);
+    }
+
+    /**
+     * Answers with the entity tag, and with a 304 to requests that already hold it.
+     */
+    public void respond(String path, int status, String body, String etag) {
+        respond(path, status, body);
+        etags.put(path, etag);
+    }
+
+    public List<Request> getRequests() {
+        return requests;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void record(HttpExchange exchange) throws IOException {
+        Request request = new Request();
+        request.method = exchange.getRequestMethod();
+        request.path = exchange.getRequestURI().getPath();
+        request.contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        request.ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equals(request.contentEncoding)) {
+            in = new GZIPInputStream(in);
+        }
+        request.body = IOUtils.toString(in, "UTF-8");
+        requests.add(request);
+
+        Integer status = statuses.get(request.path);
+        String body = bodies.get(request.path);
+        if (status == null) {
+            status = "POST".equals(request.method) ? 201 : 200;
+            body = "POST".equals(request.method) ? "\"5a0000000000000000000001\"" : "[]";
+        }
+        String etag = etags.get(request.path);
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(request.ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+        }
+        byte[] response = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, response.length == 0 ? -1 : response.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(response);
+        out.close();
+    }
+
+    public static class Request {
+        public String method;
+        public String path;
+        public String contentEncoding;
+        public String ifNoneMatch;
+        public String body;
+    }
+}
@@ -0,0 +1,79 @@
+package jenkins.plugins.hygieia;
+
+import com.capitalone.dashboard.model.SCM;
+import com.capitalone.dashboard.request.BuildDataCreateRequest;
+import hygieia.utils.HygieiaUtils;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonRequestEntityTest {
+
+    private static final String JOB_NAME = "Gr\u00f6\u00dfe \u2713 build";
+
+    private static BuildDataCreateRequest buildData() {
+        BuildDataCreateRequest request = new BuildDataCreateRequest();
+        request.setNiceName("Jenkins");
+        request.setJobName(JOB_NAME);
+        request.setBuildUrl("http://jenkins/job/size/1/");
+        request.setNumber("1");
+        request.setBuildStatus("Success");
+        request.setStartTime(1000);
+        SCM commit = new SCM();
+        commit.setScmRevisionNumber("abc123");
+        commit.setScmCommitLog("Na\u00efve fix \u2014 \"quoted\"\nsecond line");
+        request.setSourceChangeSet(Arrays.asList(commit));
+        return request;
+    }
+
+    @Test
+    public void writesTheBodyTheStringEntitySent() throws Exception {
+        BuildDataCreateRequest request = buildData();
+        String json = new String(HygieiaUtils.convertObjectToJsonBytes(request), "UTF-8");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new StringRequestEntity(json, "application/json", "UTF-8").writeRequest(expected);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new JsonRequestEntity(request).writeRequest(actual);
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        assertTrue(new String(actual.toByteArray(), "UTF-8").contains(JOB_NAME));
+    }
+
+    @Test
+    public void isChunkedRepeatableUtf8Json() throws Exception {
+        JsonRequestEntity entity = new JsonRequestEntity(buildData());
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        entity.writeRequest(first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        entity.writeRequest(second);
+
+        assertTrue(entity.isRepeatable());
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+        assertEquals(-1, entity.getContentLength());
+        assertEquals("application/json; charset=UTF-8", entity.getContentType());
+    }
+
+    @Test
+    public void leavesTheConnectionStreamOpen() throws Exception {
+        final boolean[] closed = new boolean[1];
+        FilterOutputStream out = new FilterOutputStream(new ByteArrayOutputStream()) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        new JsonRequestEntity(buildData()).writeRequest(out);
+        assertFalse(closed[0]);
+    }
+}
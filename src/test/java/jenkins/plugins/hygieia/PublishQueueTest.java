@@ -0,0 +1,143 @@
+package jenkins.plugins.hygieia;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PublishQueueTest {
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void postsStartBeforeComplete() throws Exception {
+        PublishQueue queue = new PublishQueue(1, 10);
+        CountDownLatch release = block(queue, "other#1");
+
+        queue.submit("job#1", "started", false, new Recording("job#1 started"));
+        queue.submit("job#1", "completed", true, new Recording("job#1 completed"));
+        release.countDown();
+
+        awaitEvents(2);
+        assertEquals(Arrays.asList("published job#1 started", "published job#1 completed"), events);
+    }
+
+    @Test
+    public void spoolsCompletionAfterQueuedStartWhenLaneIsFull() throws Exception {
+        PublishQueue queue = new PublishQueue(1, 1);
+        CountDownLatch release = block(queue, "other#1");
+
+        queue.submit("job#1", "started", false, new Recording("job#1 started"));
+        queue.submit("job#1", "completed", true, new Recording("job#1 completed"));
+        assertTrue(events.isEmpty());
+        release.countDown();
+
+        awaitEvents(2);
+        assertEquals(Arrays.asList("published job#1 started", "spooled job#1 completed"), events);
+    }
+
+    @Test
+    public void spoolsCompletionOfBuildWhoseStartWasSpooled() throws Exception {
+        PublishQueue queue = new PublishQueue(1, 1);
+        CountDownLatch release = block(queue, "other#1");
+        queue.submit("other#2", "started", false, new Recording("other#2 started"));
+
+        queue.submit("job#1", "started", false, new Recording("job#1 started"));
+        assertEquals(Arrays.asList("spooled job#1 started"), events);
+        release.countDown();
+        awaitEvents(2);
+
+        // the lane has room again, but posting now would overtake the spooled start
+        queue.submit("job#1", "completed", true, new Recording("job#1 completed"));
+        assertEquals(Arrays.asList("spooled job#1 started", "published other#2 started", "spooled job#1 completed"), events);
+    }
+
+    @Test(timeout = 10000)
+    public void slowSpoolDoesNotHoldUpOtherBuilds() throws Exception {
+        final PublishQueue queue = new PublishQueue(1, 1);
+        CountDownLatch release = block(queue, "other#1");
+        queue.submit("other#2", "started", false, new Recording("other#2 started"));
+
+        final CountDownLatch spooling = new CountDownLatch(1);
+        final CountDownLatch written = new CountDownLatch(1);
+        Thread slow = new Thread() {
+            public void run() {
+                queue.submit("job#1", "started", false, new PublishQueue.Publication() {
+                    public void publish() {
+                    }
+
+                    public void spool() {
+                        spooling.countDown();
+                        try {
+                            written.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        };
+        slow.start();
+        assertTrue(spooling.await(10, TimeUnit.SECONDS));
+
+        queue.submit("job#2", "started", false, new Recording("job#2 started"));
+        assertEquals(Arrays.asList("spooled job#2 started"), events);
+        written.countDown();
+        release.countDown();
+        slow.join(10000);
+    }
+
+    /**
+     * Occupies the lane until the returned latch is released.
+     */
+    private static CountDownLatch block(PublishQueue queue, String key) throws InterruptedException {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        queue.submit(key, "blocker", true, new PublishQueue.Publication() {
+            public void publish() {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            public void spool() {
+                running.countDown();
+            }
+        });
+        running.await(10, TimeUnit.SECONDS);
+        return release;
+    }
+
+    private void awaitEvents(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (events.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private class Recording implements PublishQueue.Publication {
+        private final String name;
+
+        Recording(String name) {
+            this.name = name;
+        }
+
+        public void publish() {
+            events.add("published " + name);
+        }
+
+        public void spool() {
+            events.add("spooled " + name);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package jenkins.plugins.hygieia;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PublishStagePoolTest {
+
+    @Test
+    public void failedStageDoesNotFailTheOthers() {
+        PublishStagePool pool = new PublishStagePool(2);
+        List<Future<String>> stages = new ArrayList<Future<String>>();
+        stages.add(pool.submit(value("artifacts")));
+        stages.add(pool.submit(new Callable<String>() {
+            public String call() throws IOException {
+                throw new IOException("Sonar is down");
+            }
+        }));
+        stages.add(pool.submit(value("deploys")));
+
+        assertEquals(Arrays.asList("artifacts", null, "deploys"), PublishStagePool.awaitAll(stages, null));
+    }
+
+    @Test
+    public void awaitsEveryStageAfterAFailure() {
+        PublishStagePool pool = new PublishStagePool(2);
+        List<Future<String>> stages = new ArrayList<Future<String>>();
+        stages.add(pool.submit(new Callable<String>() {
+            public String call() {
+                throw new IllegalStateException("bad report");
+            }
+        }));
+        stages.add(pool.submit(new Callable<String>() {
+            public String call() throws InterruptedException {
+                Thread.sleep(200);
+                return "test";
+            }
+        }));
+
+        List<String> results = PublishStagePool.awaitAll(stages, null);
+
+        assertEquals(Arrays.asList(null, "test"), results);
+        for (Future<String> stage : stages) {
+            assertTrue(stage.isDone());
+        }
+    }
+
+    @Test
+    public void gatherStagesDoNotQueueBehindPosts() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> posts = new ArrayList<Future<String>>();
+        for (int i = 0; i < PublishStagePool.get().getConcurrency() + 1; i++) {
+            posts.add(PublishStagePool.get().submit(new Callable<String>() {
+                public String call() throws InterruptedException {
+                    release.await();
+                    return "posted";
+                }
+            }));
+        }
+        try {
+            assertEquals("workspace", PublishStagePool.gathering().submit(value("workspace")).get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+        assertEquals("posted", PublishStagePool.await(posts.get(posts.size() - 1), null));
+    }
+
+    @Test
+    public void missingStageYieldsNull() {
+        assertNull(PublishStagePool.await(null, null));
+    }
+
+    private static Callable<String> value(final String value) {
+        return new Callable<String>() {
+            public String call() {
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package jenkins.plugins.hygieia;
+
+import com.capitalone.dashboard.request.TestDataCreateRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RestCallCompressionTest {
+
+    private HygieiaStandInServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new HygieiaStandInServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void payloadAboveThresholdIsSentGzipped() {
+        DefaultHygieiaService service = new DefaultHygieiaService(server.getApiUrl(), "token", "myname");
+        service.setCompression(1024, 6);
+
+        HygieiaResponse response = service.publishTestResults(makeTestRequest(StringUtils.repeat("Scenario: step ", 1000)));
+
+        assertEquals(201, response.getResponseCode());
+        HygieiaStandInServer.Request received = server.getRequests().get(0);
+        assertEquals("/api/quality/test", received.path);
+        assertEquals("gzip", received.contentEncoding);
+        assertTrue(received.body.contains("\"testJobName\":\"MyJob\""));
+        assertTrue(GzipRequestEntity.getReport().contains("/quality/test"));
+    }
+
+    @Test
+    public void payloadBelowThresholdIsSentPlain() {
+        DefaultHygieiaService service = new DefaultHygieiaService(server.getApiUrl(), "token", "myname");
+        service.setCompression(1024 * 1024, 6);
+
+        HygieiaResponse response = service.publishTestResults(makeTestRequest("short"));
+
+        assertEquals(201, response.getResponseCode());
+        HygieiaStandInServer.Request received = server.getRequests().get(0);
+        assertNull(received.contentEncoding);
+        assertTrue(received.body.contains("\"description\":\"short\""));
+    }
+
+    private TestDataCreateRequest makeTestRequest(String description) {
+        TestDataCreateRequest request = new TestDataCreateRequest();
+        request.setTestJobName("MyJob");
+        request.setDescription(description);
+        return request;
+    }
+}
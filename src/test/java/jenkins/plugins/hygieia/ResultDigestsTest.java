@@ -0,0 +1,80 @@
+package jenkins.plugins.hygieia;
+
+import com.capitalone.dashboard.model.CodeQualityMetric;
+import com.capitalone.dashboard.request.CodeQualityCreateRequest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultDigestsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static CodeQualityCreateRequest sonarResult(long timestamp, String buildId, String... metrics) {
+        CodeQualityCreateRequest request = new CodeQualityCreateRequest();
+        request.setProjectName("app");
+        request.setTimestamp(timestamp);
+        request.setHygieiaId(buildId);
+        for (String name : metrics) {
+            CodeQualityMetric metric = new CodeQualityMetric(name);
+            metric.setValue(name.length());
+            request.getMetrics().add(metric);
+        }
+        return request;
+    }
+
+    @Test
+    public void digestIgnoresTimestampsBuildIdsAndOrder() {
+        String digest = ResultDigests.digest(sonarResult(1000, "build-1", "coverage", "ncloc"));
+        assertEquals(digest, ResultDigests.digest(sonarResult(2000, "build-2", "ncloc", "coverage")));
+        assertFalse(digest.equals(ResultDigests.digest(sonarResult(1000, "build-1", "coverage", "violations"))));
+    }
+
+    @Test
+    public void digestTellsArraysWithRepeatedElementsApart() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("tags", Arrays.asList("a", "a", "b"));
+        String digest = ResultDigests.digest(result);
+        result.put("tags", Arrays.asList("b", "a", "a"));
+        assertEquals(digest, ResultDigests.digest(result));
+        result.put("tags", Arrays.asList("a", "b", "b"));
+        assertFalse(digest.equals(ResultDigests.digest(result)));
+        result.put("tags", Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c")));
+        String nested = ResultDigests.digest(result);
+        result.put("tags", Arrays.asList(Arrays.asList("c"), Arrays.asList("b", "a")));
+        assertEquals(nested, ResultDigests.digest(result));
+        result.put("tags", Arrays.asList(Arrays.asList("a"), Arrays.asList("b", "c")));
+        assertFalse(nested.equals(ResultDigests.digest(result)));
+    }
+
+    @Test
+    public void recordsDigestsPerKey() {
+        File file = new File(folder.getRoot(), ResultDigests.FILE_NAME);
+        ResultDigests digests = new ResultDigests(file);
+        assertFalse(digests.isUnchanged("sonar|app", "abc"));
+
+        digests.record("sonar|app", "abc");
+        assertTrue(new ResultDigests(file).isUnchanged("sonar|app", "abc"));
+        assertFalse(new ResultDigests(file).isUnchanged("sonar|app", "def"));
+        assertFalse(new ResultDigests(file).isUnchanged("test|Functional", "abc"));
+    }
+
+    @Test
+    public void reportsHitRatePerKind() {
+        ResultDigests.counted("test-kind", true);
+        ResultDigests.counted("test-kind", false);
+
+        assertTrue(ResultDigests.getReport(),
+                ResultDigests.getReport().contains("test-kind: 1 of 2 unchanged and skipped (50%)"));
+    }
+}